@@ -0,0 +1,50 @@
+package com.db.awmd.challenge;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks account indexes for benchmarks, either uniformly or following a Zipf distribution where
+ * a handful of accounts receive most of the traffic. Zipf sampling is a binary search over a
+ * precomputed cumulative distribution, so drawing a key does not allocate.
+ */
+public final class AccountKeys {
+
+  public enum Distribution { UNIFORM, ZIPF }
+
+  private final int size;
+  private final double[] cumulative;
+
+  public AccountKeys(Distribution distribution, int size, double zipfExponent) {
+    this.size = size;
+    if (distribution == Distribution.ZIPF) {
+      cumulative = new double[size];
+      double sum = 0;
+      for (int rank = 0; rank < size; rank++) {
+        sum += 1 / Math.pow(rank + 1, zipfExponent);
+        cumulative[rank] = sum;
+      }
+      for (int rank = 0; rank < size; rank++) {
+        cumulative[rank] /= sum;
+      }
+    } else {
+      cumulative = null;
+    }
+  }
+
+  public int next(ThreadLocalRandom random) {
+    if (cumulative == null) {
+      return random.nextInt(size);
+    }
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return Math.min(index < 0 ? -index - 1 : index, size - 1);
+  }
+
+  /**
+   * A second key different from {@code first}, drawn from the same distribution.
+   */
+  public int nextOther(ThreadLocalRandom random, int first) {
+    int other = next(random);
+    return other != first ? other : (first + 1) % size;
+  }
+}
@@ -0,0 +1,113 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.service.AccountsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the same number of accounts over HTTP against a running application, once with one
+ * {@code POST /v1/accounts} per account and once with a single streamed {@code POST
+ * /v1/accounts/import}. Request logging is turned down, which favours the single-create path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkImportBenchmark {
+
+  @Param({"20000"})
+  private int accounts;
+
+  private ConfigurableApplicationContext context;
+  private AccountsService accountsService;
+  private String baseUrl;
+
+  @Setup(Level.Trial)
+  public void startApplication() {
+    context = SpringApplication.run(DevChallengeApplication.class,
+        "--server.port=0", "--logging.level.com.db.awmd=WARN");
+    accountsService = context.getBean(AccountsService.class);
+    int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+    baseUrl = "http://localhost:" + port + "/v1/accounts";
+  }
+
+  @Setup(Level.Iteration)
+  public void clearAccounts() {
+    accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopApplication() {
+    context.close();
+  }
+
+  @Benchmark
+  public void singleCreates() throws IOException {
+    for (int i = 0; i < accounts; i++) {
+      HttpURLConnection connection = open(baseUrl, "application/json");
+      try (OutputStream body = connection.getOutputStream()) {
+        body.write(("{\"accountId\":\"Id-" + i + "\",\"balance\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+      }
+      drain(connection);
+    }
+  }
+
+  @Benchmark
+  public void streamedImport() throws IOException {
+    HttpURLConnection connection = open(baseUrl + "/import", "application/x-ndjson");
+    connection.setChunkedStreamingMode(64 * 1024);
+    try (Writer body = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+      for (int i = 0; i < accounts; i++) {
+        body.write("{\"accountId\":\"Id-" + i + "\",\"balance\":" + i + "}\n");
+      }
+    }
+    drain(connection);
+  }
+
+  private static HttpURLConnection open(String url, String contentType) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", contentType);
+    return connection;
+  }
+
+  private static void drain(HttpURLConnection connection) throws IOException {
+    if (connection.getResponseCode() >= 300) {
+      throw new IllegalStateException("HTTP " + connection.getResponseCode() + " from " + connection.getURL());
+    }
+    try (InputStream response = connection.getInputStream()) {
+      byte[] buffer = new byte[8192];
+      while (response.read(buffer) >= 0) {
+        // read fully so the connection can be reused
+      }
+    }
+  }
+}
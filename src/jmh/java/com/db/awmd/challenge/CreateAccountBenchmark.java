@@ -0,0 +1,47 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Account creation into a repository that is emptied before every iteration, so the map size
+ * stays comparable between iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateAccountBenchmark {
+
+  private final AccountsRepository repository = new AccountsRepositoryInMemory();
+  private final AtomicLong nextId = new AtomicLong();
+  private final BigDecimal balance = new BigDecimal(1000);
+
+  @Setup(Level.Iteration)
+  public void clear() {
+    repository.clearAccounts();
+  }
+
+  @Benchmark
+  public void createAccount() {
+    repository.createAccount(new Account("Id-" + nextId.incrementAndGet(), balance));
+  }
+}
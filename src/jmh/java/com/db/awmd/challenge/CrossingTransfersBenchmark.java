@@ -0,0 +1,74 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opposite-direction transfers between the same two accounts. With unordered locking these pairs
+ * stalled each other until the lock timeout; with ordered locking throughput is bounded only by
+ * the critical section.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrossingTransfersBenchmark {
+
+  private AccountsService accountsService;
+  private AsyncNotificationDispatcher notificationDispatcher;
+  private TransferRequestDetails aToB;
+  private TransferRequestDetails bToA;
+
+  @Setup
+  public void setUp() {
+    notificationDispatcher = new AsyncNotificationDispatcher(10000, 256, NotificationBackpressure.DROP, 0);
+    accountsService = new AccountsService(new AccountsRepositoryInMemory(), new OrderedAccountLocker(5000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+    accountsService.createAccount(new Account("Id-A", new BigDecimal(1_000_000_000)));
+    accountsService.createAccount(new Account("Id-B", new BigDecimal(1_000_000_000)));
+    aToB = new TransferRequestDetails("Id-A", "Id-B", BigDecimal.ONE);
+    bToA = new TransferRequestDetails("Id-B", "Id-A", BigDecimal.ONE);
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    notificationDispatcher.shutdown();
+  }
+
+  @Benchmark
+  @Group("crossing")
+  @GroupThreads(2)
+  public void forward() throws Exception {
+    accountsService.transferMoney(aToB);
+  }
+
+  @Benchmark
+  @Group("crossing")
+  @GroupThreads(2)
+  public void backward() throws Exception {
+    accountsService.transferMoney(bToA);
+  }
+}
@@ -0,0 +1,88 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import com.db.awmd.challenge.service.TransactionLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Failure-heavy transfer traffic, as during an abuse spike: every transfer names an unknown
+ * account, or overdraws its sender, or (for comparison) completes. Run with {@code -prof gc} to
+ * compare the allocation per failed transfer with that of a successful one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FailedTransferBenchmark {
+
+  @Param({"10000"})
+  private int accounts;
+
+  @Param({"ACCOUNT_NOT_FOUND", "INSUFFICIENT_BALANCE", "COMPLETED"})
+  private TransferStatus outcome;
+
+  private AccountsService accountsService;
+  private AsyncNotificationDispatcher notificationDispatcher;
+  private TransferRequestDetails[] transfers;
+
+  @Setup
+  public void setUp() {
+    notificationDispatcher = new AsyncNotificationDispatcher(10000, 256, NotificationBackpressure.DROP, 0);
+    accountsService = new AccountsService(new AccountsRepositoryInMemory(), new OrderedAccountLocker(5000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+    accountsService.setTransactionLedger(new TransactionLedger(1 << 20));
+    for (int i = 0; i < accounts; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000)));
+    }
+    BigDecimal amount = outcome == TransferStatus.INSUFFICIENT_BALANCE ? new BigDecimal(2_000_000_000) : BigDecimal.ONE;
+    String missing = outcome == TransferStatus.ACCOUNT_NOT_FOUND ? "Missing-" : "Id-";
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    transfers = new TransferRequestDetails[1 << 16];
+    for (int i = 0; i < transfers.length; i++) {
+      int from = random.nextInt(accounts);
+      int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+      transfers[i] = new TransferRequestDetails("Id-" + from, missing + to, amount);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    notificationDispatcher.shutdown();
+  }
+
+  @Benchmark
+  public Object transferMoney() throws Exception {
+    try {
+      accountsService.transferMoney(transfers[ThreadLocalRandom.current().nextInt(transfers.length)]);
+      return TransferStatus.COMPLETED;
+    } catch (AccountDoesNotExistsException | InsufficientBalanceException e) {
+      return e;
+    }
+  }
+}
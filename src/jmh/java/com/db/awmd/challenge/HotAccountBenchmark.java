@@ -0,0 +1,84 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.repository.AccountFactory;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transfers from one sender per thread into a single merchant account, which is either a regular
+ * account (every transfer serializes on its lock) or a hot, striped one (only the sender is locked).
+ * Run with increasing {@code -t}, or through {@code gradle jmhThreadSweep}, to see how credit
+ * throughput to the merchant scales with threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotAccountBenchmark {
+
+  private static final String MERCHANT = "Id-merchant";
+
+  @Param({"false", "true"})
+  private boolean hot;
+
+  private AccountsService accountsService;
+  private AsyncNotificationDispatcher notificationDispatcher;
+  private final AtomicInteger senders = new AtomicInteger();
+
+  @State(Scope.Thread)
+  public static class Sender {
+
+    private TransferRequestDetails transfer;
+
+    @Setup
+    public void setUp(HotAccountBenchmark benchmark) {
+      String accountId = "Id-sender-" + benchmark.senders.incrementAndGet();
+      benchmark.accountsService.createAccount(new Account(accountId, new BigDecimal(Long.MAX_VALUE / 1000)));
+      transfer = new TransferRequestDetails(accountId, MERCHANT, BigDecimal.ONE);
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    AccountFactory accountFactory = new AccountFactory(BalanceRepresentation.BIG_DECIMAL, 2,
+            hot ? new String[]{MERCHANT} : new String[0], 0);
+    notificationDispatcher = new AsyncNotificationDispatcher(10000, 256, NotificationBackpressure.DROP, 0);
+    accountsService = new AccountsService(new AccountsRepositoryInMemory(accountFactory), new OrderedAccountLocker(5000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+    accountsService.createAccount(new Account(MERCHANT, BigDecimal.ZERO));
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    notificationDispatcher.shutdown();
+  }
+
+  @Benchmark
+  public void creditMerchant(Sender sender) throws Exception {
+    accountsService.transferMoney(sender.transfer);
+  }
+}
@@ -0,0 +1,171 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.tcp.BinaryTransferProtocol;
+import com.db.awmd.challenge.tcp.BinaryTransferServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same transfers through PUT /v1/accounts/transfer and through the binary protocol listener
+ * of a running application, one client connection per benchmark thread. REST requests go one at a
+ * time over a kept-alive connection; binary requests keep {@code pipeline} transfers outstanding,
+ * so with a pipeline of 1 the two differ only in encoding and request handling. Compare the
+ * throughput, and the allocation per transfer with {@code -prof gc}; client and server share the
+ * machine, so their CPU costs add up in both cases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngressBenchmark {
+
+  @Param({"1000"})
+  private int accounts;
+
+  @Param({"1", "64"})
+  private int pipeline;
+
+  private ConfigurableApplicationContext context;
+  private String transferUrl;
+  private int binaryPort;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    context = SpringApplication.run(DevChallengeApplication.class, "--server.port=0", "--transfer.binary.enabled=true",
+        "--transfer.binary.port=0", "--logging.level.com.db.awmd=WARN", "--logging.level.org.springframework=WARN");
+    transferUrl = "http://localhost:" + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort()
+        + "/v1/accounts/transfer";
+    binaryPort = context.getBean(BinaryTransferServer.class).getPort();
+    AccountsService accountsService = context.getBean(AccountsService.class);
+    for (int i = 0; i < accounts; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1_000_000_000)));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @State(Scope.Thread)
+  public static class BinaryClient {
+
+    private SocketChannel channel;
+    private final ByteBuffer request = ByteBuffer.allocateDirect(4 + 8 + 8 + 2 + 2 * BinaryTransferProtocol.MAX_ID_BYTES);
+    private final ByteBuffer responses = ByteBuffer.allocateDirect(64 * 1024);
+    private long requestId;
+    private int outstanding;
+
+    @Setup(Level.Trial)
+    public void connect(IngressBenchmark benchmark) throws IOException {
+      channel = SocketChannel.open(new InetSocketAddress("localhost", benchmark.binaryPort));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+      awaitResponses(0);
+      channel.close();
+    }
+
+    private void send(String fromAccountId, String toAccountId, long amount) throws IOException {
+      request.clear();
+      BinaryTransferProtocol.writeRequest(request, ++requestId, fromAccountId, toAccountId, amount);
+      request.flip();
+      while (request.hasRemaining()) {
+        channel.write(request);
+      }
+      outstanding++;
+    }
+
+    private void awaitResponses(int maxOutstanding) throws IOException {
+      while (outstanding > maxOutstanding) {
+        if (channel.read(responses) < 0) {
+          throw new IOException("Connection closed by the server");
+        }
+        responses.flip();
+        while (responses.remaining() >= BinaryTransferProtocol.RESPONSE_BYTES) {
+          responses.getLong();
+          byte status = responses.get();
+          if (status != BinaryTransferProtocol.COMPLETED) {
+            throw new IllegalStateException("Transfer failed with status " + status);
+          }
+          outstanding--;
+        }
+        responses.compact();
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class RestClient {
+
+    private final byte[] buffer = new byte[8192];
+  }
+
+  @Benchmark
+  public void binary(BinaryClient client) throws IOException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int from = random.nextInt(accounts);
+    int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+    client.send("Id-" + from, "Id-" + to, 100);
+    client.awaitResponses(pipeline - 1);
+  }
+
+  @Benchmark
+  public int rest(RestClient client) throws IOException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int from = random.nextInt(accounts);
+    int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+    HttpURLConnection connection = (HttpURLConnection) new URL(transferUrl).openConnection();
+    connection.setRequestMethod("PUT");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/json");
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(("{\"fromAccountId\":\"Id-" + from + "\",\"toAccountId\":\"Id-" + to + "\",\"amount\":1}")
+          .getBytes(StandardCharsets.UTF_8));
+    }
+    int status = connection.getResponseCode();
+    try (InputStream response = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+      if (response != null) {
+        while (response.read(client.buffer) >= 0) {
+          // read fully so the connection is kept alive
+        }
+      }
+    }
+    if (status != 202) {
+      throw new IllegalStateException("HTTP " + status);
+    }
+    return status;
+  }
+}
@@ -0,0 +1,84 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.web.DomainJsonModule;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding and validating one request body, as the controller does per request: reflective
+ * binding plus a Bean Validation pass ({@code codec = reflective}) against the streaming codecs of
+ * {@link DomainJsonModule} plus the inline {@code validate()} ({@code codec = streaming}). Run with
+ * {@code -prof gc} and compare {@code gc.alloc.rate.norm}, the bytes allocated per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+  @Param({"reflective", "streaming"})
+  private String codec;
+
+  private final byte[] transferJson =
+      "{\"fromAccountId\":\"Id-12345\",\"toAccountId\":\"Id-67890\",\"amount\":125.50}".getBytes(StandardCharsets.UTF_8);
+  private final byte[] accountJson = "{\"accountId\":\"Id-12345\",\"balance\":1000.25}".getBytes(StandardCharsets.UTF_8);
+  private final Account account = new Account("Id-12345", new BigDecimal("1000.25"));
+
+  private ObjectReader transferReader;
+  private ObjectReader accountReader;
+  private ObjectWriter accountWriter;
+  private Validator validator;
+
+  @Setup
+  public void setUp() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    if ("streaming".equals(codec)) {
+      objectMapper.registerModule(new DomainJsonModule());
+    } else {
+      validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+    transferReader = objectMapper.readerFor(TransferRequestDetails.class);
+    accountReader = objectMapper.readerFor(Account.class);
+    accountWriter = objectMapper.writerFor(Account.class);
+  }
+
+  @Benchmark
+  public Object readTransfer() throws IOException {
+    TransferRequestDetails transfer = transferReader.readValue(transferJson);
+    return validator == null ? transfer.validate() : validator.validate(transfer);
+  }
+
+  @Benchmark
+  public Object readAccount() throws IOException {
+    Account account = accountReader.readValue(accountJson);
+    return validator == null ? account.validate() : validator.validate(account);
+  }
+
+  @Benchmark
+  public byte[] writeAccount() throws IOException {
+    return accountWriter.writeValueAsBytes(account);
+  }
+}
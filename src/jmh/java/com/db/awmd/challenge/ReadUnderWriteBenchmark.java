@@ -0,0 +1,82 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account reads while writers keep transferring between the same few accounts. Reads take no lock,
+ * so reader throughput should grow with the reader count regardless of the writers; vary it with
+ * {@code -tg <writers>,<readers>}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadUnderWriteBenchmark {
+
+  private static final int ACCOUNTS = 16;
+
+  private AccountsService accountsService;
+  private AsyncNotificationDispatcher notificationDispatcher;
+  private String[] accountIds;
+  private TransferRequestDetails[] transfers;
+
+  @Setup
+  public void setUp() {
+    notificationDispatcher = new AsyncNotificationDispatcher(10000, 256, NotificationBackpressure.DROP, 0);
+    accountsService = new AccountsService(new AccountsRepositoryInMemory(), new OrderedAccountLocker(5000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+    accountIds = new String[ACCOUNTS];
+    transfers = new TransferRequestDetails[ACCOUNTS];
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountIds[i] = "Id-" + i;
+      accountsService.createAccount(new Account(accountIds[i], new BigDecimal(1_000_000_000)));
+    }
+    for (int i = 0; i < ACCOUNTS; i++) {
+      transfers[i] = new TransferRequestDetails(accountIds[i], accountIds[(i + 1) % ACCOUNTS], BigDecimal.ONE);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    notificationDispatcher.shutdown();
+  }
+
+  @Benchmark
+  @Group("readUnderWrite")
+  @GroupThreads(2)
+  public void write() throws Exception {
+    accountsService.transferMoney(transfers[ThreadLocalRandom.current().nextInt(ACCOUNTS)]);
+  }
+
+  @Benchmark
+  @Group("readUnderWrite")
+  @GroupThreads(2)
+  public Account read() throws Exception {
+    return accountsService.getAccountSnapshot(accountIds[ThreadLocalRandom.current().nextInt(ACCOUNTS)]);
+  }
+}
@@ -0,0 +1,58 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.repository.AccountFactory;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.util.function.Supplier;
+
+/**
+ * Prints the heap and native memory used to hold N accounts in each repository implementation.
+ *
+ * <p>Usage: {@code RepositoryFootprint [accounts]}, 10 million by default. Needs a heap large
+ * enough for the in-memory store, e.g. {@code -Xmx8g}.
+ */
+public final class RepositoryFootprint {
+
+  private RepositoryFootprint() {
+  }
+
+  public static void main(String[] args) {
+    int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    AccountFactory bigDecimal = new AccountFactory(BalanceRepresentation.BIG_DECIMAL, 2);
+    AccountFactory fixedPoint = new AccountFactory(BalanceRepresentation.FIXED_POINT, 2);
+
+    measure("in-memory, BIG_DECIMAL", accounts, () -> new AccountsRepositoryInMemory(bigDecimal));
+    measure("in-memory, FIXED_POINT", accounts, () -> new AccountsRepositoryInMemory(fixedPoint));
+    ((OffHeapAccountsRepository) measure("off-heap", accounts,
+        () -> new OffHeapAccountsRepository(fixedPoint, accounts, 4096))).close();
+  }
+
+  private static AccountsRepository measure(String name, int accounts, Supplier<AccountsRepository> factory) {
+    long heapBefore = usedHeap();
+    AccountsRepository repository = factory.get();
+    for (int i = 0; i < accounts; i++) {
+      repository.createAccount(new Account("Id-" + i, BigDecimal.valueOf(100_000 + i, 2)));
+    }
+    long heapAfter = usedHeap();
+    long nativeBytes = repository instanceof OffHeapAccountsRepository
+        ? ((OffHeapAccountsRepository) repository).footprintBytes() : 0;
+    System.out.printf("%-24s %,d accounts: heap %,d MB, native %,d MB, %d bytes/account%n", name, accounts,
+        (heapAfter - heapBefore) >> 20, nativeBytes >> 20, (heapAfter - heapBefore + nativeBytes) / accounts);
+    return repository;
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
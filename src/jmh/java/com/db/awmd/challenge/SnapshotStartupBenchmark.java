@@ -0,0 +1,107 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.repository.AccountFactory;
+import com.db.awmd.challenge.repository.AccountJournal;
+import com.db.awmd.challenge.repository.AccountSnapshots;
+import com.db.awmd.challenge.repository.JournalingAccountsRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to rebuild the account map on startup, from a binary snapshot versus replaying the journal
+ * from the beginning. Each account is created and then receives one balance change, so the journal
+ * holds two records per account while the snapshot holds one entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms6g", "-Xmx6g"})
+public class SnapshotStartupBenchmark {
+
+  public enum Source { SNAPSHOT, JOURNAL }
+
+  @Param({"1000000", "10000000"})
+  private int accounts;
+
+  @Param({"SNAPSHOT", "JOURNAL"})
+  private Source source;
+
+  private final AccountFactory accountFactory = new AccountFactory(BalanceRepresentation.BIG_DECIMAL, 2);
+  private Path directory;
+  private JournalingAccountsRepository repository;
+
+  @Setup(Level.Trial)
+  public void writeState() throws IOException {
+    directory = Files.createTempDirectory("snapshot-startup");
+    if (source == Source.SNAPSHOT) {
+      Map<String, BigDecimal> balances = new HashMap<>(accounts * 2);
+      for (int i = 0; i < accounts; i++) {
+        balances.put("Id-" + i, BigDecimal.valueOf(1000 + i, 2));
+      }
+      new AccountSnapshots(directory).write(0, balances);
+    } else {
+      AccountJournal journal = journal();
+      journal.open(new AccountJournal.Visitor() {
+        @Override
+        public void onCreate(String accountId, BigDecimal balance) {
+        }
+
+        @Override
+        public void onBalanceChange(String accountId, BigDecimal change) {
+        }
+      });
+      for (int i = 0; i < accounts; i++) {
+        journal.appendCreate("Id-" + i, BigDecimal.TEN);
+        journal.appendBalanceChanges(new String[]{"Id-" + i}, new BigDecimal[]{BigDecimal.valueOf(i, 2)});
+      }
+      journal.close();
+    }
+  }
+
+  @Benchmark
+  public JournalingAccountsRepository start() throws IOException {
+    repository = new JournalingAccountsRepository(accountFactory, journal());
+    return repository;
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeRepository() throws IOException {
+    repository.close();
+    repository = null;
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteState() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  private AccountJournal journal() {
+    return new AccountJournal(directory, 64 << 20, 1024, 2);
+  }
+}
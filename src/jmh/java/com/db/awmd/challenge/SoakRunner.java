@@ -0,0 +1,352 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import com.db.awmd.challenge.service.AccountsService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load and soak test. Starts the application, seeds an account population and runs a mix of
+ * account creates, reads and transfers from many threads for a fixed time, either against
+ * {@link AccountsService} directly or against the controller over HTTP. Throughput and latency
+ * percentiles per operation are printed every report interval and for the whole run.
+ *
+ * <p>At the end it checks that concurrency neither created nor destroyed money: the balances of the
+ * run's accounts must add up to the seeded balances plus those of the accounts it created, and no
+ * balance may be negative. Accounts are named after the run, so accounts already in the repository
+ * are left out of the check.
+ *
+ * <p>Usage: {@code SoakRunner [name=value ...] [--application.property=value ...]} with
+ * <ul>
+ *   <li>{@code target} {@code service} (default) or {@code http}</li>
+ *   <li>{@code accounts} seeded accounts, 10000</li>
+ *   <li>{@code balance} seeded balance of each account, 1000</li>
+ *   <li>{@code threads} load threads, twice the cores</li>
+ *   <li>{@code warmup} seconds of load before measuring, 10</li>
+ *   <li>{@code duration} seconds measured, 60</li>
+ *   <li>{@code report} seconds between interval reports, 10</li>
+ *   <li>{@code mix} percentages of creates, reads and transfers, 5:25:70</li>
+ *   <li>{@code distribution} of the accounts read and transferred between, {@code UNIFORM} or
+ *   {@code ZIPF} (default, exponent 1.1)</li>
+ * </ul>
+ * Arguments starting with {@code --} configure the application, for example
+ * {@code --transfer.mode=sharded}. Exits with status 1 if the balance check fails or an operation
+ * failed unexpectedly.
+ */
+public final class SoakRunner {
+
+  private enum Operation { CREATE, GET, TRANSFER }
+
+  /** Every created account receives this balance, so the created money is a count times it */
+  private static final BigDecimal CREATED_BALANCE = new BigDecimal(100);
+  private static final int MAX_REPORTED_ERRORS = 10;
+
+  private final Client client;
+  private final AccountsService accountsService;
+  private final String prefix = "Soak-" + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX) + "-";
+  private final int accounts;
+  private final BigDecimal balance;
+  private final int threads;
+  private final long warmupSeconds;
+  private final long durationSeconds;
+  private final long reportSeconds;
+  private final int createPercent;
+  private final int getPercent;
+  private final AccountKeys keys;
+
+  private final Recorder[] recorders = new Recorder[Operation.values().length];
+  private final Histogram[] totals = new Histogram[Operation.values().length];
+  private final LongAdder created = new LongAdder();
+  private final LongAdder refused = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final AtomicInteger reportedErrors = new AtomicInteger();
+
+  private SoakRunner(Map<String, String> options, ConfigurableApplicationContext context) {
+    accountsService = context.getBean(AccountsService.class);
+    String target = options.getOrDefault("target", "service");
+    if ("http".equals(target)) {
+      int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+      client = new HttpClient("http://localhost:" + port + "/v1/accounts");
+    } else if ("service".equals(target)) {
+      client = new ServiceClient(accountsService);
+    } else {
+      throw new IllegalArgumentException("Unknown target " + target + ", expected service or http");
+    }
+    accounts = Integer.parseInt(options.getOrDefault("accounts", "10000"));
+    balance = new BigDecimal(options.getOrDefault("balance", "1000"));
+    threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+    warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "10"));
+    durationSeconds = Long.parseLong(options.getOrDefault("duration", "60"));
+    reportSeconds = Long.parseLong(options.getOrDefault("report", "10"));
+    String[] mix = options.getOrDefault("mix", "5:25:70").split(":");
+    createPercent = Integer.parseInt(mix[0]);
+    getPercent = Integer.parseInt(mix[1]);
+    if (mix.length != 3 || createPercent + getPercent + Integer.parseInt(mix[2]) != 100) {
+      throw new IllegalArgumentException("mix must be three percentages adding up to 100, was " + options.get("mix"));
+    }
+    keys = new AccountKeys(AccountKeys.Distribution.valueOf(options.getOrDefault("distribution", "ZIPF")), accounts, 1.1);
+    for (Operation operation : Operation.values()) {
+      recorders[operation.ordinal()] = new Recorder(3);
+      totals[operation.ordinal()] = new Histogram(3);
+    }
+    System.out.printf(Locale.ROOT, "Soak test against %s: %d accounts, %d threads, %d s, mix %s%n",
+        target, accounts, threads, durationSeconds, String.join(":", mix));
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    List<String> applicationArgs = new ArrayList<>();
+    applicationArgs.add("--server.port=0");
+    applicationArgs.add("--logging.level.com.db.awmd=WARN");
+    for (String arg : args) {
+      if (arg.startsWith("--")) {
+        applicationArgs.add(arg);
+      } else {
+        String[] option = arg.split("=", 2);
+        options.put(option[0], option.length > 1 ? option[1] : "");
+      }
+    }
+    ConfigurableApplicationContext context = SpringApplication.run(DevChallengeApplication.class,
+        applicationArgs.toArray(new String[0]));
+    boolean passed;
+    try {
+      passed = new SoakRunner(options, context).run();
+    } finally {
+      context.close();
+    }
+    System.exit(passed ? 0 : 1);
+  }
+
+  private boolean run() throws InterruptedException {
+    for (int i = 0; i < accounts; i++) {
+      accountsService.createAccount(new Account(prefix + i, balance));
+    }
+
+    long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+    long deadline = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      int worker = i;
+      Thread thread = new Thread(() -> work(worker, deadline), "soak-" + i);
+      thread.start();
+      workers.add(thread);
+    }
+    if (warmupSeconds > 0) {
+      System.out.printf(Locale.ROOT, "Warming up for %d s%n", warmupSeconds);
+      TimeUnit.NANOSECONDS.sleep(Math.max(0, warmupEnd - System.nanoTime()));
+      for (Recorder recorder : recorders) {
+        recorder.getIntervalHistogram();
+      }
+    }
+    long start = System.nanoTime();
+
+    long reported = start;
+    while (reported - deadline < 0) {
+      TimeUnit.NANOSECONDS.sleep(Math.max(0, Math.min(reported + TimeUnit.SECONDS.toNanos(reportSeconds), deadline) - System.nanoTime()));
+      long now = System.nanoTime();
+      System.out.printf(Locale.ROOT, "-- %d s%n", Math.round((now - start) / 1e9));
+      for (Operation operation : Operation.values()) {
+        Histogram interval = recorders[operation.ordinal()].getIntervalHistogram();
+        totals[operation.ordinal()].add(interval);
+        print(operation, interval, now - reported);
+      }
+      reported = now;
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsedNanos = System.nanoTime() - start;
+    System.out.printf(Locale.ROOT, "== total%n");
+    for (Operation operation : Operation.values()) {
+      totals[operation.ordinal()].add(recorders[operation.ordinal()].getIntervalHistogram());
+      print(operation, totals[operation.ordinal()], elapsedNanos);
+    }
+    System.out.printf(Locale.ROOT, "refused transfers %d, unexpected errors %d%n", refused.sum(), errors.sum());
+    return checkBalances() && errors.sum() == 0;
+  }
+
+  private void work(int worker, long deadline) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int creates = 0;
+    while (System.nanoTime() - deadline < 0) {
+      int roll = random.nextInt(100);
+      Operation operation = roll < createPercent ? Operation.CREATE
+          : roll < createPercent + getPercent ? Operation.GET : Operation.TRANSFER;
+      long start = System.nanoTime();
+      try {
+        switch (operation) {
+          case CREATE:
+            client.create(prefix + "c" + worker + "-" + creates++, CREATED_BALANCE);
+            created.increment();
+            break;
+          case GET:
+            client.get(prefix + keys.next(random));
+            break;
+          default:
+            int from = keys.next(random);
+            if (!client.transfer(prefix + from, prefix + keys.nextOther(random, from), new BigDecimal(1 + random.nextInt(100)))) {
+              refused.increment();
+            }
+        }
+      } catch (Exception e) {
+        errors.increment();
+        if (reportedErrors.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+          System.out.printf(Locale.ROOT, "%s failed: %s%n", operation, e);
+        }
+      }
+      recorders[operation.ordinal()].recordValue(System.nanoTime() - start);
+    }
+  }
+
+  private boolean checkBalances() {
+    BigDecimal expected = balance.multiply(BigDecimal.valueOf(accounts)).add(CREATED_BALANCE.multiply(BigDecimal.valueOf(created.sum())));
+    BigDecimal[] sum = {BigDecimal.ZERO};
+    long[] counts = new long[2];
+    accountsService.forEachAccount(account -> {
+      if (account.getAccountId().startsWith(prefix)) {
+        sum[0] = sum[0].add(account.getBalance());
+        counts[0]++;
+        if (account.getBalance().signum() < 0) {
+          counts[1]++;
+        }
+      }
+    });
+    boolean passed = sum[0].compareTo(expected) == 0 && counts[0] == accounts + created.sum() && counts[1] == 0;
+    System.out.printf(Locale.ROOT, "Balance check %s: %d accounts (expected %d) hold %s (expected %s), %d negative%n",
+        passed ? "passed" : "FAILED", counts[0], accounts + created.sum(), sum[0].toPlainString(), expected.toPlainString(), counts[1]);
+    return passed;
+  }
+
+  private static void print(Operation operation, Histogram latencies, long elapsedNanos) {
+    System.out.printf(Locale.ROOT, "%-8s %10.0f ops/s  p50 %8.1f  p99 %8.1f  p99.9 %8.1f  max %9.1f us%n",
+        operation, latencies.getTotalCount() * 1e9 / elapsedNanos,
+        latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+        latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMaxValue() / 1e3);
+  }
+
+  private interface Client {
+
+    void create(String accountId, BigDecimal balance) throws Exception;
+
+    void get(String accountId) throws Exception;
+
+    /**
+     * Returns false if the transfer was refused for lack of balance or a lock timeout.
+     */
+    boolean transfer(String fromAccountId, String toAccountId, BigDecimal amount) throws Exception;
+  }
+
+  private static final class ServiceClient implements Client {
+
+    private final AccountsService accountsService;
+
+    private ServiceClient(AccountsService accountsService) {
+      this.accountsService = accountsService;
+    }
+
+    @Override
+    public void create(String accountId, BigDecimal balance) {
+      accountsService.createAccount(new Account(accountId, balance));
+    }
+
+    @Override
+    public void get(String accountId) throws Exception {
+      accountsService.getAccountSnapshot(accountId);
+    }
+
+    @Override
+    public boolean transfer(String fromAccountId, String toAccountId, BigDecimal amount) throws Exception {
+      try {
+        accountsService.transferMoney(new TransferRequestDetails(fromAccountId, toAccountId, amount));
+        return true;
+      } catch (InsufficientBalanceException | TransferLockTimeoutException e) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Plain {@link HttpURLConnection}s, which keep connections alive per thread as long as every
+   * response is read to the end.
+   */
+  private static final class HttpClient implements Client {
+
+    private final String baseUrl;
+
+    private HttpClient(String baseUrl) {
+      this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public void create(String accountId, BigDecimal balance) throws IOException {
+      expect(request("POST", baseUrl, "{\"accountId\":\"" + accountId + "\",\"balance\":" + balance + "}"), 201);
+    }
+
+    @Override
+    public void get(String accountId) throws IOException {
+      expect(request("GET", baseUrl + "/" + accountId, null), 200);
+    }
+
+    @Override
+    public boolean transfer(String fromAccountId, String toAccountId, BigDecimal amount) throws IOException {
+      int status = request("PUT", baseUrl + "/transfer",
+          "{\"fromAccountId\":\"" + fromAccountId + "\",\"toAccountId\":\"" + toAccountId + "\",\"amount\":" + amount + "}");
+      if (status == 403 || status == 503) {
+        return false;
+      }
+      expect(status, 202);
+      return true;
+    }
+
+    private static int request(String method, String url, String body) throws IOException {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setRequestMethod(method);
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      int status = connection.getResponseCode();
+      try (InputStream response = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+        if (response != null) {
+          byte[] buffer = new byte[8192];
+          while (response.read(buffer) >= 0) {
+            // read fully so the connection can be reused
+          }
+        }
+      }
+      return status;
+    }
+
+    private static void expect(int status, int expected) {
+      if (status != expected) {
+        throw new IllegalStateException("HTTP " + status + ", expected " + expected);
+      }
+    }
+  }
+}
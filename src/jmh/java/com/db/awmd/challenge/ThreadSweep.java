@@ -0,0 +1,36 @@
+package com.db.awmd.challenge;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the hot-path benchmarks at 1, 2, 4 ... up to the given number of threads with the gc
+ * profiler attached, writing one JSON result file per thread count.
+ *
+ * <p>Usage: {@code ThreadSweep [maxThreads] [includeRegex]}, by default every core and the
+ * transfer, lookup and create benchmarks.
+ */
+public final class ThreadSweep {
+
+  private ThreadSweep() {
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    String include = args.length > 1 ? args[1] : "(Transfer|CreateAccount)Benchmark";
+    for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(threads * 2, maxThreads) : threads + 1) {
+      Options options = new OptionsBuilder()
+          .include(include)
+          .threads(threads)
+          .addProfiler(GCProfiler.class)
+          .resultFormat(ResultFormatType.JSON)
+          .result("jmh-" + threads + "-threads.json")
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
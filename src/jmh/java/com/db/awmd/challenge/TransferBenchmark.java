@@ -0,0 +1,99 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import com.db.awmd.challenge.service.TransactionLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers and lookups against a pre-populated repository, with account ids drawn uniformly or
+ * from a Zipf distribution that concentrates traffic (and lock contention) on a few hot accounts.
+ * Run with {@code -t} or through {@link ThreadSweep} to vary the thread count and with
+ * {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+
+  @Param({"10000"})
+  private int accounts;
+
+  @Param({"UNIFORM", "ZIPF"})
+  private AccountKeys.Distribution distribution;
+
+  @Param({"1.1"})
+  private double zipfExponent;
+
+  /** Postings retained by the transaction ledger, 0 disables it */
+  @Param({"1048576"})
+  private long ledgerCapacity;
+
+  private AccountsRepository repository;
+  private AccountsService accountsService;
+  private AsyncNotificationDispatcher notificationDispatcher;
+  private AccountKeys keys;
+  private String[] accountIds;
+  private TransferRequestDetails[] transfers;
+
+  @Setup
+  public void setUp() {
+    repository = new AccountsRepositoryInMemory();
+    notificationDispatcher = new AsyncNotificationDispatcher(10000, 256, NotificationBackpressure.DROP, 0);
+    accountsService = new AccountsService(repository, new OrderedAccountLocker(5000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+    accountsService.setTransactionLedger(new TransactionLedger(ledgerCapacity));
+    keys = new AccountKeys(distribution, accounts, zipfExponent);
+    accountIds = new String[accounts];
+    for (int i = 0; i < accounts; i++) {
+      accountIds[i] = "Id-" + i;
+      accountsService.createAccount(new Account(accountIds[i], new BigDecimal(1_000_000_000)));
+    }
+    // Requests are prebuilt so the benchmark measures the service, not request construction
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    transfers = new TransferRequestDetails[1 << 16];
+    for (int i = 0; i < transfers.length; i++) {
+      int from = keys.next(random);
+      transfers[i] = new TransferRequestDetails(accountIds[from], accountIds[keys.nextOther(random, from)], BigDecimal.ONE);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    notificationDispatcher.shutdown();
+  }
+
+  @Benchmark
+  public void transferMoney() throws Exception {
+    accountsService.transferMoney(transfers[ThreadLocalRandom.current().nextInt(transfers.length)]);
+  }
+
+  @Benchmark
+  public Account getAccount() throws Exception {
+    return repository.getAccount(accountIds[keys.next(ThreadLocalRandom.current())]);
+  }
+}
@@ -31,4 +31,21 @@ public class Account {
     this.accountId = accountId;
     this.balance = balance;
   }
+
+  /**
+   * The first of the bean constraints this account breaks, or null if it is valid; lets hot paths
+   * check the constraints inline instead of invoking a validator.
+   */
+  public String validate() {
+    if (accountId == null || accountId.isEmpty()) {
+      return "accountId cannot be empty";
+    }
+    if (balance == null) {
+      return "balance cannot be null";
+    }
+    if (balance.signum() < 0) {
+      return "Initial balance must be positive.";
+    }
+    return null;
+  }
 }
@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class AccountImportResult {
+
+  private final long received;
+
+  private final long created;
+
+  private final long duplicates;
+
+  private final long invalid;
+
+  /** The first duplicate ids, up to the configured report limit. */
+  private final List<String> duplicateIds;
+
+  /** The first invalid lines as "line N: reason", up to the configured report limit. */
+  private final List<String> errors;
+
+  private final long elapsedMillis;
+}
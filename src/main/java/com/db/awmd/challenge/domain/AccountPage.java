@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of an account listing. {@code nextCursor} fetches the following page and is null on the
+ * last one.
+ */
+@Data
+public class AccountPage {
+
+  private final List<Account> accounts;
+
+  private final String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountQueryEntry {
+
+  private final String accountId;
+
+  private final AccountQueryStatus status;
+
+  private final BigDecimal balance;
+}
@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class AccountQueryResult {
+
+  private final int found;
+
+  private final int missing;
+
+  private final List<AccountQueryEntry> accounts;
+}
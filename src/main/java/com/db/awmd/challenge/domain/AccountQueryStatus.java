@@ -0,0 +1,7 @@
+package com.db.awmd.challenge.domain;
+
+public enum AccountQueryStatus {
+
+  FOUND,
+  NOT_FOUND
+}
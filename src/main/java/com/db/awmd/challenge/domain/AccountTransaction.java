@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One balance change of an account, as kept by the transaction ledger. {@code amount} is negative
+ * for a debit. Postings made by the same transfer share a {@code transactionId}; a transfer between
+ * two accounts names the other account as counterparty, a multi-leg transfer has none.
+ */
+@Data
+public class AccountTransaction {
+
+  private final long id;
+
+  private final long transactionId;
+
+  /** Epoch milliseconds */
+  private final long timestamp;
+
+  private final BigDecimal amount;
+
+  private final String counterpartyAccountId;
+}
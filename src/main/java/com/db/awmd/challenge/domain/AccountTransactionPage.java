@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of an account's transaction history, newest first. {@code nextCursor} fetches the older
+ * transactions and is null once the oldest retained one has been returned.
+ */
+@Data
+public class AccountTransactionPage {
+
+  private final List<AccountTransaction> transactions;
+
+  private final String nextCursor;
+}
@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.domain;
+
+public enum BalanceRepresentation {
+
+  /** Balance kept as a {@link java.math.BigDecimal}, changed under the account lock. */
+  BIG_DECIMAL,
+  /** Balance kept as a scaled count of minor units in an atomic long, changed by CAS. */
+  FIXED_POINT
+}
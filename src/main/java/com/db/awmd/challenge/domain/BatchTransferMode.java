@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.domain;
+
+public enum BatchTransferMode {
+
+  /** Either every transfer of the batch is applied or none is. */
+  ALL_OR_NOTHING,
+  /** Every transfer that can be applied is applied; the others are reported individually. */
+  BEST_EFFORT
+}
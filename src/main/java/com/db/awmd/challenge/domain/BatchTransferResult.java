@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchTransferResult {
+
+  private final BatchTransferMode mode;
+
+  private final int completed;
+
+  private final int failed;
+
+  private final List<TransferResult> results;
+}
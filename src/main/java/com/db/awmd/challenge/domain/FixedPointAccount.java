@@ -0,0 +1,114 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Account whose balance is a count of minor units (balance * 10^scale) in an {@link AtomicLong}.
+ * Debits and credits are CAS loops that neither lock nor allocate; the decimal balance is only
+ * materialised at the JSON boundary through {@link #getBalance()}.
+ */
+public class FixedPointAccount extends SyncAccount {
+
+    private final AtomicLong minorUnits = new AtomicLong();
+
+    private final int scale;
+
+    public FixedPointAccount(String accountId, BigDecimal balance, int scale) {
+        super(accountId, null);
+        this.scale = scale;
+        this.minorUnits.set(toMinorUnits(balance == null ? BigDecimal.ZERO : balance));
+    }
+
+    /**
+     * For accounts whose minor units live elsewhere; subclasses override every minor-unit accessor.
+     */
+    protected FixedPointAccount(String accountId, int scale, VersionedLock lock) {
+        super(accountId, null, lock);
+        this.scale = scale;
+    }
+
+    @JsonIgnore
+    public int getScale() {
+        return scale;
+    }
+
+    @JsonIgnore
+    public long getMinorUnits() {
+        return minorUnits.get();
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return BigDecimal.valueOf(minorUnits.get(), scale);
+    }
+
+    @Override
+    public void setBalance(BigDecimal balance) {
+        minorUnits.set(toMinorUnits(balance));
+    }
+
+    /**
+     * Converts a decimal amount to minor units of this account's scale.
+     *
+     * @throws ArithmeticException if the amount has more decimal places than the scale or does not
+     *                             fit in a long
+     */
+    public long toMinorUnits(BigDecimal amount) {
+        return amount.movePointRight(scale).longValueExact();
+    }
+
+    public boolean tryDebitMinorUnits(long amount) {
+        while (true) {
+            long current = minorUnits.get();
+            if (current < amount) {
+                return false;
+            }
+            if (minorUnits.compareAndSet(current, current - amount)) {
+                return true;
+            }
+        }
+    }
+
+    public void creditMinorUnits(long amount) {
+        while (true) {
+            long current = minorUnits.get();
+            if (minorUnits.compareAndSet(current, Math.addExact(current, amount))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * False if the change has more decimal places than the scale or the resulting count of minor
+     * units would not fit in a long.
+     */
+    @Override
+    public boolean canAdjustBalance(BigDecimal change) {
+        long amount;
+        try {
+            amount = toMinorUnits(change);
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        long current = getMinorUnits();
+        return amount >= 0 ? current <= Long.MAX_VALUE - amount : current >= Long.MIN_VALUE - amount;
+    }
+
+    @Override
+    public boolean tryDebit(BigDecimal amount) {
+        return tryDebitMinorUnits(toMinorUnits(amount));
+    }
+
+    @Override
+    public void credit(BigDecimal amount) {
+        creditMinorUnits(toMinorUnits(amount));
+    }
+
+    @Override
+    public void adjustBalance(BigDecimal change) {
+        creditMinorUnits(toMinorUnits(change));
+    }
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Debits several accounts and credits several others as one transfer, e.g. a payment split between
+ * a merchant and a fee account. The debits and the credits must add up to the same total.
+ */
+@Data
+public class MultiLegTransferRequest {
+
+  private final List<TransferLeg> debits;
+
+  private final List<TransferLeg> credits;
+
+  @JsonCreator
+  public MultiLegTransferRequest(@JsonProperty("debits") List<TransferLeg> debits,
+                                 @JsonProperty("credits") List<TransferLeg> credits) {
+    this.debits = debits;
+    this.credits = credits;
+  }
+}
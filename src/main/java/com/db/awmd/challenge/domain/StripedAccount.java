@@ -0,0 +1,161 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-point account for a "hot" receiver, whose balance is split over several sub-balances so
+ * that concurrent credits do not contend. Credits add to the sub-balance picked by the crediting
+ * thread and need neither the account lock nor exclusive access, see {@link #isCreditLockFree()}.
+ * Debits still run under {@link #getLock()}: they check the summed balance and then drain
+ * sub-balances, borrowing from every other stripe when the first does not cover the amount.
+ * Credits only ever add, so the amount counted is still there while it is drained.
+ *
+ * <p>Reads sum the stripes and are validated against a drain sequence of the account's own, odd
+ * only while a debit or reset is rewriting the stripes, so the total never shows a debit half
+ * drained; every credit and debit completed before the read is counted. The sequence covers only
+ * those few stripe updates, not the whole time the lock is held, so a read never waits for a lock
+ * holder, e.g. a multi-leg transfer or batch still working on other accounts.
+ */
+public class StripedAccount extends FixedPointAccount {
+
+    /** Longs per stripe; stripes are a cache line apart so crediting threads do not share lines. */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray stripes;
+
+    private final int mask;
+
+    /** Odd while the lock holder is rewriting stripes; written only under {@link #getLock()}. */
+    private volatile long drains;
+
+    /**
+     * @param stripes number of sub-balances, a power of two
+     */
+    public StripedAccount(String accountId, BigDecimal balance, int scale, int stripes) {
+        super(accountId, scale, new VersionedLock());
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two, was " + stripes);
+        }
+        this.stripes = new AtomicLongArray(stripes * PADDING);
+        this.mask = stripes - 1;
+        this.stripes.set(0, toMinorUnits(balance == null ? BigDecimal.ZERO : balance));
+    }
+
+    @JsonIgnore
+    public int getStripeCount() {
+        return mask + 1;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isCreditLockFree() {
+        return true;
+    }
+
+    @Override
+    @JsonIgnore
+    public long getMinorUnits() {
+        if (getLock().isHeldByCurrentThread()) {
+            return sum();
+        }
+        while (true) {
+            long drain = drains;
+            long total = sum();
+            if ((drain & 1) == 0 && drains == drain) {
+                return total;
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return BigDecimal.valueOf(getMinorUnits(), getScale());
+    }
+
+    /**
+     * Replaces the balance. The caller must hold {@link #getLock()}; a credit landing meanwhile is
+     * kept if it reaches its stripe after the stripe was reset.
+     */
+    @Override
+    public void setBalance(BigDecimal balance) {
+        long minorUnits = toMinorUnits(balance);
+        drains++;
+        for (int i = 1; i <= mask; i++) {
+            stripes.set(i * PADDING, 0);
+        }
+        stripes.set(0, minorUnits);
+        drains++;
+    }
+
+    /**
+     * Debits the amount if the summed balance covers it. The caller must hold {@link #getLock()}.
+     */
+    @Override
+    public boolean tryDebitMinorUnits(long amount) {
+        if (sum() < amount) {
+            return false;
+        }
+        long remaining = amount;
+        int first = stripeOfCurrentThread();
+        drains++;
+        for (int n = 0; remaining > 0; n++) {
+            int index = ((first + n) & mask) * PADDING;
+            while (true) {
+                long current = stripes.get(index);
+                long taken = Math.min(Math.max(current, 0), remaining);
+                if (taken == 0 || stripes.compareAndSet(index, current, current - taken)) {
+                    remaining -= taken;
+                    break;
+                }
+            }
+        }
+        drains++;
+        return true;
+    }
+
+    /**
+     * Credits the amount on the stripe of the calling thread; needs no lock.
+     */
+    @Override
+    public void creditMinorUnits(long amount) {
+        int index = stripeOfCurrentThread() * PADDING;
+        while (true) {
+            long current = stripes.get(index);
+            if (stripes.compareAndSet(index, current, Math.addExact(current, amount))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A negative change is drained like a debit, so no stripe ever goes negative and no stripe holds
+     * more than the whole balance: a credit that fits the balance fits its stripe. The caller must
+     * hold {@link #getLock()}.
+     */
+    @Override
+    public void adjustBalance(BigDecimal change) {
+        long amount = toMinorUnits(change);
+        if (amount >= 0) {
+            creditMinorUnits(amount);
+        } else if (!tryDebitMinorUnits(-amount)) {
+            throw new IllegalStateException("Balance of account id " + getAccountId() + " does not cover " + change);
+        }
+    }
+
+    private long sum() {
+        long total = 0;
+        for (int i = 0; i <= mask; i++) {
+            total += stripes.get(i * PADDING);
+        }
+        return total;
+    }
+
+    private int stripeOfCurrentThread() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & mask;
+    }
+}
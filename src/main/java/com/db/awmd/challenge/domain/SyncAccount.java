@@ -4,19 +4,104 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 
 import java.math.BigDecimal;
-import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Account as held by the repositories. Writers change the balance under {@link #getLock()}; the
+ * balance itself is an immutable {@link BigDecimal} replaced through a volatile field, so readers
+ * never need the lock and always see a whole value.
+ */
 public class SyncAccount extends Account {
 
     @JsonIgnore
     @Getter
-    ReentrantLock lock = new ReentrantLock(true);
+    VersionedLock lock = new VersionedLock();
+
+    private volatile BigDecimal balance;
 
     public SyncAccount(String accountId) {
-        super(accountId);
+        this(accountId, BigDecimal.ZERO);
     }
 
     public SyncAccount(String accountId, BigDecimal balance) {
-        super(accountId, balance);
+        super(accountId, null);
+        this.balance = balance;
+    }
+
+    /**
+     * For stores that hand out several account objects sharing one lock, e.g. lock stripes.
+     */
+    protected SyncAccount(String accountId, BigDecimal balance, VersionedLock lock) {
+        this(accountId, balance);
+        this.lock = lock;
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    @Override
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    /**
+     * Detached copy of the account with its current balance, read without taking the lock. Later
+     * transfers do not change the copy, so it can be serialized while they run.
+     */
+    public Account snapshot() {
+        return new Account(getAccountId(), getBalance());
+    }
+
+    /**
+     * Locks are acquired in ascending rank, then account id. Accounts that share a lock must have
+     * the same rank so that lock is never taken out of order.
+     */
+    @JsonIgnore
+    public int getLockRank() {
+        return 0;
+    }
+
+    /**
+     * True if {@link #credit(BigDecimal) credits} are safe without holding {@link #getLock()}, so a
+     * transfer into this account only needs the sender's lock.
+     */
+    @JsonIgnore
+    public boolean isCreditLockFree() {
+        return false;
+    }
+
+    /**
+     * Debits the amount if the balance covers it. The caller must hold {@link #getLock()}.
+     */
+    public boolean tryDebit(BigDecimal amount) {
+        if (getBalance().compareTo(amount) < 0) {
+            return false;
+        }
+        setBalance(getBalance().subtract(amount));
+        return true;
+    }
+
+    /**
+     * Credits the amount. The caller must hold {@link #getLock()}.
+     */
+    public void credit(BigDecimal amount) {
+        setBalance(getBalance().add(amount));
+    }
+
+    /**
+     * True if the balance can take the signed change without leaving the range this account can
+     * represent. A {@link BigDecimal} balance has no upper bound; negative results are the caller's
+     * to check.
+     */
+    public boolean canAdjustBalance(BigDecimal change) {
+        return true;
+    }
+
+    /**
+     * Applies a signed, already validated balance change. The caller must hold {@link #getLock()}.
+     */
+    public void adjustBalance(BigDecimal change) {
+        setBalance(getBalance().add(change));
     }
 }
@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One debit or credit of a {@link MultiLegTransferRequest}; the amount is always positive.
+ */
+@Data
+public class TransferLeg {
+
+  private final String accountId;
+
+  private final BigDecimal amount;
+
+  @JsonCreator
+  public TransferLeg(@JsonProperty("accountId") String accountId,
+                     @JsonProperty("amount") BigDecimal amount) {
+    this.accountId = accountId;
+    this.amount = amount;
+  }
+}
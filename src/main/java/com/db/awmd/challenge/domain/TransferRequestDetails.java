@@ -24,13 +24,54 @@ public class TransferRequestDetails {
     @Min(value = 1, message = "Invalid amount to be transferred: Cannot be less than 1")
     private final BigDecimal amount;
 
+    /**
+     * Optional client-chosen key; a retry with the same key gets the outcome of the first attempt
+     * instead of transferring again.
+     */
+    private final String idempotencyKey;
+
+    public TransferRequestDetails(String fromAccountId, String toAccountId, BigDecimal amount) {
+        this(fromAccountId, toAccountId, amount, null);
+    }
 
     @JsonCreator
     public TransferRequestDetails(@JsonProperty("fromAccountId") String fromAccountId,
                                   @JsonProperty("toAccountId") String toAccountId,
-                                  @JsonProperty("amountToTransfer") BigDecimal amount){
+                                  @JsonProperty("amountToTransfer") BigDecimal amount,
+                                  @JsonProperty("idempotencyKey") String idempotencyKey){
         this.fromAccountId = fromAccountId;
         this.toAccountId = toAccountId;
         this.amount = amount;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public TransferRequestDetails withIdempotencyKey(String idempotencyKey) {
+        return new TransferRequestDetails(fromAccountId, toAccountId, amount, idempotencyKey);
+    }
+
+    /**
+     * The first of the bean constraints this transfer breaks, with its message, or null if it is
+     * valid; lets hot paths check the constraints inline instead of invoking a validator.
+     */
+    public String validate() {
+        if (fromAccountId == null) {
+            return "From Account Id cannot be null";
+        }
+        if (fromAccountId.isEmpty()) {
+            return "From Account Id cannot be empty";
+        }
+        if (toAccountId == null) {
+            return "To Account Id cannot be null";
+        }
+        if (toAccountId.isEmpty()) {
+            return "To Account Id cannot be empty";
+        }
+        if (amount == null) {
+            return "Invalid amount to be transferred: Cannot be null";
+        }
+        if (amount.compareTo(BigDecimal.ONE) < 0) {
+            return "Invalid amount to be transferred: Cannot be less than 1";
+        }
+        return null;
     }
 }
@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferResult {
+
+  private final int index;
+
+  private final TransferStatus status;
+
+  private final String message;
+}
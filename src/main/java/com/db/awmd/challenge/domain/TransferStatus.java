@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+public enum TransferStatus {
+
+  /** Accepted for a retry that has not finished yet. */
+  PENDING,
+  COMPLETED,
+  INVALID_REQUEST,
+  ACCOUNT_NOT_FOUND,
+  INSUFFICIENT_BALANCE,
+  LOCK_TIMEOUT,
+  /** Valid on its own but not applied because another transfer of an all-or-nothing batch failed. */
+  ABORTED,
+  /** Failed unexpectedly, see the message. */
+  FAILED
+}
@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * State of a transfer handed to the retry scheduler after its first attempt timed out on account
+ * locks, as returned by GET /v1/accounts/transfer/{transferId}. {@code attempts} includes that
+ * first attempt.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferTicket {
+
+  private final String transferId;
+
+  private final TransferStatus status;
+
+  private final int attempts;
+
+  private final String message;
+}
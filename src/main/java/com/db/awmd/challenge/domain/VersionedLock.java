@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Account lock that also acts as a seqlock for lock-free readers. The version is odd while a
+ * holder may be changing the guarded balances and even otherwise, so a reader that sees the same
+ * even version before and after reading knows no locked change overlapped its read.
+ */
+public class VersionedLock extends ReentrantLock {
+
+  private volatile long version;
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Opens a write section. Only the holder calls this, right after its outermost acquisition.
+   */
+  public void beginWrite() {
+    version++;
+  }
+
+  /**
+   * Closes the write section. Only the holder calls this, right before its outermost release.
+   */
+  public void endWrite() {
+    version++;
+  }
+}
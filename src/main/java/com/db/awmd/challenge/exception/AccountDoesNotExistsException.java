@@ -1,7 +1,31 @@
 package com.db.awmd.challenge.exception;
 
+/**
+ * No account has the requested id. Any client can send unknown ids, so the exception captures no
+ * stack trace, and {@link #forAccount(String)} formats its message only when it is read.
+ */
 public class AccountDoesNotExistsException extends Exception {
+    private final String accountId;
+
     public AccountDoesNotExistsException(String message) {
-        super(message);
+        this(message, null);
+    }
+
+    private AccountDoesNotExistsException(String message, String accountId) {
+        super(message, null, false, false);
+        this.accountId = accountId;
+    }
+
+    public static AccountDoesNotExistsException forAccount(String accountId) {
+        return new AccountDoesNotExistsException(null, accountId);
+    }
+
+    public static String message(String accountId) {
+        return "Account id " + accountId + " does not exists!";
+    }
+
+    @Override
+    public String getMessage() {
+        return accountId == null ? super.getMessage() : message(accountId);
     }
 }
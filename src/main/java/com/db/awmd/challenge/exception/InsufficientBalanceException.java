@@ -1,8 +1,33 @@
 package com.db.awmd.challenge.exception;
 
+/**
+ * The sender's balance does not cover the debit; nothing was changed. Overdraft attempts are part
+ * of normal traffic, so they are signalled without filling in a stack trace, and the message of
+ * {@link #forAccount(String)} is built only if someone asks for it.
+ */
 public class InsufficientBalanceException extends Exception {
 
+    private final String accountId;
+
     public InsufficientBalanceException(String message){
-        super(message);
+        this(message, null);
+    }
+
+    private InsufficientBalanceException(String message, String accountId) {
+        super(message, null, false, false);
+        this.accountId = accountId;
+    }
+
+    public static InsufficientBalanceException forAccount(String accountId) {
+        return new InsufficientBalanceException(null, accountId);
+    }
+
+    public static String message(String accountId) {
+        return "Insufficient account balance in accountId:" + accountId + "to perform this transaction";
+    }
+
+    @Override
+    public String getMessage() {
+        return accountId == null ? super.getMessage() : message(accountId);
     }
 }
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class InvalidAccountIdException extends RuntimeException {
+
+  public InvalidAccountIdException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class InvalidBalanceException extends RuntimeException {
+
+  public InvalidBalanceException(String message) {
+    super(message);
+  }
+}
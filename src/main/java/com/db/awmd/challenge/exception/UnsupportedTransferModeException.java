@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class UnsupportedTransferModeException extends RuntimeException {
+
+  public UnsupportedTransferModeException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.domain.FixedPointAccount;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Creates the stored representation of a new account according to
+ * {@code accounts.balance.representation}.
+ */
+@Component
+public class AccountFactory {
+
+  private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
+  @Getter
+  private final BalanceRepresentation representation;
+
+  @Getter
+  private final int scale;
+
+  private final Set<String> hotAccountIds;
+
+  @Getter
+  private final int hotStripes;
+
+  public AccountFactory(BalanceRepresentation representation, int scale) {
+    this(representation, scale, new String[0], 0);
+  }
+
+  @Autowired
+  public AccountFactory(@Value("${accounts.balance.representation:BIG_DECIMAL}") BalanceRepresentation representation,
+                        @Value("${accounts.balance.scale:2}") int scale,
+                        @Value("${accounts.hot.ids:}") String[] hotAccountIds,
+                        @Value("${accounts.hot.stripes:0}") int hotStripes) {
+    if (scale < 0 || scale > 18) {
+      throw new IllegalArgumentException("accounts.balance.scale must be between 0 and 18, was " + scale);
+    }
+    if (hotStripes < 0 || (hotStripes > 0 && Integer.bitCount(hotStripes) != 1)) {
+      throw new IllegalArgumentException("accounts.hot.stripes must be 0 or a power of two, was " + hotStripes);
+    }
+    this.representation = representation;
+    this.scale = scale;
+    this.hotAccountIds = new HashSet<>();
+    for (String accountId : hotAccountIds) {
+      if (!accountId.trim().isEmpty()) {
+        this.hotAccountIds.add(accountId.trim());
+      }
+    }
+    this.hotStripes = hotStripes > 0 ? hotStripes
+            : Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+  }
+
+  public boolean isHot(String accountId) {
+    return hotAccountIds.contains(accountId);
+  }
+
+  /**
+   * Hot accounts are always {@link StripedAccount striped} fixed-point accounts at the configured
+   * scale, whatever the representation of the others.
+   */
+  public SyncAccount create(Account account) throws InvalidBalanceException {
+    if (isHot(account.getAccountId())) {
+      validateFixedPoint(account.getAccountId(), account.getBalance());
+      return new StripedAccount(account.getAccountId(), account.getBalance(), scale, hotStripes);
+    }
+    if (representation == BalanceRepresentation.FIXED_POINT) {
+      validateFixedPoint(account.getAccountId(), account.getBalance());
+      return new FixedPointAccount(account.getAccountId(), account.getBalance(), scale);
+    }
+    return new SyncAccount(account.getAccountId(), account.getBalance());
+  }
+
+  /**
+   * Rejects amounts that cannot be held exactly as a long count of minor units.
+   */
+  public void validateFixedPoint(String accountId, BigDecimal amount) throws InvalidBalanceException {
+    if (amount == null) {
+      return;
+    }
+    if (amount.stripTrailingZeros().scale() > scale) {
+      throw new InvalidBalanceException(
+              "Balance of account id " + accountId + " has more than " + scale + " decimal places");
+    }
+    if (amount.movePointRight(scale).abs().compareTo(MAX_LONG) > 0) {
+      throw new InvalidBalanceException(
+              "Balance of account id " + accountId + " exceeds the supported range");
+    }
+  }
+}
@@ -0,0 +1,440 @@
+package com.db.awmd.challenge.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of account creations and balance changes, stored in fixed-size
+ * memory-mapped segment files.
+ *
+ * <p>Each record is {@code [int length][int crc32][payload]}. Appending only copies the record into
+ * the mapped segment; durability is provided by a flusher thread that forces the segment to disk
+ * once {@code flushBatchSize} records are pending or {@code flushIntervalMillis} has passed, so
+ * concurrent writers share one fsync (group commit). Replay stops at the first empty or corrupt
+ * record, which is where a crash may have torn the tail.
+ */
+@Slf4j
+public class AccountJournal implements Closeable {
+
+  static final String SEGMENT_PREFIX = "journal-";
+  static final String SEGMENT_SUFFIX = ".seg";
+
+  private static final byte CREATE = 1;
+  private static final byte BALANCE_CHANGES = 2;
+  private static final int HEADER_BYTES = 8;
+
+  /** Longest account id, in UTF-8 bytes, a record can hold; lengths are unsigned shorts */
+  static final int MAX_ID_BYTES = 0xffff;
+  /** Longest unscaled amount, in two's-complement bytes, a record can hold */
+  static final int MAX_UNSCALED_BYTES = 0xffff;
+
+  /**
+   * Receives the journal contents in append order during replay.
+   */
+  public interface Visitor {
+
+    void onCreate(String accountId, BigDecimal balance);
+
+    void onBalanceChange(String accountId, BigDecimal change);
+  }
+
+  private final Path directory;
+  private final int segmentSize;
+  private final int flushBatchSize;
+  private final long flushIntervalNanos;
+
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private FileChannel channel;
+  private MappedByteBuffer segment;
+  private volatile long segmentIndex;
+  private volatile long appendedSequence;
+
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final Condition flushRequested = flushLock.newCondition();
+  private final Condition flushed = flushLock.newCondition();
+  private volatile long durableSequence;
+  private volatile boolean running = true;
+  private final Thread flusher;
+
+  public AccountJournal(Path directory, int segmentSize, int flushBatchSize, long flushIntervalMillis) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.flushBatchSize = flushBatchSize;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    this.flusher = new Thread(this::flushLoop, "account-journal-flusher");
+    this.flusher.setDaemon(true);
+  }
+
+  public void open(Visitor visitor) throws IOException {
+    open(visitor, 0);
+  }
+
+  /**
+   * Replays every segment from {@code firstSegment} on in order, then positions the journal for
+   * appending after the last intact record and starts the flusher. Older segments are ignored, they
+   * are covered by a snapshot.
+   */
+  public void open(Visitor visitor, long firstSegment) throws IOException {
+    Files.createDirectories(directory);
+    List<Path> segments = listSegments();
+    segments.removeIf(path -> indexOf(path) < firstSegment);
+    int replayed = 0;
+    for (Path path : segments) {
+      replayed += replaySegment(path, visitor);
+    }
+    if (segments.isEmpty()) {
+      openSegment(firstSegment, 0);
+    } else {
+      Path last = segments.get(segments.size() - 1);
+      openSegment(indexOf(last), endOfRecords(last));
+    }
+    flusher.start();
+    log.info("Replayed {} journal records from {} segment(s) in {}", replayed, segments.size(), directory);
+  }
+
+  public long appendCreate(String accountId, BigDecimal balance) {
+    ByteBuffer payload = ByteBuffer.allocate(1 + encodedSize(accountId, balance));
+    payload.put(CREATE);
+    putEntry(payload, accountId, balance);
+    return append(payload.array());
+  }
+
+  /**
+   * Appends balance changes that must be replayed together, e.g. both legs of a transfer.
+   */
+  public long appendBalanceChanges(String[] accountIds, BigDecimal[] changes) {
+    int size = 1 + 4;
+    for (int i = 0; i < accountIds.length; i++) {
+      size += encodedSize(accountIds[i], changes[i]);
+    }
+    ByteBuffer payload = ByteBuffer.allocate(size);
+    payload.put(BALANCE_CHANGES);
+    payload.putInt(accountIds.length);
+    for (int i = 0; i < accountIds.length; i++) {
+      putEntry(payload, accountIds[i], changes[i]);
+    }
+    return append(payload.array());
+  }
+
+  private long append(byte[] payload) {
+    int recordSize = HEADER_BYTES + payload.length;
+    if (recordSize + 4 > segmentSize) {
+      throw new IllegalArgumentException("Journal record of " + recordSize + " bytes does not fit in a segment");
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+
+    long sequence;
+    appendLock.lock();
+    try {
+      // Keep 4 zero bytes after the last record so replay always finds the end marker
+      if (segment.remaining() < recordSize + 4) {
+        rollSegment();
+      }
+      segment.putInt(payload.length);
+      segment.putInt((int) crc.getValue());
+      segment.put(payload);
+      segment.putInt(segment.position(), 0);
+      sequence = ++appendedSequence;
+    } finally {
+      appendLock.unlock();
+    }
+    if (sequence - durableSequence >= flushBatchSize) {
+      requestFlush();
+    }
+    return sequence;
+  }
+
+  /**
+   * Blocks until the record with the given sequence has been forced to disk.
+   */
+  public void awaitDurable(long sequence) {
+    if (sequence <= durableSequence) {
+      return;
+    }
+    flushLock.lock();
+    try {
+      while (sequence > durableSequence) {
+        if (!running) {
+          throw new IllegalStateException("Account journal is closed");
+        }
+        flushed.await(flushIntervalNanos + TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.NANOSECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the account journal", e);
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  public long getDurableSequence() {
+    return durableSequence;
+  }
+
+  /**
+   * Index of the segment currently appended to; every lower segment is sealed and never changes.
+   */
+  public long getSegmentIndex() {
+    return segmentIndex;
+  }
+
+  Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Sealed segments with an index in {@code [from, to]}, in order.
+   */
+  List<Path> sealedSegments(long from, long to) throws IOException {
+    long current = segmentIndex;
+    List<Path> segments = listSegments();
+    segments.removeIf(path -> indexOf(path) < from || indexOf(path) > to || indexOf(path) >= current);
+    return segments;
+  }
+
+  /**
+   * Deletes every segment and starts an empty journal.
+   */
+  public void truncate() throws IOException {
+    appendLock.lock();
+    try {
+      flush();
+      channel.close();
+      for (Path path : listSegments()) {
+        Files.delete(path);
+      }
+      openSegment(0, 0);
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    running = false;
+    requestFlush();
+    try {
+      flusher.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    appendLock.lock();
+    try {
+      flush();
+      channel.close();
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  private void requestFlush() {
+    flushLock.lock();
+    try {
+      flushRequested.signal();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void flushLoop() {
+    while (running) {
+      flushLock.lock();
+      try {
+        if (appendedSequence == durableSequence) {
+          flushRequested.await(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        } else if (appendedSequence - durableSequence < flushBatchSize) {
+          flushRequested.await(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        flushLock.unlock();
+      }
+      // Only the snapshot of the tail is taken under the append lock; appenders keep writing while
+      // the segment is forced. Segments that are rolled away are forced by the roll itself.
+      MappedByteBuffer current;
+      long target;
+      appendLock.lock();
+      try {
+        current = segment;
+        target = appendedSequence;
+      } finally {
+        appendLock.unlock();
+      }
+      if (target > durableSequence) {
+        current.force();
+        publishDurable(target);
+      }
+    }
+  }
+
+  /**
+   * Forces the current segment and publishes everything appended so far as durable. Must be called
+   * with the append lock held.
+   */
+  private void flush() {
+    long target = appendedSequence;
+    if (target > durableSequence) {
+      segment.force();
+      publishDurable(target);
+    }
+  }
+
+  private void publishDurable(long target) {
+    flushLock.lock();
+    try {
+      if (target > durableSequence) {
+        durableSequence = target;
+      }
+      flushed.signalAll();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void rollSegment() {
+    try {
+      flush();
+      channel.close();
+      openSegment(segmentIndex + 1, 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not roll account journal segment", e);
+    }
+  }
+
+  private void openSegment(long index, int position) throws IOException {
+    Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    segment.position(position);
+    segmentIndex = index;
+  }
+
+  private List<Path> listSegments() throws IOException {
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      stream.forEach(segments::add);
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  static long indexOf(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  static int replaySegment(Path path, Visitor visitor) throws IOException {
+    int records = 0;
+    try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+      while (true) {
+        ByteBuffer payload = nextRecord(buffer);
+        if (payload == null) {
+          return records;
+        }
+        byte type = payload.get();
+        if (type == CREATE) {
+          visitor.onCreate(getString(payload), getDecimal(payload));
+        } else if (type == BALANCE_CHANGES) {
+          int count = payload.getInt();
+          for (int i = 0; i < count; i++) {
+            visitor.onBalanceChange(getString(payload), getDecimal(payload));
+          }
+        }
+        records++;
+      }
+    }
+  }
+
+  private static int endOfRecords(Path path) throws IOException {
+    try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+      while (nextRecord(buffer) != null) {
+        // skip to the end of the intact records
+      }
+      return buffer.position();
+    }
+  }
+
+  /**
+   * Returns the payload of the record at the buffer position and advances past it, or returns null
+   * without advancing at the end marker or a torn record.
+   */
+  private static ByteBuffer nextRecord(ByteBuffer buffer) {
+    int start = buffer.position();
+    if (buffer.remaining() < HEADER_BYTES) {
+      return null;
+    }
+    int length = buffer.getInt();
+    int checksum = buffer.getInt();
+    if (length <= 0 || length > buffer.remaining()) {
+      buffer.position(start);
+      return null;
+    }
+    byte[] payload = new byte[length];
+    buffer.get(payload);
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, length);
+    if ((int) crc.getValue() != checksum) {
+      buffer.position(start);
+      return null;
+    }
+    return ByteBuffer.wrap(payload);
+  }
+
+  private static int encodedSize(String accountId, BigDecimal amount) {
+    return 2 + accountId.getBytes(StandardCharsets.UTF_8).length + 4 + 2 + amount.unscaledValue().bitLength() / 8 + 1;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the id or the amount is too long for a record; nothing has
+   *                                  been appended then
+   */
+  private static void putEntry(ByteBuffer buffer, String accountId, BigDecimal amount) {
+    byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+    byte[] unscaled = amount.unscaledValue().toByteArray();
+    if (id.length > MAX_ID_BYTES || unscaled.length > MAX_UNSCALED_BYTES) {
+      throw new IllegalArgumentException("Account id " + accountId + " or amount is too long for a journal record");
+    }
+    buffer.putShort((short) id.length);
+    buffer.put(id);
+    buffer.putInt(amount.scale());
+    buffer.putShort((short) unscaled.length);
+    buffer.put(unscaled);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort() & 0xffff];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static BigDecimal getDecimal(ByteBuffer buffer) {
+    int scale = buffer.getInt();
+    byte[] unscaled = new byte[buffer.getShort() & 0xffff];
+    buffer.get(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+}
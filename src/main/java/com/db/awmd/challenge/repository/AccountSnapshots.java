@@ -0,0 +1,212 @@
+package com.db.awmd.challenge.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary images of all account balances, cut at a journal segment boundary.
+ *
+ * <p>A snapshot named after segment N holds the state produced by replaying every segment up to and
+ * including N. It is built from the previous snapshot and the sealed segments alone, never from the
+ * live accounts, so taking one does not block or even observe transfers. After a new snapshot is
+ * written the older snapshot and the segments it covers are deleted.
+ *
+ * <p>Layout: {@code [int magic][int version][long segment][long count]}, then per account
+ * {@code [short idLength][id][int scale][byte unscaledLength][unscaled]}, then the CRC32 of the
+ * entries. Files are written to a temporary name, synced and renamed into place.
+ */
+@Slf4j
+public class AccountSnapshots {
+
+  static final String SNAPSHOT_PREFIX = "snapshot-";
+  static final String SNAPSHOT_SUFFIX = ".bin";
+
+  private static final int MAGIC = 0x41435348;
+  private static final int VERSION = 1;
+  private static final int IO_BUFFER_BYTES = 1 << 20;
+
+  /** Longest account id, in UTF-8 bytes, an entry can hold */
+  static final int MAX_ID_BYTES = 0xffff;
+  /** Longest unscaled balance, in two's-complement bytes, an entry can hold */
+  static final int MAX_UNSCALED_BYTES = 0xff;
+
+  private final Path directory;
+
+  public AccountSnapshots(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Streams the latest snapshot into the consumer and returns the last journal segment it covers,
+   * or -1 when there is no snapshot.
+   */
+  public long loadLatest(BiConsumer<String, BigDecimal> consumer) throws IOException {
+    Path latest = latest();
+    if (latest == null) {
+      return -1;
+    }
+    long started = System.nanoTime();
+    CRC32 crc = new CRC32();
+    try (InputStream file = Files.newInputStream(latest);
+         DataInputStream header = new DataInputStream(new BufferedInputStream(file, IO_BUFFER_BYTES))) {
+      if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+        throw new IOException("Not an account snapshot: " + latest);
+      }
+      long segment = header.readLong();
+      long count = header.readLong();
+      DataInputStream entries = new DataInputStream(new CheckedInputStream(header, crc));
+      for (long i = 0; i < count; i++) {
+        byte[] id = new byte[entries.readUnsignedShort()];
+        entries.readFully(id);
+        int scale = entries.readInt();
+        byte[] unscaled = new byte[entries.readUnsignedByte()];
+        entries.readFully(unscaled);
+        consumer.accept(new String(id, StandardCharsets.UTF_8), new BigDecimal(new BigInteger(unscaled), scale));
+      }
+      if (header.readInt() != (int) crc.getValue()) {
+        throw new IOException("Corrupt account snapshot: " + latest);
+      }
+      log.info("Loaded {} accounts from {} in {} ms", count, latest.getFileName(), (System.nanoTime() - started) / 1_000_000);
+      return segment;
+    }
+  }
+
+  /**
+   * @throws IOException also if a balance does not fit an entry; no snapshot is written then, so the
+   *                     segments it would have replaced are kept
+   */
+  public void write(long segment, Map<String, BigDecimal> balances) throws IOException {
+    Files.createDirectories(directory);
+    Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX));
+    Path temporary = directory.resolve(target.getFileName() + ".tmp");
+    CRC32 crc = new CRC32();
+    try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+      DataOutputStream header = new DataOutputStream(new BufferedOutputStream(file, IO_BUFFER_BYTES));
+      header.writeInt(MAGIC);
+      header.writeInt(VERSION);
+      header.writeLong(segment);
+      header.writeLong(balances.size());
+      DataOutputStream entries = new DataOutputStream(new CheckedOutputStream(header, crc));
+      for (Map.Entry<String, BigDecimal> balance : balances.entrySet()) {
+        byte[] id = balance.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] unscaled = balance.getValue().unscaledValue().toByteArray();
+        if (id.length > MAX_ID_BYTES || unscaled.length > MAX_UNSCALED_BYTES) {
+          throw new IOException("Account id " + balance.getKey() + " or its balance is too long for a snapshot entry");
+        }
+        entries.writeShort(id.length);
+        entries.write(id);
+        entries.writeInt(balance.getValue().scale());
+        entries.writeByte(unscaled.length);
+        entries.write(unscaled);
+      }
+      entries.flush();
+      header.writeInt((int) crc.getValue());
+      header.flush();
+      file.getFD().sync();
+    } catch (IOException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Folds the sealed journal segments that are newer than the latest snapshot into a new snapshot,
+   * then deletes what it supersedes. Returns the segment the new snapshot covers, or -1 if there
+   * was nothing to fold.
+   */
+  public long compact(AccountJournal journal) throws IOException {
+    long covered = latestSegment();
+    List<Path> segments = journal.sealedSegments(covered + 1, Long.MAX_VALUE);
+    if (segments.isEmpty()) {
+      return -1;
+    }
+    long started = System.nanoTime();
+    Map<String, BigDecimal> balances = new HashMap<>();
+    loadLatest(balances::put);
+    AccountJournal.Visitor folder = new AccountJournal.Visitor() {
+      @Override
+      public void onCreate(String accountId, BigDecimal balance) {
+        balances.put(accountId, balance);
+      }
+
+      @Override
+      public void onBalanceChange(String accountId, BigDecimal change) {
+        balances.computeIfPresent(accountId, (id, balance) -> balance.add(change));
+      }
+    };
+    for (Path segment : segments) {
+      AccountJournal.replaySegment(segment, folder);
+    }
+    long segment = AccountJournal.indexOf(segments.get(segments.size() - 1));
+    write(segment, balances);
+
+    for (Path snapshot : list()) {
+      if (indexOf(snapshot) < segment) {
+        Files.delete(snapshot);
+      }
+    }
+    for (Path sealed : journal.sealedSegments(0, segment)) {
+      Files.delete(sealed);
+    }
+    log.info("Wrote snapshot of {} accounts up to journal segment {} in {} ms",
+            balances.size(), segment, (System.nanoTime() - started) / 1_000_000);
+    return segment;
+  }
+
+  public void deleteAll() throws IOException {
+    for (Path snapshot : list()) {
+      Files.delete(snapshot);
+    }
+  }
+
+  private long latestSegment() throws IOException {
+    Path latest = latest();
+    return latest == null ? -1 : indexOf(latest);
+  }
+
+  private Path latest() throws IOException {
+    List<Path> snapshots = list();
+    return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+  }
+
+  private List<Path> list() throws IOException {
+    List<Path> snapshots = new ArrayList<>();
+    if (!Files.isDirectory(directory)) {
+      return snapshots;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+      stream.forEach(snapshots::add);
+    }
+    Collections.sort(snapshots);
+    return snapshots;
+  }
+
+  private static long indexOf(Path snapshot) {
+    String name = snapshot.getFileName().toString();
+    return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+  }
+}
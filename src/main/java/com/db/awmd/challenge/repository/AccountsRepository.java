@@ -3,6 +3,14 @@ package com.db.awmd.challenge.repository;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public interface AccountsRepository {
 
@@ -10,5 +18,70 @@ public interface AccountsRepository {
 
   Account getAccount(String accountId) throws AccountDoesNotExistsException;
 
+  /**
+   * Like {@link #getAccount(String)}, but returns null for a missing account instead of throwing,
+   * for callers that expect misses.
+   */
+  default Account findAccount(String accountId) {
+    try {
+      return getAccount(accountId);
+    } catch (AccountDoesNotExistsException e) {
+      return null;
+    }
+  }
+
   void clearAccounts();
+
+  /**
+   * Visits accounts in a stable repository order, starting at position {@code from} (0 for the
+   * beginning), until the visitor returns false. Returns the position of the next account, to
+   * resume from later, or -1 once every account has been visited.
+   *
+   * <p>The scan takes no locks and copies nothing, so it never blocks transfers: each balance is
+   * read as of the moment its account is visited, and accounts created during the scan may or may
+   * not be visited. Positions stay valid across scans until {@link #clearAccounts()}.
+   */
+  long scanAccounts(long from, Predicate<? super Account> visitor);
+
+  /**
+   * Creates several accounts, reporting each account as it is created to {@code onCreated} and each
+   * account that cannot be created (duplicate id, invalid id or balance) to {@code onFailure}
+   * instead of throwing. Returns once every created account is durable. If anything else fails, the
+   * accounts reported so far keep their outcome and the others were not created.
+   */
+  default void createAccounts(List<Account> accounts, Consumer<Account> onCreated,
+                              BiConsumer<Account, RuntimeException> onFailure) {
+    for (Account account : accounts) {
+      try {
+        createAccount(account);
+      } catch (DuplicateAccountIdException | InvalidBalanceException | InvalidAccountIdException e) {
+        onFailure.accept(account, e);
+        continue;
+      }
+      onCreated.accept(account);
+    }
+  }
+
+  /**
+   * Records a transfer that has just been applied; see {@link #logBalanceChanges(String[], BigDecimal[])}.
+   */
+  default long logTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+    return 0;
+  }
+
+  /**
+   * Records balance changes that have just been applied together, e.g. the debit and credit of one
+   * transfer. Called while the changed accounts are still locked so the record order matches the
+   * order in which the balances changed. Returns a position to pass to {@link #awaitDurable(long)}.
+   */
+  default long logBalanceChanges(String[] accountIds, BigDecimal[] changes) {
+    return 0;
+  }
+
+  /**
+   * Blocks until everything logged up to the position is durable. Called after the account locks
+   * have been released.
+   */
+  default void awaitDurable(long position) {
+  }
 }
@@ -1,44 +1,81 @@
 package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceRepresentation;
 import com.db.awmd.challenge.domain.SyncAccount;
 import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.service.EmailNotificationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 @Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    protected final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final CreationOrderIndex creationOrder = new CreationOrderIndex();
     private EmailNotificationService notify;
+    protected final AccountFactory accountFactory;
+
+    public AccountsRepositoryInMemory() {
+        this(new AccountFactory(BalanceRepresentation.BIG_DECIMAL, 2));
+    }
+
+    @Autowired
+    public AccountsRepositoryInMemory(AccountFactory accountFactory) {
+        this.accountFactory = accountFactory;
+    }
 
     @Override
     public void createAccount(Account account) throws DuplicateAccountIdException {
-        SyncAccount syncAccount = new SyncAccount(account.getAccountId(), account.getBalance());
-        Account previousAccount = accounts.putIfAbsent(account.getAccountId(), syncAccount);
+        SyncAccount syncAccount = accountFactory.create(account);
+        putIfAbsent(syncAccount);
+    }
+
+    /**
+     * Adds the account unless its id is taken. Every insertion goes through here so the account is
+     * also appended to the scan order.
+     */
+    protected void putIfAbsent(SyncAccount account) throws DuplicateAccountIdException {
+        Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
         if (previousAccount != null) {
             throw new DuplicateAccountIdException(
                     "Account id " + account.getAccountId() + " already exists!");
         }
+        creationOrder.append(account);
     }
 
     @Override
     public Account getAccount(String accountId)  throws AccountDoesNotExistsException {
-
-        if(accounts.containsKey(accountId)) {
-            return accounts.get(accountId);
-        }else {
-            throw new AccountDoesNotExistsException(
-                    "Account id " + accountId + " does not exists!");
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            throw AccountDoesNotExistsException.forAccount(accountId);
         }
+        return account;
+    }
+
+    @Override
+    public Account findAccount(String accountId) {
+        return accounts.get(accountId);
+    }
+
+    /**
+     * Scans in creation order; a position is the index of the account in that order.
+     */
+    @Override
+    public long scanAccounts(long from, Predicate<? super Account> visitor) {
+        return creationOrder.scan(from, visitor);
     }
 
     @Override
     public void clearAccounts() {
         accounts.clear();
+        creationOrder.clear();
     }
 }
@@ -0,0 +1,71 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Append-only list of accounts in creation order, so a scan can resume from a position that stays
+ * valid while accounts are created. Accounts are never removed (short of {@link #clear()}), which
+ * is what makes a plain index a stable cursor; it costs one reference per account.
+ *
+ * <p>Positions are reserved before the account is stored, so a scan running alongside a create may
+ * pass a position whose account is not visible yet and skip it: scans are weakly consistent.
+ */
+class CreationOrderIndex {
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 16;
+    private static final long MAX_SIZE = (long) MAX_CHUNKS * CHUNK_SIZE;
+
+    private volatile AtomicReferenceArray<AtomicReferenceArray<Account>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicLong reserved = new AtomicLong();
+
+    void append(Account account) {
+        long position = reserved.getAndIncrement();
+        if (position >= MAX_SIZE) {
+            throw new IllegalStateException("Account index is full (" + MAX_SIZE + " accounts)");
+        }
+        int chunkIndex = (int) (position >>> CHUNK_BITS);
+        AtomicReferenceArray<AtomicReferenceArray<Account>> chunks = this.chunks;
+        AtomicReferenceArray<Account> chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(chunkIndex);
+        }
+        chunk.set((int) (position & (CHUNK_SIZE - 1)), account);
+    }
+
+    /**
+     * Visits accounts from {@code from} on until the visitor returns false, and returns the position
+     * of the next account to visit, or -1 if none is left.
+     */
+    long scan(long from, Predicate<? super Account> visitor) {
+        AtomicReferenceArray<AtomicReferenceArray<Account>> chunks = this.chunks;
+        long end = Math.min(reserved.get(), MAX_SIZE);
+        boolean stopped = false;
+        for (long position = Math.max(0, from); position < end; position++) {
+            AtomicReferenceArray<Account> chunk = chunks.get((int) (position >>> CHUNK_BITS));
+            Account account = chunk == null ? null : chunk.get((int) (position & (CHUNK_SIZE - 1)));
+            if (account == null) {
+                continue;
+            }
+            if (stopped) {
+                return position;
+            }
+            stopped = !visitor.test(account);
+        }
+        return -1;
+    }
+
+    /**
+     * Must not run concurrently with {@link #append(Account)}.
+     */
+    void clear() {
+        chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+        reserved.set(0);
+    }
+}
@@ -0,0 +1,198 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * In-memory account store made durable by an {@link AccountJournal}. Every account creation and
+ * balance change is appended to the journal, and the journal is replayed on startup to rebuild the
+ * account map.
+ *
+ * <p>When a snapshot interval is configured, sealed journal segments are periodically folded into
+ * an {@link AccountSnapshots binary snapshot} in the background, so startup reads one snapshot plus
+ * the few segments written since, instead of the whole history.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "journal")
+public class JournalingAccountsRepository extends AccountsRepositoryInMemory {
+
+    private final AccountJournal journal;
+    private final AccountSnapshots snapshots;
+    private final Object compactionLock = new Object();
+    private ScheduledExecutorService compactor;
+
+    @Autowired
+    public JournalingAccountsRepository(AccountFactory accountFactory,
+                                        @Value("${accounts.journal.directory:data/journal}") String directory,
+                                        @Value("${accounts.journal.segment-size:67108864}") int segmentSize,
+                                        @Value("${accounts.journal.flush-batch-size:64}") int flushBatchSize,
+                                        @Value("${accounts.journal.flush-interval:2}") long flushIntervalMillis,
+                                        @Value("${accounts.snapshot.interval:60000}") long snapshotIntervalMillis) throws IOException {
+        this(accountFactory, new AccountJournal(Paths.get(directory), segmentSize, flushBatchSize, flushIntervalMillis));
+        if (snapshotIntervalMillis > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "account-snapshots");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public JournalingAccountsRepository(AccountFactory accountFactory, AccountJournal journal) throws IOException {
+        super(accountFactory);
+        this.journal = journal;
+        this.snapshots = new AccountSnapshots(journal.getDirectory());
+        long covered = snapshots.loadLatest((accountId, balance) ->
+                putIfAbsent(accountFactory.create(new Account(accountId, balance))));
+        journal.open(new AccountJournal.Visitor() {
+            @Override
+            public void onCreate(String accountId, BigDecimal balance) {
+                putIfAbsent(accountFactory.create(new Account(accountId, balance)));
+            }
+
+            @Override
+            public void onBalanceChange(String accountId, BigDecimal change) {
+                Account account = accounts.get(accountId);
+                if (account != null) {
+                    ((SyncAccount) account).adjustBalance(change);
+                }
+            }
+        }, covered + 1);
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        journal.awaitDurable(insert(account));
+    }
+
+    /**
+     * Journals the whole batch and waits for durability once, so a bulk import pays for one group
+     * commit per batch instead of one per account. An account is reported created once it is
+     * inserted and journaled, ahead of that wait.
+     */
+    @Override
+    public void createAccounts(List<Account> newAccounts, Consumer<Account> onCreated,
+                               BiConsumer<Account, RuntimeException> onFailure) {
+        long position = 0;
+        for (Account account : newAccounts) {
+            try {
+                position = Math.max(position, insert(account));
+            } catch (DuplicateAccountIdException | InvalidBalanceException | InvalidAccountIdException e) {
+                onFailure.accept(account, e);
+                continue;
+            }
+            onCreated.accept(account);
+        }
+        journal.awaitDurable(position);
+    }
+
+    /**
+     * The new account stays locked until its creation is journaled, so no transfer record can
+     * reference it ahead of its creation record.
+     */
+    private long insert(Account account) throws DuplicateAccountIdException {
+        checkJournalable(account);
+        SyncAccount syncAccount = accountFactory.create(account);
+        syncAccount.getLock().lock();
+        try {
+            putIfAbsent(syncAccount);
+            return journal.appendCreate(syncAccount.getAccountId(), syncAccount.getBalance());
+        } finally {
+            syncAccount.getLock().unlock();
+        }
+    }
+
+    /**
+     * Rejects an account its creation record or snapshot entry could not hold, before it becomes
+     * visible; a record that cannot be replayed would keep the application from starting.
+     */
+    private static void checkJournalable(Account account) {
+        int maxIdBytes = Math.min(AccountJournal.MAX_ID_BYTES, AccountSnapshots.MAX_ID_BYTES);
+        if (account.getAccountId().getBytes(StandardCharsets.UTF_8).length > maxIdBytes) {
+            throw new InvalidAccountIdException("Account id must be at most " + maxIdBytes + " bytes in UTF-8");
+        }
+        int maxUnscaledBytes = Math.min(AccountJournal.MAX_UNSCALED_BYTES, AccountSnapshots.MAX_UNSCALED_BYTES);
+        if (account.getBalance().unscaledValue().bitLength() / 8 + 1 > maxUnscaledBytes) {
+            throw new InvalidBalanceException("Balance of account id " + account.getAccountId() + " has too many digits");
+        }
+    }
+
+    @Override
+    public long logTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+        return journal.appendBalanceChanges(new String[]{fromAccountId, toAccountId}, new BigDecimal[]{amount.negate(), amount});
+    }
+
+    @Override
+    public long logBalanceChanges(String[] accountIds, BigDecimal[] changes) {
+        return journal.appendBalanceChanges(accountIds, changes);
+    }
+
+    @Override
+    public void awaitDurable(long position) {
+        journal.awaitDurable(position);
+    }
+
+    /**
+     * Folds every sealed journal segment into a new snapshot and deletes the segments it covers.
+     * Returns the last segment covered, or -1 when there was nothing new to fold.
+     */
+    public long compact() throws IOException {
+        synchronized (compactionLock) {
+            return snapshots.compact(journal);
+        }
+    }
+
+    @Override
+    public void clearAccounts() {
+        synchronized (compactionLock) {
+            try {
+                snapshots.deleteAll();
+                journal.truncate();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not truncate the account journal", e);
+            }
+            super.clearAccounts();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        synchronized (compactionLock) {
+            journal.close();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not write an account snapshot, will retry on the next interval", e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.FixedPointAccount;
+import com.db.awmd.challenge.domain.VersionedLock;
+
+import java.math.BigDecimal;
+
+/**
+ * Short-lived view of one slot of an {@link OffHeapAccountTable}. Lookups create a new view each
+ * time; views of the same account share the slot and its lock stripe, so they behave as one account.
+ */
+class OffHeapAccount extends FixedPointAccount {
+
+  private final OffHeapAccountTable table;
+  private final long slot;
+  private final int lockRank;
+
+  OffHeapAccount(String accountId, int scale, OffHeapAccountTable table, long slot, VersionedLock lock, int lockRank) {
+    super(accountId, scale, lock);
+    this.table = table;
+    this.slot = slot;
+    this.lockRank = lockRank;
+  }
+
+  @Override
+  public int getLockRank() {
+    return lockRank;
+  }
+
+  @Override
+  public long getMinorUnits() {
+    return table.balance(slot);
+  }
+
+  @Override
+  public BigDecimal getBalance() {
+    return BigDecimal.valueOf(table.balance(slot), getScale());
+  }
+
+  @Override
+  public void setBalance(BigDecimal balance) {
+    table.setBalance(slot, toMinorUnits(balance));
+  }
+
+  @Override
+  public boolean tryDebitMinorUnits(long amount) {
+    return table.tryDebit(slot, amount);
+  }
+
+  @Override
+  public void creditMinorUnits(long amount) {
+    table.credit(slot, amount);
+  }
+}
@@ -0,0 +1,278 @@
+package com.db.awmd.challenge.repository;
+
+import sun.misc.Unsafe;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-capacity open-addressing hash table of account ids and balances in native memory.
+ *
+ * <p>Each slot is 64 bytes: {@code [long version][long minorUnits][int hash][short idLength][id]},
+ * the id stored one byte per Latin-1 character. The version is a per-slot seqlock: 0 marks an
+ * empty slot, an odd value a slot being written. Writers enter by moving it from even to odd with
+ * a CAS and leave by bumping it to the next even value; readers retry until they see the same even
+ * version before and after reading. Slots are never removed, so a slot index stays valid for the
+ * life of the account and lookups probe linearly until they reach an empty slot.
+ *
+ * <p>Java 8 has no public API for atomic access to native memory, so this uses {@link Unsafe} on
+ * memory it allocates and frees itself.
+ */
+class OffHeapAccountTable implements Closeable {
+
+  static final int SLOT_BYTES = 64;
+  static final int MAX_ID_LENGTH = 42;
+
+  private static final int VERSION = 0;
+  private static final int BALANCE = 8;
+  private static final int HASH = 16;
+  private static final int ID_LENGTH = 20;
+  private static final int ID = 22;
+
+  private static final Unsafe UNSAFE = loadUnsafe();
+
+  private final long capacity;
+  private final long mask;
+  private final long maxSize;
+  private final AtomicLong size = new AtomicLong();
+  private volatile long address;
+
+  /**
+   * @param maxAccounts accounts the table must hold; slots are allocated for a load factor of at
+   *                    most 0.75, rounded up to a power of two
+   */
+  OffHeapAccountTable(long maxAccounts) {
+    long slots = Long.highestOneBit(Math.max(2, maxAccounts * 4 / 3 + 1) - 1) << 1;
+    this.capacity = slots;
+    this.mask = slots - 1;
+    this.maxSize = maxAccounts;
+    this.address = UNSAFE.allocateMemory(slots * SLOT_BYTES);
+    UNSAFE.setMemory(address, slots * SLOT_BYTES, (byte) 0);
+  }
+
+  static boolean isStorableId(String accountId) {
+    if (accountId.length() > MAX_ID_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < accountId.length(); i++) {
+      if (accountId.charAt(i) > 0xff) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Inserts the account and returns its slot, or -1 if the id is already present.
+   *
+   * @throws IllegalStateException if the table already holds its maximum number of accounts
+   */
+  long insert(String accountId, long minorUnits) {
+    int hash = hash(accountId);
+    for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+      long version = stableVersion(slot);
+      if (version == 0) {
+        if (!UNSAFE.compareAndSwapLong(null, address(slot) + VERSION, 0, 1)) {
+          slot = (slot - 1) & mask; // lost the race for this slot, look at it again
+          continue;
+        }
+        if (size.incrementAndGet() > maxSize) {
+          size.decrementAndGet();
+          UNSAFE.putLongVolatile(null, address(slot) + VERSION, 0);
+          throw new IllegalStateException("Off-heap account store is full (" + maxSize + " accounts)");
+        }
+        long base = address(slot);
+        UNSAFE.putLong(base + BALANCE, minorUnits);
+        UNSAFE.putInt(base + HASH, hash);
+        UNSAFE.putShort(base + ID_LENGTH, (short) accountId.length());
+        for (int i = 0; i < accountId.length(); i++) {
+          UNSAFE.putByte(base + ID + i, (byte) accountId.charAt(i));
+        }
+        UNSAFE.putLongVolatile(null, base + VERSION, 2);
+        return slot;
+      }
+      if (matches(slot, accountId, hash)) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Returns the slot of the account, or -1 if it is not present.
+   */
+  long find(String accountId) {
+    if (!isStorableId(accountId)) {
+      return -1;
+    }
+    int hash = hash(accountId);
+    for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+      if (stableVersion(slot) == 0) {
+        return -1;
+      }
+      if (matches(slot, accountId, hash)) {
+        return slot;
+      }
+    }
+  }
+
+  /**
+   * Returns the first occupied slot at or after {@code from}, or -1 if there is none.
+   */
+  long nextOccupied(long from) {
+    for (long slot = Math.max(0, from); slot < capacity; slot++) {
+      if (UNSAFE.getLongVolatile(null, address(slot) + VERSION) != 0) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Id of the account in an occupied slot. Ids never change once written, so no retry is needed.
+   */
+  String accountId(long slot) {
+    stableVersion(slot);
+    long base = address(slot);
+    char[] id = new char[UNSAFE.getShort(base + ID_LENGTH)];
+    for (int i = 0; i < id.length; i++) {
+      id[i] = (char) (UNSAFE.getByte(base + ID + i) & 0xff);
+    }
+    return new String(id);
+  }
+
+  long balance(long slot) {
+    long base = address(slot);
+    while (true) {
+      long version = stableVersion(slot);
+      long balance = UNSAFE.getLongVolatile(null, base + BALANCE);
+      if (UNSAFE.getLongVolatile(null, base + VERSION) == version) {
+        return balance;
+      }
+    }
+  }
+
+  /**
+   * Current even version of the slot; it changes with every balance update.
+   */
+  long version(long slot) {
+    return stableVersion(slot);
+  }
+
+  boolean tryDebit(long slot, long amount) {
+    long version = beginWrite(slot);
+    long base = address(slot);
+    long balance = UNSAFE.getLong(base + BALANCE);
+    boolean debited = balance >= amount;
+    if (debited) {
+      UNSAFE.putLong(base + BALANCE, balance - amount);
+    }
+    endWrite(slot, version);
+    return debited;
+  }
+
+  void credit(long slot, long amount) {
+    long version = beginWrite(slot);
+    long base = address(slot);
+    try {
+      UNSAFE.putLong(base + BALANCE, Math.addExact(UNSAFE.getLong(base + BALANCE), amount));
+    } finally {
+      endWrite(slot, version);
+    }
+  }
+
+  void setBalance(long slot, long minorUnits) {
+    long version = beginWrite(slot);
+    UNSAFE.putLong(address(slot) + BALANCE, minorUnits);
+    endWrite(slot, version);
+  }
+
+  long size() {
+    return size.get();
+  }
+
+  long capacity() {
+    return capacity;
+  }
+
+  long footprintBytes() {
+    return capacity * SLOT_BYTES;
+  }
+
+  /**
+   * Empties the table. Must not run concurrently with any other operation.
+   */
+  void clear() {
+    UNSAFE.setMemory(address, capacity * SLOT_BYTES, (byte) 0);
+    size.set(0);
+  }
+
+  /**
+   * Frees the native memory. The table must not be used afterwards, so this is only called once the
+   * application has stopped serving requests.
+   */
+  @Override
+  public synchronized void close() {
+    if (address != 0) {
+      UNSAFE.freeMemory(address);
+      address = 0;
+    }
+  }
+
+  private long address(long slot) {
+    return address + slot * SLOT_BYTES;
+  }
+
+  private long stableVersion(long slot) {
+    long base = address(slot);
+    while (true) {
+      long version = UNSAFE.getLongVolatile(null, base + VERSION);
+      if ((version & 1) == 0) {
+        return version;
+      }
+      Thread.yield();
+    }
+  }
+
+  private long beginWrite(long slot) {
+    long base = address(slot);
+    while (true) {
+      long version = stableVersion(slot);
+      if (UNSAFE.compareAndSwapLong(null, base + VERSION, version, version + 1)) {
+        return version;
+      }
+    }
+  }
+
+  private void endWrite(long slot, long version) {
+    UNSAFE.putLongVolatile(null, address(slot) + VERSION, version + 2);
+  }
+
+  private boolean matches(long slot, String accountId, int hash) {
+    long base = address(slot);
+    if (UNSAFE.getInt(base + HASH) != hash || UNSAFE.getShort(base + ID_LENGTH) != accountId.length()) {
+      return false;
+    }
+    for (int i = 0; i < accountId.length(); i++) {
+      if ((UNSAFE.getByte(base + ID + i) & 0xff) != accountId.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(String accountId) {
+    int hash = accountId.hashCode() * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static Unsafe loadUnsafe() {
+    try {
+      Field field = Unsafe.class.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return (Unsafe) field.get(null);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.VersionedLock;
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.function.Predicate;
+
+/**
+ * Keeps account ids and balances outside the Java heap in an {@link OffHeapAccountTable}, so tens
+ * of millions of accounts cost one 64-byte slot each instead of several heap objects, and add
+ * nothing to GC work.
+ *
+ * <p>Balances are always fixed-point minor units at {@code accounts.balance.scale}, whatever the
+ * configured representation. Account locks are striped: accounts whose slots share a stripe share
+ * a lock and a lock rank, so {@link com.db.awmd.challenge.service.OrderedAccountLocker} still takes
+ * them in a consistent order. The table is sized up front by {@code accounts.off-heap.capacity}
+ * and does not grow; account ids are limited to {@value OffHeapAccountTable#MAX_ID_LENGTH}
+ * Latin-1 characters.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "off-heap")
+public class OffHeapAccountsRepository implements AccountsRepository {
+
+    private final AccountFactory accountFactory;
+    private final OffHeapAccountTable table;
+    private final VersionedLock[] lockStripes;
+
+    @Autowired
+    public OffHeapAccountsRepository(AccountFactory accountFactory,
+                                     @Value("${accounts.off-heap.capacity:1048576}") long capacity,
+                                     @Value("${accounts.off-heap.lock-stripes:4096}") int lockStripes) {
+        if (Integer.bitCount(lockStripes) != 1) {
+            throw new IllegalArgumentException("accounts.off-heap.lock-stripes must be a power of two, was " + lockStripes);
+        }
+        this.accountFactory = accountFactory;
+        this.table = new OffHeapAccountTable(capacity);
+        this.lockStripes = new VersionedLock[lockStripes];
+        for (int i = 0; i < lockStripes; i++) {
+            this.lockStripes[i] = new VersionedLock();
+        }
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        if (!OffHeapAccountTable.isStorableId(account.getAccountId())) {
+            throw new InvalidAccountIdException("Account id " + account.getAccountId() + " must be at most "
+                    + OffHeapAccountTable.MAX_ID_LENGTH + " Latin-1 characters");
+        }
+        BigDecimal balance = account.getBalance() == null ? BigDecimal.ZERO : account.getBalance();
+        accountFactory.validateFixedPoint(account.getAccountId(), balance);
+        long minorUnits = balance.movePointRight(accountFactory.getScale()).longValueExact();
+        if (table.insert(account.getAccountId(), minorUnits) < 0) {
+            throw new DuplicateAccountIdException(
+                    "Account id " + account.getAccountId() + " already exists!");
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) throws AccountDoesNotExistsException {
+        Account account = findAccount(accountId);
+        if (account == null) {
+            throw AccountDoesNotExistsException.forAccount(accountId);
+        }
+        return account;
+    }
+
+    @Override
+    public Account findAccount(String accountId) {
+        long slot = table.find(accountId);
+        return slot < 0 ? null : view(accountId, slot);
+    }
+
+    /**
+     * Scans in slot order; a position is a slot index. Slots never move, so a position stays valid
+     * while accounts are created.
+     */
+    @Override
+    public long scanAccounts(long from, Predicate<? super Account> visitor) {
+        for (long slot = table.nextOccupied(from); slot >= 0; slot = table.nextOccupied(slot + 1)) {
+            if (!visitor.test(view(table.accountId(slot), slot))) {
+                return table.nextOccupied(slot + 1);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void clearAccounts() {
+        table.clear();
+    }
+
+    public long size() {
+        return table.size();
+    }
+
+    /**
+     * Native memory reserved for the table, in bytes.
+     */
+    public long footprintBytes() {
+        return table.footprintBytes();
+    }
+
+    /**
+     * Frees the table's native memory, for owners that know no thread uses it any more. Not a
+     * destroy callback: request, shard, retry, import and listener threads may still be touching the
+     * table while the application context closes, and reading freed memory can crash the JVM, so
+     * in the application the memory is released when the process exits.
+     */
+    public void close() {
+        table.close();
+    }
+
+    private OffHeapAccount view(String accountId, long slot) {
+        int stripe = (int) (slot & (lockStripes.length - 1));
+        return new OffHeapAccount(accountId, accountFactory.getScale(), table, slot, lockStripes[stripe], stripe);
+    }
+}
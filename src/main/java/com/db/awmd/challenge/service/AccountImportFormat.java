@@ -0,0 +1,9 @@
+package com.db.awmd.challenge.service;
+
+public enum AccountImportFormat {
+
+  /** One JSON account object per line. */
+  NDJSON,
+  /** {@code accountId,balance} per line, with an optional header line; ids cannot contain commas. */
+  CSV
+}
@@ -0,0 +1,193 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk account creation from a stream. The calling thread parses one line at a time and cuts the
+ * accounts into batches, which worker threads insert with
+ * {@link AccountsRepository#createAccounts}. At most two batches per worker are in flight, so memory
+ * stays constant however large the input is.
+ */
+@Slf4j
+@Component
+public class AccountImporter {
+
+  private static final String CSV_HEADER = "accountId";
+
+  private final AccountsRepository accountsRepository;
+  private final ObjectReader accountReader;
+  private final int batchSize;
+  private final int parallelism;
+  private final int reportLimit;
+  private final ExecutorService workers;
+
+  @Autowired
+  public AccountImporter(AccountsRepository accountsRepository, ObjectMapper objectMapper,
+                         @Value("${accounts.import.batch-size:1000}") int batchSize,
+                         @Value("${accounts.import.parallelism:0}") int parallelism,
+                         @Value("${accounts.import.report-limit:100}") int reportLimit) {
+    this.accountsRepository = accountsRepository;
+    this.accountReader = objectMapper.readerFor(Account.class);
+    this.batchSize = batchSize;
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    this.reportLimit = reportLimit;
+    AtomicInteger threads = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "account-import-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public AccountImportResult importAccounts(BufferedReader reader, AccountImportFormat format) throws IOException {
+    long started = System.nanoTime();
+    Summary summary = new Summary();
+    Semaphore inFlight = new Semaphore(parallelism * 2);
+    List<Account> batch = new ArrayList<>(batchSize);
+    long lineNumber = 0;
+    String line;
+    try {
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty() || (format == AccountImportFormat.CSV && lineNumber == 1 && line.startsWith(CSV_HEADER))) {
+          continue;
+        }
+        summary.received.increment();
+        Account account = parse(line, lineNumber, format, summary);
+        if (account != null) {
+          batch.add(account);
+          if (batch.size() == batchSize) {
+            submit(batch, inFlight, summary);
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        submit(batch, inFlight, summary);
+      }
+      inFlight.acquire(parallelism * 2);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Something went wrong. Server not able to process the request");
+    }
+
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    log.info("Imported {} of {} accounts in {} ms", summary.created.sum(), summary.received.sum(), elapsedMillis);
+    return new AccountImportResult(summary.received.sum(), summary.created.sum(), summary.duplicates.sum(),
+            summary.invalid.sum(), summary.duplicateIds, summary.errors, elapsedMillis);
+  }
+
+  private void submit(List<Account> batch, Semaphore inFlight, Summary summary) throws InterruptedException {
+    inFlight.acquire();
+    workers.execute(() -> {
+      AtomicInteger settled = new AtomicInteger();
+      try {
+        accountsRepository.createAccounts(batch, account -> {
+          settled.incrementAndGet();
+          summary.created.increment();
+        }, (account, e) -> {
+          settled.incrementAndGet();
+          if (e instanceof DuplicateAccountIdException) {
+            summary.duplicates.increment();
+            summary.report(summary.duplicateIds, account.getAccountId());
+          } else {
+            summary.invalid.increment();
+            summary.report(summary.errors, "account " + account.getAccountId() + ": " + e.getMessage());
+          }
+        });
+      } catch (RuntimeException e) {
+        int unsettled = batch.size() - settled.get();
+        log.error("Could not import {} of a batch of {} accounts", unsettled, batch.size(), e);
+        summary.invalid.add(unsettled);
+        summary.report(summary.errors, unsettled == 0
+                ? "batch of " + batch.size() + " accounts created but not confirmed durable: " + e.getMessage()
+                : unsettled + " accounts of a batch failed: " + e.getMessage());
+      } finally {
+        inFlight.release();
+      }
+    });
+  }
+
+  /**
+   * Parses and validates one line with the rules of the {@link Account} bean constraints. Returns
+   * null and records the reason when the line is invalid.
+   */
+  private Account parse(String line, long lineNumber, AccountImportFormat format, Summary summary) {
+    Account account;
+    try {
+      if (format == AccountImportFormat.NDJSON) {
+        account = accountReader.readValue(line);
+      } else {
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+          return invalid(summary, lineNumber, "expected accountId,balance");
+        }
+        String amount = line.substring(comma + 1).trim();
+        account = new Account(line.substring(0, comma).trim(), amount.isEmpty() ? null : new BigDecimal(amount));
+      }
+    } catch (JsonProcessingException e) {
+      return invalid(summary, lineNumber, e.getOriginalMessage());
+    } catch (IOException e) {
+      return invalid(summary, lineNumber, e.getMessage());
+    } catch (NumberFormatException e) {
+      return invalid(summary, lineNumber, "malformed balance");
+    }
+    if (account == null) {
+      return invalid(summary, lineNumber, "account cannot be null");
+    }
+    String violation = account.validate();
+    return violation == null ? account : invalid(summary, lineNumber, violation);
+  }
+
+  private Account invalid(Summary summary, long lineNumber, String reason) {
+    summary.invalid.increment();
+    summary.report(summary.errors, "line " + lineNumber + ": " + reason);
+    return null;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  private final class Summary {
+    private final LongAdder received = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final List<String> duplicateIds = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    private void report(List<String> list, String entry) {
+      synchronized (list) {
+        if (list.size() < reportLimit) {
+          list.add(entry);
+        }
+      }
+    }
+  }
+}
@@ -1,36 +1,85 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountPage;
+import com.db.awmd.challenge.domain.AccountTransaction;
+import com.db.awmd.challenge.domain.AccountTransactionPage;
+import com.db.awmd.challenge.domain.AccountQueryEntry;
+import com.db.awmd.challenge.domain.AccountQueryResult;
+import com.db.awmd.challenge.domain.AccountQueryStatus;
+import com.db.awmd.challenge.domain.BatchTransferMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FixedPointAccount;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
 import com.db.awmd.challenge.domain.SyncAccount;
 import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.exception.InvalidCursorException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import com.db.awmd.challenge.exception.UnsupportedTransferModeException;
 import com.db.awmd.challenge.repository.AccountsRepository;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 @Service
 public class AccountsService {
 
+  private static final int OPTIMISTIC_READ_ATTEMPTS = 8;
+
   @Getter
   private final AccountsRepository accountsRepository;
 
-  @Value("${server.connection-timeout}")
-  private String connectionTimeout;
+  private final OrderedAccountLocker accountLocker;
+
+  private final AsyncNotificationDispatcher notificationDispatcher;
 
   @Setter
   @Autowired
   private NotificationService notificationService;
 
+  /**
+   * Present only when {@code transfer.mode=sharded}; transfers are then executed by the owning shard
+   * threads instead of under account locks.
+   */
+  @Setter
+  @Autowired(required = false)
+  private ShardedTransferExecutor shardedTransferExecutor;
+
+  @Setter
+  @Autowired
+  private TransferMetrics transferMetrics = new TransferMetrics();
+
+  @Setter
+  @Autowired
+  private IdempotencyStore idempotencyStore = new IdempotencyStore();
+
+  @Setter
   @Autowired
-  public AccountsService(AccountsRepository accountsRepository) {
+  private TransactionLedger transactionLedger = new TransactionLedger();
+
+  @Autowired
+  public AccountsService(AccountsRepository accountsRepository, OrderedAccountLocker accountLocker,
+                         AsyncNotificationDispatcher notificationDispatcher) {
     this.accountsRepository = accountsRepository;
+    this.accountLocker = accountLocker;
+    this.notificationDispatcher = notificationDispatcher;
   }
 
   public void createAccount(Account account) {
@@ -41,45 +90,615 @@ public class AccountsService {
     return this.accountsRepository.getAccount(accountId);
   }
 
-  public void transferMoney(TransferRequestDetails transferRequestDetails) throws InsufficientBalanceException, AccountDoesNotExistsException {
+  /**
+   * Point-in-time copy of the account for serving reads; never takes or waits for an account lock.
+   */
+  public Account getAccountSnapshot(String accountId) throws AccountDoesNotExistsException {
+    return snapshot(this.accountsRepository.getAccount(accountId));
+  }
+
+  /**
+   * Up to {@code limit} accounts following the cursor (null for the first page). Cursors are opaque
+   * to clients and stay valid while accounts are created. Balances are point-in-time copies read
+   * without locks, so a listing is weakly consistent: each balance is exact, but balances on a page
+   * are not cut at a common point.
+   */
+  public AccountPage listAccounts(String cursor, int limit) {
+    List<Account> accounts = new ArrayList<>(limit);
+    long next = accountsRepository.scanAccounts(decodeCursor(cursor), account -> {
+      accounts.add(snapshot(account));
+      return accounts.size() < limit;
+    });
+    return new AccountPage(accounts, next < 0 ? null : Long.toString(next, Character.MAX_RADIX));
+  }
+
+  /**
+   * Hands every account to the consumer as a point-in-time copy, with the same consistency as
+   * {@link #listAccounts(String, int)}. Nothing is collected, so memory use does not grow with the
+   * number of accounts.
+   */
+  public void forEachAccount(Consumer<? super Account> consumer) {
+    accountsRepository.scanAccounts(0, account -> {
+      consumer.accept(snapshot(account));
+      return true;
+    });
+  }
+
+  /**
+   * Up to {@code limit} of the account's transactions, newest first, following the cursor (null for
+   * the newest). Only the postings still retained by the ledger are returned.
+   */
+  public AccountTransactionPage getTransactions(String accountId, String cursor, int limit) throws AccountDoesNotExistsException {
+    this.accountsRepository.getAccount(accountId);
+    List<AccountTransaction> transactions = new ArrayList<>(limit);
+    long next = transactionLedger.history(accountId, decodeCursor(cursor), limit, transactions);
+    return new AccountTransactionPage(transactions, next == 0 ? null : Long.toString(next, Character.MAX_RADIX));
+  }
+
+  private static long decodeCursor(String cursor) {
+    if (cursor == null || cursor.isEmpty()) {
+      return 0;
+    }
+    try {
+      long position = Long.parseLong(cursor, Character.MAX_RADIX);
+      if (position >= 0) {
+        return position;
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new InvalidCursorException("Invalid cursor " + cursor);
+  }
+
+  private static Account snapshot(Account account) {
+    return account instanceof SyncAccount ? ((SyncAccount) account).snapshot() : account;
+  }
+
+  /**
+   * Balances of several accounts as of a single point in time, with missing ids reported inline.
+   *
+   * <p>The balances are read without locks and validated against the account lock versions: if no
+   * locked change overlapped the read, the balances coexisted. Credits into accounts that take them
+   * lock-free, see {@link SyncAccount#isCreditLockFree()}, only ever add and change no version, so
+   * those balances are read twice and must not have moved in between. After a few failed attempts
+   * the accounts are locked briefly instead; locks do not hold off lock-free credits, so there the
+   * balances of such accounts are exact but not guaranteed to be cut at the same point as the
+   * others. In sharded transfer mode balances change without account locks, so each balance is
+   * exact but they are not guaranteed to be cut at a common point.
+   */
+  public AccountQueryResult queryAccounts(List<String> accountIds) throws TransferLockTimeoutException {
+    SyncAccount[] accounts = new SyncAccount[accountIds.size()];
+    for (int i = 0; i < accounts.length; i++) {
+      String accountId = accountIds.get(i);
+      accounts[i] = accountId == null ? null : (SyncAccount) accountsRepository.findAccount(accountId);
+    }
+    BigDecimal[] balances = new BigDecimal[accounts.length];
+    if (!readConsistentBalances(accounts, balances)) {
+      readLockedBalances(accounts, balances);
+    }
+
+    List<AccountQueryEntry> entries = new ArrayList<>(accounts.length);
+    int found = 0;
+    for (int i = 0; i < accounts.length; i++) {
+      if (accounts[i] == null) {
+        entries.add(new AccountQueryEntry(accountIds.get(i), AccountQueryStatus.NOT_FOUND, null));
+      } else {
+        entries.add(new AccountQueryEntry(accountIds.get(i), AccountQueryStatus.FOUND, balances[i]));
+        found++;
+      }
+    }
+    return new AccountQueryResult(found, accounts.length - found, entries);
+  }
+
+  private static boolean readConsistentBalances(SyncAccount[] accounts, BigDecimal[] balances) {
+    long[] versions = new long[accounts.length];
+    for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+      if (attempt > 0) {
+        Thread.yield();
+      }
+      boolean stable = true;
+      for (int i = 0; i < accounts.length && stable; i++) {
+        if (accounts[i] != null) {
+          versions[i] = accounts[i].getLock().getVersion();
+          stable = (versions[i] & 1) == 0;
+        }
+      }
+      if (!stable) {
+        continue;
+      }
+      for (int i = 0; i < accounts.length; i++) {
+        if (accounts[i] != null) {
+          balances[i] = accounts[i].getBalance();
+        }
+      }
+      // A balance only credited meanwhile was the same at every point between its two reads, and
+      // those intervals all overlap between the end of the first pass and the start of the second
+      for (int i = 0; i < accounts.length && stable; i++) {
+        stable = accounts[i] == null || !accounts[i].isCreditLockFree()
+                || accounts[i].getBalance().compareTo(balances[i]) == 0;
+      }
+      for (int i = 0; i < accounts.length && stable; i++) {
+        stable = accounts[i] == null || accounts[i].getLock().getVersion() == versions[i];
+      }
+      if (stable) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void readLockedBalances(SyncAccount[] accounts, BigDecimal[] balances) throws TransferLockTimeoutException {
+    List<SyncAccount> present = new ArrayList<>(accounts.length);
+    for (SyncAccount account : accounts) {
+      if (account != null) {
+        present.add(account);
+      }
+    }
+    try {
+      List<SyncAccount> locked = accountLocker.lock(present);
+      try {
+        for (int i = 0; i < accounts.length; i++) {
+          if (accounts[i] != null) {
+            balances[i] = accounts[i].getBalance();
+          }
+        }
+      } finally {
+        accountLocker.unlock(locked);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Something went wrong. Server not able to process the request");
+    }
+  }
+
+  /**
+   * Transfers once per idempotency key: a request repeating the key of an earlier one gets that
+   * request's outcome back, without looking at the accounts. Lock timeouts and unexpected failures
+   * are not recorded, so a retry after one of those runs the transfer again.
+   */
+  public void transferMoney(TransferRequestDetails transferRequestDetails)
+          throws InsufficientBalanceException, AccountDoesNotExistsException, TransferLockTimeoutException {
+    String key = transferRequestDetails.getIdempotencyKey();
+    if (key == null) {
+      meteredTransferMoney(transferRequestDetails);
+      return;
+    }
+    IdempotencyStore.Outcome previous = idempotencyStore.claim(key, transferRequestDetails);
+    if (previous != null) {
+      previous.replay();
+      return;
+    }
+    boolean finished = false;
+    try {
+      meteredTransferMoney(transferRequestDetails);
+      finished = true;
+    } catch (InsufficientBalanceException | AccountDoesNotExistsException | TransferLockTimeoutException | RuntimeException e) {
+      finished = true;
+      idempotencyStore.finish(key, e);
+      throw e;
+    } finally {
+      // An Error leaves no outcome to record; the claim is still released so retries can proceed
+      if (!finished) {
+        idempotencyStore.release(key);
+      }
+    }
+    idempotencyStore.finish(key, null);
+  }
+
+  /**
+   * One attempt at a transfer that never waits for an account lock. Returns null, having changed
+   * nothing, if either account is locked by another transfer; otherwise a future that completes
+   * once the transfer is applied and durable. In sharded mode the transfer is queued on its shard
+   * and the durability wait and notifications run on {@code executor}. Idempotency keys and outcome
+   * metrics are left to the caller, see {@link AsyncTransferExecutor}.
+   */
+  public CompletableFuture<Void> tryTransferMoney(TransferRequestDetails transferRequestDetails, Executor executor)
+          throws InsufficientBalanceException, AccountDoesNotExistsException, TransferLockTimeoutException {
+    SyncAccount fromAccount = (SyncAccount) this.accountsRepository.getAccount(transferRequestDetails.getFromAccountId());
+    SyncAccount toAccount = (SyncAccount) this.accountsRepository.getAccount(transferRequestDetails.getToAccountId());
+    BigDecimal amount = transferRequestDetails.getAmount();
+
+    if (shardedTransferExecutor != null) {
+      validateOnShard(fromAccount, toAccount, amount);
+      return shardedTransferExecutor.submit(fromAccount, toAccount, amount).thenAcceptAsync(journalPosition -> {
+        accountsRepository.awaitDurable(journalPosition);
+        notifyTransfer(fromAccount, toAccount, amount);
+      }, executor);
+    }
+
+    List<SyncAccount> locked = toAccount.isCreditLockFree() ? accountLocker.tryLock(fromAccount) : accountLocker.tryLock(fromAccount, toAccount);
+    if (locked == null) {
+      return null;
+    }
+    long journalPosition;
+    try {
+      journalPosition = applyTransfer(transferRequestDetails, fromAccount, toAccount);
+    } finally {
+      accountLocker.unlock(locked);
+    }
+    accountsRepository.awaitDurable(journalPosition);
+    notifyTransfer(fromAccount, toAccount, amount);
+    return CompletableFuture.completedFuture(null);
+  }
+
+  private void meteredTransferMoney(TransferRequestDetails transferRequestDetails)
+          throws InsufficientBalanceException, AccountDoesNotExistsException, TransferLockTimeoutException {
+    long start = System.nanoTime();
+    try {
+      doTransferMoney(transferRequestDetails, start);
+      transferMetrics.count(TransferMetrics.Outcome.COMPLETED);
+      transferMetrics.countCompletion(false);
+    } catch (InsufficientBalanceException e) {
+      transferMetrics.count(TransferMetrics.Outcome.INSUFFICIENT_BALANCE);
+      throw e;
+    } catch (AccountDoesNotExistsException e) {
+      transferMetrics.count(TransferMetrics.Outcome.ACCOUNT_NOT_FOUND);
+      throw e;
+    } catch (TransferLockTimeoutException e) {
+      transferMetrics.count(TransferMetrics.Outcome.LOCK_TIMEOUT);
+      throw e;
+    } catch (RuntimeException e) {
+      transferMetrics.count(TransferMetrics.Outcome.FAILED);
+      throw e;
+    } finally {
+      transferMetrics.record(TransferMetrics.Stage.SERVICE, start);
+    }
+  }
+
+  private void doTransferMoney(TransferRequestDetails transferRequestDetails, long start)
+          throws InsufficientBalanceException, AccountDoesNotExistsException, TransferLockTimeoutException {
 
     SyncAccount fromAccount = (SyncAccount) this.accountsRepository
             .getAccount(transferRequestDetails.getFromAccountId()); //Get Sender's Account details from account Id
     SyncAccount toAccount = (SyncAccount) this.accountsRepository
             .getAccount(transferRequestDetails.getToAccountId());  ////Get Receiver's Account details from account Id
+    long stageStart = transferMetrics.record(TransferMetrics.Stage.LOOKUP, start);
+
+    if (shardedTransferExecutor != null) {
+      transferOnShard(transferRequestDetails, fromAccount, toAccount);
+      return;
+    }
+
+    try {
+      // Locks are always taken in account id order, so crossing transfers A->B and B->A cannot deadlock
+      // A receiver taking lock-free credits is not locked at all
+      List<SyncAccount> locked;
+      try {
+        locked = toAccount.isCreditLockFree() ? accountLocker.lock(fromAccount) : accountLocker.lock(fromAccount, toAccount);
+      } finally {
+        stageStart = transferMetrics.record(TransferMetrics.Stage.LOCK_WAIT, stageStart);
+      }
+      long journalPosition;
+      try {
+        journalPosition = applyTransfer(transferRequestDetails, fromAccount, toAccount);
+      } finally {
+        accountLocker.unlock(locked);
+      }
+      stageStart = transferMetrics.record(TransferMetrics.Stage.EXECUTE, stageStart);
+      accountsRepository.awaitDurable(journalPosition);
+      stageStart = transferMetrics.record(TransferMetrics.Stage.DURABILITY, stageStart);
+      notifyTransfer(fromAccount, toAccount, transferRequestDetails.getAmount());
+      transferMetrics.record(TransferMetrics.Stage.NOTIFY, stageStart);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Something went wrong. Server not able to process the request");
+    }
+  }
 
+  /**
+   * Applies every debit and credit of the request, or none of them. All involved accounts are
+   * locked once, in lock order, the resulting balances are checked, and the legs are applied and
+   * journaled as one record, so the transfer is a single critical section and replays atomically.
+   * An account may appear in several legs; only its net change has to be covered.
+   *
+   * @throws InvalidBalanceException if a leg is malformed, the debits and credits differ or a
+   *                                 resulting balance is out of range
+   * @throws UnsupportedTransferModeException in sharded transfer mode, which has no cross-shard
+   *                                          atomicity
+   */
+  public void transferMultiLeg(MultiLegTransferRequest request)
+          throws InsufficientBalanceException, AccountDoesNotExistsException, TransferLockTimeoutException {
+    if (shardedTransferExecutor != null) {
+      throw new UnsupportedTransferModeException("Multi-leg transfers are not supported in sharded transfer mode");
+    }
+    BigDecimal debited = validateLegs(request.getDebits(), "debit");
+    BigDecimal credited = validateLegs(request.getCredits(), "credit");
+    if (debited.compareTo(credited) != 0) {
+      throw new InvalidBalanceException("Debits total " + debited + " but credits total " + credited);
+    }
+
+    // Each id is resolved once: off-heap repositories return a new view per lookup, and an account
+    // must be a single key for its legs to be netted and checked together
+    Map<String, SyncAccount> accounts = new HashMap<>();
+    Map<SyncAccount, BigDecimal> netChanges = new IdentityHashMap<>();
+    addLegs(accounts, netChanges, request.getDebits(), true);
+    addLegs(accounts, netChanges, request.getCredits(), false);
+    netChanges.values().removeIf(change -> change.signum() == 0);
+
+    long journalPosition = 0;
     try {
-      boolean isFromAccountLocked = fromAccount.getLock().tryLock(Long.valueOf(connectionTimeout), TimeUnit.MILLISECONDS);
+      List<SyncAccount> locked = accountLocker.lock(netChanges.keySet());
+      try {
+        for (Map.Entry<SyncAccount, BigDecimal> netChange : netChanges.entrySet()) {
+          if (netChange.getKey().getBalance().add(netChange.getValue()).signum() < 0) {
+            throw insufficientBalance(netChange.getKey());
+          }
+          if (!netChange.getKey().canAdjustBalance(netChange.getValue())) {
+            throw balanceOutOfRange(netChange.getKey(), netChange.getValue());
+          }
+        }
+        netChanges.forEach(SyncAccount::adjustBalance);
+        if (!netChanges.isEmpty()) {
+          journalPosition = logNetChanges(netChanges);
+        }
+        transactionLedger.recordLegs(request.getDebits(), request.getCredits());
+      } finally {
+        accountLocker.unlock(locked);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Something went wrong. Server not able to process the request");
+    }
 
-      if(isFromAccountLocked){  //from account is locked
-        boolean isToAccountLocked = toAccount.getLock().tryLock(Long.valueOf(connectionTimeout), TimeUnit.MILLISECONDS);
+    accountsRepository.awaitDurable(journalPosition);
+    netChanges.forEach((account, change) -> notificationDispatcher.publishMultiLegChange(notificationService, account, change));
+  }
 
-        if(isToAccountLocked){  //to account is also locked
+  private static BigDecimal validateLegs(List<TransferLeg> legs, String kind) {
+    if (legs == null || legs.isEmpty()) {
+      throw new InvalidBalanceException("A multi-leg transfer needs at least one " + kind);
+    }
+    BigDecimal total = BigDecimal.ZERO;
+    for (TransferLeg leg : legs) {
+      if (leg == null || leg.getAccountId() == null || leg.getAccountId().isEmpty()) {
+        throw new InvalidBalanceException("Every " + kind + " needs an account id");
+      }
+      if (leg.getAmount() == null || leg.getAmount().signum() <= 0) {
+        throw new InvalidBalanceException("Invalid amount to " + kind + " account id " + leg.getAccountId() + ": must be positive");
+      }
+      total = total.add(leg.getAmount());
+    }
+    return total;
+  }
+
+  private void addLegs(Map<String, SyncAccount> accounts, Map<SyncAccount, BigDecimal> netChanges, List<TransferLeg> legs,
+                       boolean debit) throws AccountDoesNotExistsException {
+    for (TransferLeg leg : legs) {
+      SyncAccount account = accounts.get(leg.getAccountId());
+      if (account == null) {
+        account = (SyncAccount) accountsRepository.getAccount(leg.getAccountId());
+        accounts.put(leg.getAccountId(), account);
+      }
+      if (account instanceof FixedPointAccount) {
+        toMinorUnits((FixedPointAccount) account, leg.getAmount());
+      }
+      netChanges.merge(account, debit ? leg.getAmount().negate() : leg.getAmount(), BigDecimal::add);
+    }
+  }
+
+  /**
+   * Applies a batch of transfers with a single lock round trip: every touched account is locked once,
+   * the transfers are checked in order against running balances and each account receives one net
+   * balance change.
+   */
+  public BatchTransferResult transferBatch(List<TransferRequestDetails> transfers, BatchTransferMode mode) {
+    TransferBatch batch = new TransferBatch(transfers, mode);
+    batch.resolve(this.accountsRepository);
 
-          doTransaction(transferRequestDetails, fromAccount, toAccount);
+    if (shardedTransferExecutor != null) {
+      transferBatchOnShards(batch, mode);
+      return batch.result();
+    }
 
-          toAccount.getLock().unlock();
+    Map<SyncAccount, BigDecimal> netChanges;
+    long journalPosition = 0;
+    try {
+      List<SyncAccount> locked = accountLocker.lock(batch.touchedAccounts());
+      try {
+        netChanges = batch.net();
+        netChanges.forEach(SyncAccount::adjustBalance);
+        if (!netChanges.isEmpty()) {
+          journalPosition = logNetChanges(netChanges);
+        }
+        for (int i = 0; i < batch.getTransfers().size(); i++) {
+          if (batch.isCompleted(i)) {
+            TransferRequestDetails transfer = batch.getTransfers().get(i);
+            transactionLedger.recordTransfer(transfer.getFromAccountId(), transfer.getToAccountId(), transfer.getAmount());
+          }
         }
+      } finally {
+        accountLocker.unlock(locked);
+      }
+    } catch (TransferLockTimeoutException e) {
+      batch.failPending(TransferStatus.LOCK_TIMEOUT, e.getMessage());
+      return batch.result();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Something went wrong. Server not able to process the request");
+    }
+
+    accountsRepository.awaitDurable(journalPosition);
+    netChanges.forEach((account, change) -> notificationDispatcher.publishNetChange(notificationService, account, change));
+    return batch.result();
+  }
 
-        fromAccount.getLock().unlock();
+  private long logNetChanges(Map<SyncAccount, BigDecimal> netChanges) {
+    String[] accountIds = new String[netChanges.size()];
+    BigDecimal[] changes = new BigDecimal[netChanges.size()];
+    int i = 0;
+    for (Map.Entry<SyncAccount, BigDecimal> netChange : netChanges.entrySet()) {
+      accountIds[i] = netChange.getKey().getAccountId();
+      changes[i++] = netChange.getValue();
+    }
+    return accountsRepository.logBalanceChanges(accountIds, changes);
+  }
+
+  /**
+   * Shard threads own the balances without locks, so a batch cannot be applied atomically here;
+   * best-effort batches are submitted transfer by transfer instead.
+   */
+  private void transferBatchOnShards(TransferBatch batch, BatchTransferMode mode) {
+    if (mode == BatchTransferMode.ALL_OR_NOTHING) {
+      throw new UnsupportedTransferModeException("All-or-nothing batches are not supported in sharded transfer mode");
+    }
+    List<CompletableFuture<Long>> completions = new ArrayList<>();
+    for (int i = 0; i < batch.getTransfers().size(); i++) {
+      CompletableFuture<Long> completion = null;
+      if (batch.isPending(i)) {
+        try {
+          completion = shardedTransferExecutor.submit(batch.fromAccount(i), batch.toAccount(i),
+                  batch.getTransfers().get(i).getAmount());
+        } catch (TransferLockTimeoutException e) {
+          batch.fail(i, TransferStatus.LOCK_TIMEOUT, e.getMessage());
+        }
+      }
+      completions.add(completion);
+    }
+    for (int i = 0; i < completions.size(); i++) {
+      if (completions.get(i) == null) {
+        continue;
       }
+      try {
+        accountsRepository.awaitDurable(completions.get(i).get());
+        batch.complete(i);
+        notifyTransfer(batch.fromAccount(i), batch.toAccount(i), batch.getTransfers().get(i).getAmount());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Something went wrong. Server not able to process the request");
+      } catch (ExecutionException e) {
+        batch.fail(i, shardFailureStatus(e.getCause()), e.getCause().getMessage());
+      }
+    }
+  }
+
+  private static TransferStatus shardFailureStatus(Throwable failure) {
+    if (failure instanceof InsufficientBalanceException) {
+      return TransferStatus.INSUFFICIENT_BALANCE;
+    }
+    return failure instanceof InvalidBalanceException ? TransferStatus.INVALID_REQUEST : TransferStatus.FAILED;
+  }
+
+  private void transferOnShard(TransferRequestDetails transferRequestDetails, SyncAccount fromAccount, SyncAccount toAccount)
+          throws InsufficientBalanceException, TransferLockTimeoutException {
+    BigDecimal amount = transferRequestDetails.getAmount();
+    validateOnShard(fromAccount, toAccount, amount);
+    try {
+      accountsRepository.awaitDurable(shardedTransferExecutor.submit(fromAccount, toAccount, amount).get());
     } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new RuntimeException("Something went wrong. Server not able to process the request");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof InsufficientBalanceException) {
+        throw (InsufficientBalanceException) e.getCause();
+      }
+      if (e.getCause() instanceof InvalidBalanceException) {
+        throw (InvalidBalanceException) e.getCause();
+      }
+      throw new RuntimeException("Something went wrong. Server not able to process the request", e.getCause());
+    }
+    notifyTransfer(fromAccount, toAccount, amount);
+  }
+
+  /**
+   * Moves the money, journals the transfer and records it in the ledger, under the sender's lock. A
+   * receiver taking lock-free credits is credited only after the transfer is journaled, so a later
+   * debit spending the credit is always journaled after it; both amounts are converted before
+   * anything changes.
+   */
+  private long applyTransfer(TransferRequestDetails transferRequestDetails, SyncAccount fromAccount, SyncAccount toAccount)
+          throws InsufficientBalanceException {
+    BigDecimal amount = transferRequestDetails.getAmount();
+    if (!toAccount.isCreditLockFree()) {
+      doTransaction(transferRequestDetails, fromAccount, toAccount);
+      transactionLedger.recordTransfer(fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+      return accountsRepository.logTransfer(fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+    }
+    long minorUnits = toMinorUnits((FixedPointAccount) toAccount, amount);
+    if (fromAccount instanceof FixedPointAccount) {
+      toMinorUnits((FixedPointAccount) fromAccount, amount);
+    }
+    checkCreditable(toAccount, amount);
+    if (!fromAccount.tryDebit(amount)) {
+      throw insufficientBalance(fromAccount);
+    }
+    long journalPosition = accountsRepository.logTransfer(fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+    transactionLedger.recordTransfer(fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+    ((FixedPointAccount) toAccount).creditMinorUnits(minorUnits);
+    return journalPosition;
+  }
+
+  /**
+   * Shard threads cannot report a conversion failure after the debit, so amounts are checked
+   * against both fixed-point accounts before submission.
+   */
+  private static void validateOnShard(SyncAccount fromAccount, SyncAccount toAccount, BigDecimal amount) {
+    if (fromAccount instanceof FixedPointAccount) {
+      toMinorUnits((FixedPointAccount) fromAccount, amount);
+    }
+    if (toAccount instanceof FixedPointAccount) {
+      toMinorUnits((FixedPointAccount) toAccount, amount);
     }
   }
 
   private void doTransaction(TransferRequestDetails transferRequestDetails, SyncAccount fromAccount, SyncAccount toAccount) throws InsufficientBalanceException {
     BigDecimal amount = transferRequestDetails.getAmount();
 
-    if ((fromAccount.getBalance().compareTo(amount)) >= 0) {
-      fromAccount.setBalance(fromAccount.getBalance().subtract(amount)); // Deduct Amount
-      toAccount.setBalance(toAccount.getBalance().add(amount)); // Credit amount
+    if (fromAccount instanceof FixedPointAccount && toAccount instanceof FixedPointAccount) {
+      // Fixed-point accounts move a long count of minor units with CAS, no BigDecimal arithmetic
+      long minorUnits = toMinorUnits((FixedPointAccount) fromAccount, amount);
+      checkCreditable(toAccount, amount);
+      if (!((FixedPointAccount) fromAccount).tryDebitMinorUnits(minorUnits)) {
+        throw insufficientBalance(fromAccount);
+      }
+      ((FixedPointAccount) toAccount).creditMinorUnits(minorUnits);
+      return;
+    }
 
-      notificationService.notifyAboutTransfer(fromAccount, "Amount Debited: " + amount + ". You have successfully transferred amount: " + amount + " to AccountID: " + toAccount.getAccountId());
-      notificationService.notifyAboutTransfer(toAccount, "Amount Credited: " + amount + ". You have received amount: " + amount + " from AccountID: " + fromAccount.getAccountId());
+    checkCreditable(toAccount, amount);
+    if (fromAccount.tryDebit(amount)) { // Deduct Amount
+      toAccount.credit(amount); // Credit amount
     } else {
-      throw new InsufficientBalanceException("Insufficient account balance in accountId:" + fromAccount.getAccountId() + "to perform this transaction");
+      throw insufficientBalance(fromAccount);
+    }
+  }
+
+  /**
+   * Checked before the sender is debited: a credit the receiver cannot hold would otherwise fail
+   * with the debit already applied.
+   */
+  private static void checkCreditable(SyncAccount toAccount, BigDecimal amount) {
+    if (!toAccount.canAdjustBalance(amount)) {
+      throw balanceOutOfRange(toAccount, amount);
+    }
+  }
+
+  private static InvalidBalanceException balanceOutOfRange(SyncAccount account, BigDecimal change) {
+    return new InvalidBalanceException(balanceOutOfRangeMessage(account, change));
+  }
+
+  static String balanceOutOfRangeMessage(SyncAccount account, BigDecimal change) {
+    return "Balance of account id " + account.getAccountId() + " cannot take a change of " + change
+            + ": it would leave the supported range";
+  }
+
+  private static InsufficientBalanceException insufficientBalance(SyncAccount fromAccount) {
+    return InsufficientBalanceException.forAccount(fromAccount.getAccountId());
+  }
+
+  private static long toMinorUnits(FixedPointAccount account, BigDecimal amount) {
+    try {
+      return account.toMinorUnits(amount);
+    } catch (ArithmeticException e) {
+      throw new InvalidBalanceException("Invalid amount to be transferred: " + amount
+              + " has more than " + account.getScale() + " decimal places or is out of range");
     }
   }
+
+  /**
+   * Called after the account locks are released; delivery happens on the dispatcher thread.
+   */
+  private void notifyTransfer(SyncAccount fromAccount, SyncAccount toAccount, BigDecimal amount) {
+    notificationDispatcher.publishTransfer(notificationService, fromAccount, toAccount, amount);
+  }
 }
 
@@ -0,0 +1,208 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers transfer notifications off the transfer path. Publishing only enqueues a small event; a
+ * single dispatcher thread drains the queue in batches, renders the descriptions and coalesces all
+ * messages for the same account of a batch into one {@link NotificationService} call.
+ */
+@Slf4j
+@Component
+public class AsyncNotificationDispatcher {
+
+  private static final String MESSAGE_SEPARATOR = "\n";
+
+  private final BlockingQueue<TransferNotification> queue;
+  private final Queue<TransferNotification> spill = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger spillDepth = new AtomicInteger();
+  private final int batchSize;
+  private final NotificationBackpressure backpressure;
+  private final long blockTimeoutMillis;
+  private final Thread dispatcher;
+  private volatile boolean running = true;
+
+  private final LongAdder published = new LongAdder();
+  private final LongAdder delivered = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder spilled = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private volatile int maxQueueDepth;
+
+  @Autowired
+  public AsyncNotificationDispatcher(@Value("${notifications.queue-capacity:10000}") int queueCapacity,
+                                     @Value("${notifications.batch-size:256}") int batchSize,
+                                     @Value("${notifications.backpressure:DROP}") NotificationBackpressure backpressure,
+                                     @Value("${notifications.block-timeout:1000}") long blockTimeoutMillis) {
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.batchSize = batchSize;
+    this.backpressure = backpressure;
+    this.blockTimeoutMillis = blockTimeoutMillis;
+    this.dispatcher = new Thread(this::dispatch, "notification-dispatcher");
+    this.dispatcher.setDaemon(true);
+    this.dispatcher.start();
+  }
+
+  public void publishTransfer(NotificationService target, Account fromAccount, Account toAccount, BigDecimal amount) {
+    publish(new TransferNotification(target, fromAccount, TransferNotification.Kind.DEBIT, toAccount.getAccountId(), amount));
+    publish(new TransferNotification(target, toAccount, TransferNotification.Kind.CREDIT, fromAccount.getAccountId(), amount));
+  }
+
+  public void publishNetChange(NotificationService target, Account account, BigDecimal netChange) {
+    publish(new TransferNotification(target, account, TransferNotification.Kind.BATCH_NET, null, netChange));
+  }
+
+  public void publishMultiLegChange(NotificationService target, Account account, BigDecimal netChange) {
+    publish(new TransferNotification(target, account, TransferNotification.Kind.MULTI_LEG_NET, null, netChange));
+  }
+
+  private void publish(TransferNotification notification) {
+    published.increment();
+    if (spillDepth.get() == 0 && queue.offer(notification)) {
+      return;
+    }
+    switch (backpressure) {
+      case BLOCK:
+        try {
+          if (queue.offer(notification, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        dropped.increment();
+        return;
+      case SPILL:
+        // Counted before it is queued, so a later publisher sees the depth and spills behind it
+        // rather than taking the queue ahead of it.
+        spillDepth.incrementAndGet();
+        spill.offer(notification);
+        spilled.increment();
+        return;
+      default:
+        dropped.increment();
+    }
+  }
+
+  private void dispatch() {
+    List<TransferNotification> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty() || spillDepth.get() > 0) {
+      try {
+        TransferNotification first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch, batchSize - 1);
+          maxQueueDepth = Math.max(maxQueueDepth, batch.size() + queue.size());
+        }
+        refillFromSpill();
+        if (!batch.isEmpty()) {
+          deliver(batch);
+          batch.clear();
+        }
+      } catch (InterruptedException e) {
+        running = false;
+      }
+    }
+  }
+
+  /**
+   * Spilled notifications move back into the queue in publication order as soon as it has room, so
+   * new notifications never overtake them.
+   */
+  private void refillFromSpill() {
+    TransferNotification spilledNotification;
+    while (spillDepth.get() > 0 && (spilledNotification = spill.peek()) != null && queue.offer(spilledNotification)) {
+      spill.poll();
+      spillDepth.decrementAndGet();
+    }
+  }
+
+  private void deliver(List<TransferNotification> batch) {
+    Map<Recipient, StringBuilder> messages = new LinkedHashMap<>();
+    for (TransferNotification notification : batch) {
+      Recipient recipient = new Recipient(notification.target, notification.account);
+      StringBuilder message = messages.get(recipient);
+      if (message == null) {
+        messages.put(recipient, new StringBuilder(notification.describe()));
+      } else {
+        message.append(MESSAGE_SEPARATOR).append(notification.describe());
+        coalesced.increment();
+      }
+    }
+    messages.forEach((recipient, message) -> {
+      try {
+        recipient.target.notifyAboutTransfer(recipient.account, message.toString());
+        delivered.increment();
+      } catch (RuntimeException e) {
+        failed.increment();
+        log.warn("Failed to notify owner of {}", recipient.account.getAccountId(), e);
+      }
+    });
+  }
+
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("backpressure", backpressure);
+    metrics.put("queueDepth", queue.size());
+    metrics.put("queueCapacity", queue.size() + queue.remainingCapacity());
+    metrics.put("maxQueueDepth", maxQueueDepth);
+    metrics.put("spillDepth", spillDepth.get());
+    metrics.put("published", published.sum());
+    metrics.put("delivered", delivered.sum());
+    metrics.put("coalesced", coalesced.sum());
+    metrics.put("dropped", dropped.sum());
+    metrics.put("spilled", spilled.sum());
+    metrics.put("failed", failed.sum());
+    return metrics;
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  private static final class Recipient {
+    private final NotificationService target;
+    private final Account account;
+
+    private Recipient(NotificationService target, Account account) {
+      this.target = target;
+      this.account = account;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Recipient)) {
+        return false;
+      }
+      Recipient other = (Recipient) o;
+      return target == other.target && Objects.equals(account.getAccountId(), other.account.getAccountId());
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(target) + Objects.hashCode(account.getAccountId());
+    }
+  }
+}
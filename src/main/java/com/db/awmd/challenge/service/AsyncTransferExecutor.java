@@ -0,0 +1,172 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs transfers for the asynchronous transfer endpoint without holding a thread while they wait.
+ *
+ * <p>A transfer is attempted on a small worker pool with {@link AccountsService#tryTransferMoney},
+ * which never waits for an account lock. If a lock is busy, the attempt is rescheduled after a
+ * short backoff that doubles up to {@code transfer.async.max-backoff}, and the transfer fails with
+ * a lock timeout once {@code transfer.lock-timeout} has passed since submission. A waiting transfer
+ * is therefore just a scheduled task, so the number in flight is bounded by
+ * {@code transfer.async.max-in-flight} rather than by any thread pool. Journal durability waits
+ * still run on the workers; they last one group commit.
+ */
+@Slf4j
+@Component
+public class AsyncTransferExecutor {
+
+  private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final AccountsService accountsService;
+  private final IdempotencyStore idempotencyStore;
+  private final TransferMetrics transferMetrics;
+  private final long lockTimeoutMillis;
+  private final long maxBackoffNanos;
+  private final int maxInFlight;
+  private final ExecutorService workers;
+  private final ScheduledExecutorService retries;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder retried = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  @Autowired
+  public AsyncTransferExecutor(AccountsService accountsService, IdempotencyStore idempotencyStore,
+                               TransferMetrics transferMetrics,
+                               @Value("${transfer.lock-timeout:${server.connection-timeout}}") long lockTimeoutMillis,
+                               @Value("${transfer.async.threads:0}") int threads,
+                               @Value("${transfer.async.max-in-flight:10000}") int maxInFlight,
+                               @Value("${transfer.async.max-backoff:1000}") long maxBackoffMicros) {
+    this.accountsService = accountsService;
+    this.idempotencyStore = idempotencyStore;
+    this.transferMetrics = transferMetrics;
+    this.lockTimeoutMillis = lockTimeoutMillis;
+    this.maxBackoffNanos = Math.max(MIN_BACKOFF_NANOS, TimeUnit.MICROSECONDS.toNanos(maxBackoffMicros));
+    this.maxInFlight = maxInFlight;
+    int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger workerCount = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(count, runnable -> {
+      Thread thread = new Thread(runnable, "transfer-async-" + workerCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.retries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "transfer-async-retry");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Starts the transfer and returns at once. The future completes when the transfer has been
+   * applied, or exceptionally with the exception {@link AccountsService#transferMoney} would have
+   * thrown. Fails at once with a {@link TransferLockTimeoutException} when
+   * {@code transfer.async.max-in-flight} transfers are already running.
+   */
+  public CompletableFuture<Void> submit(TransferRequestDetails transferRequestDetails) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    if (inFlight.incrementAndGet() > maxInFlight) {
+      inFlight.decrementAndGet();
+      rejected.increment();
+      result.completeExceptionally(new TransferLockTimeoutException(
+              "Too many transfers in flight (" + maxInFlight + "), transfer not performed"));
+      return result;
+    }
+    long start = System.nanoTime();
+    result.whenComplete((ignored, failure) -> {
+      inFlight.decrementAndGet();
+      transferMetrics.countFailure(failure);
+      transferMetrics.record(TransferMetrics.Stage.SERVICE, start);
+    });
+    workers.execute(() -> begin(transferRequestDetails, result, start));
+    return result;
+  }
+
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("inFlight", inFlight.get());
+    metrics.put("retries", retried.sum());
+    metrics.put("rejected", rejected.sum());
+    return metrics;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    retries.shutdownNow();
+    workers.shutdownNow();
+  }
+
+  /**
+   * Claims the idempotency key, if any, then makes the first attempt. A claim only waits when a
+   * request with the same key is still running, which is rare enough to spend a worker on.
+   */
+  private void begin(TransferRequestDetails transferRequestDetails, CompletableFuture<Void> result, long start) {
+    String key = transferRequestDetails.getIdempotencyKey();
+    if (key != null) {
+      try {
+        IdempotencyStore.Outcome previous = idempotencyStore.claim(key, transferRequestDetails);
+        if (previous != null) {
+          previous.replay();
+          result.complete(null);
+          return;
+        }
+      } catch (Exception e) {
+        result.completeExceptionally(e);
+        return;
+      }
+      result.whenComplete((ignored, failure) -> idempotencyStore.finish(key, failure));
+    }
+    attempt(transferRequestDetails, result, start + TimeUnit.MILLISECONDS.toNanos(lockTimeoutMillis), MIN_BACKOFF_NANOS, false);
+  }
+
+  private void attempt(TransferRequestDetails transferRequestDetails, CompletableFuture<Void> result,
+                       long deadline, long backoffNanos, boolean retry) {
+    CompletableFuture<Void> applied;
+    try {
+      applied = accountsService.tryTransferMoney(transferRequestDetails, workers);
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+      return;
+    }
+    if (applied != null) {
+      applied.whenComplete((ignored, failure) -> {
+        if (failure == null) {
+          transferMetrics.countCompletion(retry);
+          result.complete(null);
+        } else {
+          result.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+        }
+      });
+      return;
+    }
+    if (System.nanoTime() - deadline >= 0) {
+      result.completeExceptionally(new TransferLockTimeoutException(
+              "Could not lock accounts " + transferRequestDetails.getFromAccountId() + " and "
+                      + transferRequestDetails.getToAccountId() + " within " + lockTimeoutMillis + "ms, transfer not performed"));
+      return;
+    }
+    retried.increment();
+    long nextBackoff = Math.min(backoffNanos * 2, maxBackoffNanos);
+    retries.schedule(() -> workers.execute(() -> attempt(transferRequestDetails, result, deadline, nextBackoff, true)),
+            backoffNanos, TimeUnit.NANOSECONDS);
+  }
+}
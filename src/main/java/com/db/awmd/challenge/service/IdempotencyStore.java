@@ -0,0 +1,310 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.IdempotencyKeyConflictException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the outcome of transfers sent with an idempotency key, so a client retry gets the
+ * original outcome instead of moving the money again.
+ *
+ * <p>Keys are spread over independently locked stripes, each a map in insertion order. Every entry
+ * lives for the same TTL, so the eldest entry of a stripe is always the first to expire: inserts
+ * drop expired entries from the head, then the eldest ones while the stripe is at its share of
+ * {@code max-entries}. Entries whose transfer is still running are never dropped. A retry
+ * arriving while the original is still running waits for its outcome. Nothing here touches
+ * account locks.
+ */
+@Component
+public class IdempotencyStore {
+
+  /**
+   * Approximate retained size of an entry besides its id characters, for a 64-bit JVM with
+   * compressed oops: map node, entry, latch, outcome and the headers of the three strings and the
+   * amount kept from the request.
+   */
+  private static final long ENTRY_OVERHEAD_BYTES = 320;
+
+  @Data
+  public static class Outcome {
+
+    private final TransferStatus status;
+
+    private final String message;
+
+    /**
+     * Ends the way the original transfer did: returns if it completed, otherwise throws the same
+     * kind of exception with the same message.
+     */
+    public void replay() throws InsufficientBalanceException, AccountDoesNotExistsException {
+      switch (status) {
+        case COMPLETED:
+          return;
+        case INSUFFICIENT_BALANCE:
+          throw new InsufficientBalanceException(message);
+        case ACCOUNT_NOT_FOUND:
+          throw new AccountDoesNotExistsException(message);
+        case INVALID_REQUEST:
+          throw new InvalidBalanceException(message);
+        default:
+          throw new IllegalStateException("Unexpected recorded outcome " + status);
+      }
+    }
+  }
+
+  private final long ttlNanos;
+  private final int stripeCapacity;
+  private final long waitTimeoutMillis;
+  private final Stripe[] stripes;
+
+  private final LongAdder claims = new LongAdder();
+  private final LongAdder replays = new LongAdder();
+  private final LongAdder conflicts = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+  private final LongAdder evicted = new LongAdder();
+  private final LongAdder entries = new LongAdder();
+  private final LongAdder estimatedBytes = new LongAdder();
+
+  public IdempotencyStore() {
+    this(86_400_000, 1_000_000, 64, 5000);
+  }
+
+  @Autowired
+  public IdempotencyStore(@Value("${transfer.idempotency.ttl:86400000}") long ttlMillis,
+                          @Value("${transfer.idempotency.max-entries:1000000}") int maxEntries,
+                          @Value("${transfer.idempotency.stripes:64}") int stripes,
+                          @Value("${transfer.idempotency.wait-timeout:5000}") long waitTimeoutMillis) {
+    if (Integer.bitCount(stripes) != 1) {
+      throw new IllegalArgumentException("transfer.idempotency.stripes must be a power of two, was " + stripes);
+    }
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.stripeCapacity = Math.max(1, (maxEntries + stripes - 1) / stripes);
+    this.waitTimeoutMillis = waitTimeoutMillis;
+    this.stripes = new Stripe[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Claims the key for the request. Returns null if the caller now owns the key and must end with
+   * {@link #complete} or {@link #release}, or the recorded outcome if the key was seen before,
+   * waiting for it if the original transfer is still running.
+   *
+   * @throws IdempotencyKeyConflictException if the key was used for a different transfer, or the
+   *                                         original is still running after the wait timeout
+   */
+  public Outcome claim(String key, TransferRequestDetails request) {
+    claims.increment();
+    Stripe stripe = stripeOf(key);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMillis);
+    while (true) {
+      Entry entry;
+      synchronized (stripe) {
+        long now = System.nanoTime();
+        entry = stripe.get(key);
+        if (entry != null && now - entry.expiresAt >= 0 && entry.isFinished()) {
+          stripe.remove(key);
+          expired.increment();
+          entry = null;
+        }
+        if (entry == null) {
+          stripe.insert(new Entry(key, request, now + ttlNanos), now);
+          return null;
+        }
+      }
+      if (!entry.matches(request)) {
+        conflicts.increment();
+        throw new IdempotencyKeyConflictException("Idempotency key " + key + " was used for a different transfer");
+      }
+      Outcome outcome = entry.await(deadline);
+      if (outcome != null) {
+        replays.increment();
+        return outcome;
+      }
+      if (!entry.isReleased()) {
+        conflicts.increment();
+        throw new IdempotencyKeyConflictException("Transfer with idempotency key " + key + " is still in progress");
+      }
+      // the original failed without an outcome, so this retry runs the transfer itself
+    }
+  }
+
+  /**
+   * Ends a claim with the way its transfer ended, {@code failure} being null for a completed
+   * transfer. Completions and rejections that a retry would meet again are recorded; lock timeouts
+   * and unexpected failures release the key, so a retry runs the transfer again.
+   */
+  public void finish(String key, Throwable failure) {
+    if (failure == null) {
+      complete(key, TransferStatus.COMPLETED, null);
+    } else if (failure instanceof InsufficientBalanceException) {
+      complete(key, TransferStatus.INSUFFICIENT_BALANCE, failure.getMessage());
+    } else if (failure instanceof AccountDoesNotExistsException) {
+      complete(key, TransferStatus.ACCOUNT_NOT_FOUND, failure.getMessage());
+    } else if (failure instanceof InvalidBalanceException) {
+      complete(key, TransferStatus.INVALID_REQUEST, failure.getMessage());
+    } else {
+      release(key);
+    }
+  }
+
+  /**
+   * Records the outcome for a key returned null by {@link #claim}; later claims replay it.
+   */
+  public void complete(String key, TransferStatus status, String message) {
+    Entry entry;
+    Stripe stripe = stripeOf(key);
+    synchronized (stripe) {
+      entry = stripe.get(key);
+    }
+    if (entry != null) {
+      entry.finish(new Outcome(status, message));
+    }
+  }
+
+  /**
+   * Forgets a claimed key whose transfer failed without an outcome worth replaying, such as a lock
+   * timeout, so that a retry runs the transfer again.
+   */
+  public void release(String key) {
+    Stripe stripe = stripeOf(key);
+    Entry entry;
+    synchronized (stripe) {
+      entry = stripe.remove(key);
+    }
+    if (entry != null) {
+      entry.finish(null);
+    }
+  }
+
+  public Map<String, Object> getMetrics() {
+    long claimCount = claims.sum();
+    long replayCount = replays.sum();
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("requests", claimCount);
+    metrics.put("replays", replayCount);
+    metrics.put("hitRate", claimCount == 0 ? 0.0 : Double.parseDouble(String.format(Locale.ROOT, "%.4f", (double) replayCount / claimCount)));
+    metrics.put("conflicts", conflicts.sum());
+    metrics.put("entries", entries.sum());
+    metrics.put("estimatedBytes", estimatedBytes.sum());
+    metrics.put("expired", expired.sum());
+    metrics.put("evicted", evicted.sum());
+    return metrics;
+  }
+
+  private Stripe stripeOf(String key) {
+    int hash = key.hashCode() * 0x9E3779B9;
+    return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+  }
+
+  private final class Stripe {
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    Entry get(String key) {
+      return entries.get(key);
+    }
+
+    void insert(Entry entry, long now) {
+      Iterator<Entry> eldest = entries.values().iterator();
+      while (eldest.hasNext()) {
+        Entry candidate = eldest.next();
+        boolean isExpired = now - candidate.expiresAt >= 0;
+        if (!isExpired && entries.size() < stripeCapacity) {
+          break;
+        }
+        if (!candidate.isFinished()) {
+          continue; // its owner still has to record the outcome through this map
+        }
+        (isExpired ? expired : evicted).increment();
+        eldest.remove();
+        forget(candidate);
+      }
+      entries.put(entry.key, entry);
+      IdempotencyStore.this.entries.increment();
+      estimatedBytes.add(entry.sizeBytes());
+    }
+
+    Entry remove(String key) {
+      Entry entry = entries.remove(key);
+      if (entry != null) {
+        forget(entry);
+      }
+      return entry;
+    }
+
+    private void forget(Entry entry) {
+      IdempotencyStore.this.entries.decrement();
+      estimatedBytes.add(-entry.sizeBytes());
+    }
+  }
+
+  private static final class Entry {
+
+    private final String key;
+    private final TransferRequestDetails request;
+    private final long expiresAt;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Outcome outcome;
+    private volatile boolean released;
+
+    Entry(String key, TransferRequestDetails request, long expiresAt) {
+      this.key = key;
+      this.request = request;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean matches(TransferRequestDetails other) {
+      return request.getFromAccountId().equals(other.getFromAccountId())
+              && request.getToAccountId().equals(other.getToAccountId())
+              && request.getAmount().compareTo(other.getAmount()) == 0;
+    }
+
+    void finish(Outcome outcome) {
+      if (outcome == null) {
+        released = true;
+      } else {
+        this.outcome = outcome;
+      }
+      done.countDown();
+    }
+
+    boolean isFinished() {
+      return done.getCount() == 0;
+    }
+
+    boolean isReleased() {
+      return released;
+    }
+
+    Outcome await(long deadline) {
+      try {
+        done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return outcome;
+    }
+
+    long sizeBytes() {
+      return ENTRY_OVERHEAD_BYTES + 2L * (key.length() + request.getFromAccountId().length()
+              + request.getToAccountId().length());
+    }
+  }
+}
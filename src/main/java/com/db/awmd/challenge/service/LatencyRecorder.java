@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.service;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of one stage. Recording goes to an HdrHistogram {@link Recorder}, which is
+ * wait-free and does not allocate; readers swap out the interval histogram and fold it into a
+ * running total, so reads never block writers.
+ */
+public class LatencyRecorder {
+
+  private static final long LOWEST_NANOS = 1;
+  private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final int SIGNIFICANT_DIGITS = 2;
+
+  private final Recorder recorder = new Recorder(LOWEST_NANOS, HIGHEST_NANOS, SIGNIFICANT_DIGITS);
+  private final Histogram total = new Histogram(LOWEST_NANOS, HIGHEST_NANOS, SIGNIFICANT_DIGITS);
+  private Histogram interval;
+
+  public void record(long nanos) {
+    recorder.recordValue(Math.min(Math.max(nanos, LOWEST_NANOS), HIGHEST_NANOS));
+  }
+
+  /**
+   * Count, mean, percentiles and max in microseconds since startup.
+   */
+  public synchronized Map<String, Object> snapshot() {
+    interval = recorder.getIntervalHistogram(interval);
+    total.add(interval);
+    Map<String, Object> snapshot = new LinkedHashMap<>();
+    snapshot.put("count", total.getTotalCount());
+    snapshot.put("meanMicros", micros(total.getMean()));
+    snapshot.put("p50Micros", micros(total.getValueAtPercentile(50)));
+    snapshot.put("p90Micros", micros(total.getValueAtPercentile(90)));
+    snapshot.put("p99Micros", micros(total.getValueAtPercentile(99)));
+    snapshot.put("p999Micros", micros(total.getValueAtPercentile(99.9)));
+    snapshot.put("maxMicros", micros(total.getMaxValue()));
+    return snapshot;
+  }
+
+  private static double micros(double nanos) {
+    return Math.round(nanos / 100.0) / 10.0;
+  }
+}
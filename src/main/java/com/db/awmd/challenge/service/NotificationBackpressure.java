@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.service;
+
+/**
+ * What {@link AsyncNotificationDispatcher} does with a notification when its queue is full.
+ */
+public enum NotificationBackpressure {
+
+  /** Discard the notification and count it as dropped. */
+  DROP,
+  /** Wait up to the block timeout for room in the queue, then drop. */
+  BLOCK,
+  /** Park the notification in an unbounded overflow queue that is drained once the queue has room. */
+  SPILL
+}
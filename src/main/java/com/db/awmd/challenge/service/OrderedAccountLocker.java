@@ -0,0 +1,111 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.domain.VersionedLock;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acquires the locks of several accounts in one global order (by lock rank, then account id), so
+ * two transfers touching the same accounts in opposite directions can never wait on each other in
+ * a cycle.
+ *
+ * <p>While the accounts are held, their {@link com.db.awmd.challenge.domain.VersionedLock lock
+ * versions} are odd, which lets readers validate lock-free snapshots of several accounts.
+ */
+@Component
+public class OrderedAccountLocker {
+
+  private static final Comparator<SyncAccount> LOCK_ORDER = Comparator.comparingInt(SyncAccount::getLockRank)
+          .thenComparing(SyncAccount::getAccountId);
+
+  @Getter
+  private final long lockTimeoutMillis;
+
+  @Autowired
+  public OrderedAccountLocker(@Value("${transfer.lock-timeout:${server.connection-timeout}}") long lockTimeoutMillis) {
+    this.lockTimeoutMillis = lockTimeoutMillis;
+  }
+
+  public List<SyncAccount> lock(SyncAccount... accounts) throws TransferLockTimeoutException, InterruptedException {
+    return lock(Arrays.asList(accounts));
+  }
+
+  /**
+   * Locks every distinct account in lock order and returns them in that order. If any lock cannot be
+   * taken within the lock timeout the locks acquired so far are released and the call fails.
+   */
+  public List<SyncAccount> lock(Collection<SyncAccount> accounts) throws TransferLockTimeoutException, InterruptedException {
+    List<SyncAccount> ordered = inLockOrder(accounts);
+    List<SyncAccount> locked = new ArrayList<>(ordered.size());
+    try {
+      for (SyncAccount account : ordered) {
+        VersionedLock lock = account.getLock();
+        if (!lock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          throw new TransferLockTimeoutException(
+                  "Could not lock accountId:" + account.getAccountId() + " within " + lockTimeoutMillis + "ms, transfer not performed");
+        }
+        if (lock.getHoldCount() == 1) {
+          lock.beginWrite();
+        }
+        locked.add(account);
+      }
+    } catch (TransferLockTimeoutException | InterruptedException e) {
+      unlock(locked);
+      throw e;
+    }
+    return locked;
+  }
+
+  /**
+   * Like {@link #lock(Collection)}, but never waits: if any lock is held by another thread, the locks
+   * acquired so far are released and null is returned.
+   */
+  public List<SyncAccount> tryLock(SyncAccount... accounts) {
+    List<SyncAccount> ordered = inLockOrder(Arrays.asList(accounts));
+    List<SyncAccount> locked = new ArrayList<>(ordered.size());
+    for (SyncAccount account : ordered) {
+      VersionedLock lock = account.getLock();
+      if (!lock.tryLock()) {
+        unlock(locked);
+        return null;
+      }
+      if (lock.getHoldCount() == 1) {
+        lock.beginWrite();
+      }
+      locked.add(account);
+    }
+    return locked;
+  }
+
+  public void unlock(List<SyncAccount> locked) {
+    for (int i = locked.size() - 1; i >= 0; i--) {
+      VersionedLock lock = locked.get(i).getLock();
+      if (lock.getHoldCount() == 1) {
+        lock.endWrite();
+      }
+      lock.unlock();
+    }
+  }
+
+  private static List<SyncAccount> inLockOrder(Collection<SyncAccount> accounts) {
+    List<SyncAccount> ordered = new ArrayList<>(accounts);
+    ordered.sort(LOCK_ORDER);
+    for (int i = ordered.size() - 1; i > 0; i--) {
+      if (ordered.get(i) == ordered.get(i - 1)) {
+        ordered.remove(i);
+      }
+    }
+    return ordered;
+  }
+}
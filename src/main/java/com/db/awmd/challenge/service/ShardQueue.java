@@ -0,0 +1,73 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer, single-consumer ring buffer. Every slot carries a sequence number telling
+ * producers whether it is free and the consumer whether it has been published, so neither side
+ * takes a lock.
+ */
+class ShardQueue<E> {
+
+  private final AtomicReferenceArray<E> slots;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private long head;
+
+  ShardQueue(int capacity) {
+    if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Shard queue capacity must be a power of two, was " + capacity);
+    }
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    this.mask = capacity - 1;
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Publishes the element, or returns false straight away if the ring is full.
+   */
+  boolean offer(E element) {
+    while (true) {
+      long position = tail.get();
+      int slot = (int) position & mask;
+      long difference = sequences.get(slot) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots.lazySet(slot, element);
+          sequences.set(slot, position + 1);
+          return true;
+        }
+      } else if (difference < 0) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Must only be called from the owning consumer thread.
+   */
+  boolean isEmpty() {
+    return sequences.get((int) head & mask) != head + 1;
+  }
+
+  /**
+   * Must only be called from the owning consumer thread.
+   */
+  E poll() {
+    int slot = (int) head & mask;
+    if (sequences.get(slot) != head + 1) {
+      return null;
+    }
+    E element = slots.get(slot);
+    slots.lazySet(slot, null);
+    sequences.lazySet(slot, head + mask + 1);
+    head++;
+    return element;
+  }
+}
@@ -0,0 +1,258 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer transfer execution. Accounts are partitioned into shards by account id hash and
+ * every shard is owned by one thread, which is the only thread that ever changes the balances of
+ * its accounts. Transfers therefore need no account locks.
+ *
+ * <p>Cross-shard protocol: a transfer is always submitted to the shard owning the sender. That
+ * shard checks the sender's balance and the receiver's headroom and debits the sender, then hands a
+ * credit command to the receiver's shard, which credits the receiver, journals the transfer and
+ * completes it. Credits travel through an unbounded inbox so a shard thread never blocks on another
+ * shard. The headroom seen by the sender's shard may be gone by the time the credit runs; a credit
+ * or journal write that fails is undone and the amount is refunded to the sender through its own
+ * shard's inbox, so nothing of a failed transfer is applied or journaled.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.mode", havingValue = "sharded")
+public class ShardedTransferExecutor {
+
+  private static final long SUBMIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final Shard[] shards;
+
+  private final AccountsRepository accountsRepository;
+
+  @Getter
+  private final long submitTimeoutMillis;
+
+  @Setter
+  @Autowired
+  private TransactionLedger transactionLedger = new TransactionLedger();
+
+  @Autowired
+  public ShardedTransferExecutor(AccountsRepository accountsRepository,
+                                 @Value("${transfer.shards:0}") int shardCount,
+                                 @Value("${transfer.shard-queue-capacity:1024}") int queueCapacity,
+                                 @Value("${transfer.lock-timeout:${server.connection-timeout}}") long submitTimeoutMillis) {
+    int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+    this.accountsRepository = accountsRepository;
+    this.submitTimeoutMillis = submitTimeoutMillis;
+    this.shards = new Shard[count];
+    for (int i = 0; i < count; i++) {
+      shards[i] = new Shard(i, queueCapacity);
+    }
+    for (Shard shard : shards) {
+      shard.thread.start();
+    }
+    log.info("Started {} transfer shards with queue capacity {}", count, queueCapacity);
+  }
+
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  int shardOf(String accountId) {
+    int hash = accountId.hashCode();
+    return ((hash ^ (hash >>> 16)) & 0x7fffffff) % shards.length;
+  }
+
+  /**
+   * Hands the transfer to the sender's shard. The returned future completes with the journal
+   * position of the transfer once the receiver has been credited, or exceptionally with
+   * {@link InsufficientBalanceException}, {@link InvalidBalanceException} if the receiver cannot
+   * hold the amount, or whatever else failed. Submission waits for ring capacity for at most the
+   * submit timeout.
+   */
+  public CompletableFuture<Long> submit(SyncAccount fromAccount, SyncAccount toAccount, BigDecimal amount)
+          throws TransferLockTimeoutException {
+    TransferCommand command = new TransferCommand(fromAccount, toAccount, amount);
+    Shard shard = shards[shardOf(fromAccount.getAccountId())];
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(submitTimeoutMillis);
+    while (!shard.transfers.offer(command)) {
+      if (System.nanoTime() - deadline >= 0) {
+        throw new TransferLockTimeoutException("Transfer shard " + shard.index + " is full, transfer not performed");
+      }
+      LockSupport.parkNanos(SUBMIT_PARK_NANOS);
+    }
+    shard.wakeUp();
+    return command.completion;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    for (Shard shard : shards) {
+      shard.running = false;
+      LockSupport.unpark(shard.thread);
+    }
+  }
+
+  private static final class TransferCommand {
+    private final SyncAccount fromAccount;
+    private final SyncAccount toAccount;
+    private final BigDecimal amount;
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+    private RuntimeException failure;
+
+    private TransferCommand(SyncAccount fromAccount, SyncAccount toAccount, BigDecimal amount) {
+      this.fromAccount = fromAccount;
+      this.toAccount = toAccount;
+      this.amount = amount;
+    }
+  }
+
+  private final class Shard implements Runnable {
+    private final int index;
+    private final ShardQueue<TransferCommand> transfers;
+    private final Queue<TransferCommand> credits = new ConcurrentLinkedQueue<>();
+    private final Queue<TransferCommand> refunds = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean parked;
+    private volatile boolean running = true;
+
+    private Shard(int index, int queueCapacity) {
+      this.index = index;
+      this.transfers = new ShardQueue<>(queueCapacity);
+      this.thread = new Thread(this, "transfer-shard-" + index);
+      this.thread.setDaemon(true);
+    }
+
+    private void wakeUp() {
+      if (parked) {
+        LockSupport.unpark(thread);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        boolean worked = false;
+        TransferCommand command;
+        // Each step handles its own failures; the guards only keep the shard alive if that fails too
+        while ((command = refunds.poll()) != null) {
+          try {
+            refund(command);
+          } catch (RuntimeException e) {
+            abandon(command, e);
+          }
+          worked = true;
+        }
+        while ((command = credits.poll()) != null) {
+          try {
+            credit(command);
+          } catch (RuntimeException e) {
+            abandon(command, e);
+          }
+          worked = true;
+        }
+        while ((command = transfers.poll()) != null) {
+          try {
+            debit(command);
+          } catch (RuntimeException e) {
+            abandon(command, e);
+          }
+          worked = true;
+        }
+        if (!worked) {
+          parked = true;
+          if (refunds.isEmpty() && credits.isEmpty() && transfers.isEmpty()) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+          }
+          parked = false;
+        }
+      }
+    }
+
+    private void debit(TransferCommand command) {
+      SyncAccount fromAccount = command.fromAccount;
+      try {
+        if (!command.toAccount.canAdjustBalance(command.amount)) {
+          command.completion.completeExceptionally(new InvalidBalanceException(
+                  AccountsService.balanceOutOfRangeMessage(command.toAccount, command.amount)));
+          return;
+        }
+        if (!fromAccount.tryDebit(command.amount)) {
+          command.completion.completeExceptionally(InsufficientBalanceException.forAccount(fromAccount.getAccountId()));
+          return;
+        }
+      } catch (RuntimeException e) {
+        command.completion.completeExceptionally(e);
+        return;
+      }
+      Shard receiverShard = shards[shardOf(command.toAccount.getAccountId())];
+      if (receiverShard == this) {
+        credit(command);
+      } else {
+        receiverShard.credits.offer(command);
+        receiverShard.wakeUp();
+      }
+    }
+
+    /**
+     * Journaled by the receiver's single writer once the credit is applied, so before the receiver
+     * can spend it; debits the sender made meanwhile may be journaled first, which on replay only
+     * leaves the sender's balance higher for a while.
+     */
+    private void credit(TransferCommand command) {
+      boolean credited = false;
+      try {
+        command.toAccount.credit(command.amount);
+        credited = true;
+        transactionLedger.recordTransfer(command.fromAccount.getAccountId(), command.toAccount.getAccountId(), command.amount);
+        long journalPosition = accountsRepository.logTransfer(command.fromAccount.getAccountId(),
+                command.toAccount.getAccountId(), command.amount);
+        command.completion.complete(journalPosition);
+      } catch (RuntimeException e) {
+        if (credited) {
+          command.toAccount.adjustBalance(command.amount.negate());
+        }
+        command.failure = e;
+        Shard senderShard = shards[shardOf(command.fromAccount.getAccountId())];
+        if (senderShard == this) {
+          refund(command);
+        } else {
+          senderShard.refunds.offer(command);
+          senderShard.wakeUp();
+        }
+      }
+    }
+
+    private void abandon(TransferCommand command, RuntimeException e) {
+      log.error("Transfer of {} from account id {} to account id {} failed on shard {}", command.amount,
+              command.fromAccount.getAccountId(), command.toAccount.getAccountId(), index, e);
+      command.completion.completeExceptionally(e);
+    }
+
+    private void refund(TransferCommand command) {
+      try {
+        command.fromAccount.credit(command.amount);
+      } catch (RuntimeException e) {
+        log.error("Could not refund {} to account id {} after a failed transfer", command.amount,
+                command.fromAccount.getAccountId(), e);
+      }
+      command.completion.completeExceptionally(command.failure);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.db.awmd.challenge.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel. A timer due in {@code n} ticks goes to bucket {@code (now + n) mod buckets}
+ * with {@code (n - 1) / buckets} more turns of the wheel to wait, so arming a timer and expiring
+ * the timers of a tick take constant time whatever the number armed. Not thread safe: one thread
+ * arms timers and turns the wheel.
+ */
+class TimerWheel<E> {
+
+  private static final class Timer<E> {
+
+    private final E element;
+    private long rounds;
+    private Timer<E> next;
+
+    private Timer(E element, long rounds) {
+      this.element = element;
+      this.rounds = rounds;
+    }
+  }
+
+  private final Timer<E>[] buckets;
+  private final int mask;
+  private long tick;
+  private int armed;
+
+  @SuppressWarnings("unchecked")
+  TimerWheel(int buckets) {
+    if (buckets < 2 || Integer.bitCount(buckets) != 1) {
+      throw new IllegalArgumentException("Timer wheel size must be a power of two, was " + buckets);
+    }
+    this.buckets = (Timer<E>[]) new Timer<?>[buckets];
+    this.mask = buckets - 1;
+  }
+
+  /**
+   * Arms a timer for the element, due once the wheel has advanced {@code ticks} more times; values
+   * below one are taken as one.
+   */
+  void schedule(E element, long ticks) {
+    long delay = Math.max(1, ticks);
+    int bucket = (int) ((tick + delay) & mask);
+    Timer<E> timer = new Timer<>(element, (delay - 1) / buckets.length);
+    timer.next = buckets[bucket];
+    buckets[bucket] = timer;
+    armed++;
+  }
+
+  /**
+   * Advances the wheel by one tick, passing the element of every timer now due to {@code expired},
+   * which may arm new timers.
+   */
+  void advance(Consumer<? super E> expired) {
+    tick++;
+    int bucket = (int) (tick & mask);
+    Timer<E> timer = buckets[bucket];
+    buckets[bucket] = null;
+    while (timer != null) {
+      Timer<E> next = timer.next;
+      if (timer.rounds > 0) {
+        timer.rounds--;
+        timer.next = buckets[bucket];
+        buckets[bucket] = timer;
+      } else {
+        armed--;
+        expired.accept(timer.element);
+      }
+      timer = next;
+    }
+  }
+
+  boolean isEmpty() {
+    return armed == 0;
+  }
+
+  int size() {
+    return armed;
+  }
+}
@@ -0,0 +1,292 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.AccountTransaction;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.exception.InvalidCursorException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, append-only history of the balance changes made by transfers, indexed per account.
+ *
+ * <p>Every balance change is a posting numbered by a global sequence and kept in a ring of
+ * {@code capacity} postings. The ring is made of segments of primitive arrays, allocated on first
+ * use, holding six longs per posting: sequence, time, unscaled amount, account and counterparty
+ * indexes, the account's previous posting, and the amount scale with the posting's place in its
+ * transaction. There is no object per posting. An account's postings form a list linked backwards
+ * from its head, so the per-account index costs one id and one long per account. Once the ring is
+ * full the oldest postings are overwritten, and histories end where they were.
+ *
+ * <p>Postings are appended inside the critical section of the transfer, so an account's history is
+ * in the order its balance changed. An append takes one sequence reservation, plain ordered stores
+ * and an atomic swap of the account head per posting, and never blocks. The sequence word of a
+ * posting is cleared while the posting is written and set last, so a reader can tell a posting that
+ * is complete from one being written or overwritten.
+ */
+@Component
+public class TransactionLedger {
+
+  private static final int SEGMENT_BITS = 12;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+  private static final long MAX_CAPACITY = 1L << 30;
+
+  private static final int WORDS = 6;
+  private static final int SEQUENCE = 0;
+  private static final int TIME = 1;
+  private static final int AMOUNT = 2;
+  private static final int ACCOUNTS = 3;
+  private static final int PREVIOUS = 4;
+  /** Scale in the low byte, {@link #LARGE_AMOUNT} flag, offset from the transaction id in the high int */
+  private static final int META = 5;
+  /** Amount does not fit a long unscaled value and byte scale; it is kept in {@code largeAmounts} */
+  private static final long LARGE_AMOUNT = 1L << 8;
+
+  private static final int ACCOUNT_CHUNK_BITS = 14;
+  private static final int ACCOUNT_CHUNK_SIZE = 1 << ACCOUNT_CHUNK_BITS;
+  private static final int MAX_ACCOUNT_CHUNKS = 1 << 16;
+  private static final int NO_COUNTERPARTY = -1;
+
+  private final long capacity;
+  private final long mask;
+  private volatile State state;
+
+  public TransactionLedger() {
+    this(1 << 20);
+  }
+
+  /**
+   * @param capacity postings retained, rounded up to a power of two of at least one segment; 0
+   *                 disables the ledger
+   */
+  @Autowired
+  public TransactionLedger(@Value("${accounts.transactions.capacity:1048576}") long capacity) {
+    if (capacity < 0 || capacity > MAX_CAPACITY) {
+      throw new IllegalArgumentException("accounts.transactions.capacity must be between 0 and " + MAX_CAPACITY + ", was " + capacity);
+    }
+    this.capacity = capacity == 0 ? 0 : Math.max(SEGMENT_SIZE, Long.highestOneBit(capacity - 1) << 1);
+    this.mask = this.capacity - 1;
+    this.state = new State((int) (this.capacity >>> SEGMENT_BITS));
+  }
+
+  /**
+   * Records a debit of the sender and a credit of the receiver, each naming the other account.
+   */
+  public void recordTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+    if (capacity == 0) {
+      return;
+    }
+    State state = this.state;
+    int from = accountIndex(state, fromAccountId);
+    int to = accountIndex(state, toAccountId);
+    long transactionId = state.sequence.getAndAdd(2) + 1;
+    long time = System.currentTimeMillis();
+    append(state, transactionId, transactionId, time, from, to, amount, true);
+    append(state, transactionId + 1, transactionId, time, to, from, amount, false);
+  }
+
+  /**
+   * Records every leg of a multi-leg transfer as one transaction, debits first.
+   */
+  public void recordLegs(List<TransferLeg> debits, List<TransferLeg> credits) {
+    if (capacity == 0) {
+      return;
+    }
+    State state = this.state;
+    int[] accounts = new int[debits.size() + credits.size()];
+    for (int i = 0; i < accounts.length; i++) {
+      accounts[i] = accountIndex(state, leg(debits, credits, i).getAccountId());
+    }
+    long transactionId = state.sequence.getAndAdd(accounts.length) + 1;
+    long time = System.currentTimeMillis();
+    for (int i = 0; i < accounts.length; i++) {
+      append(state, transactionId + i, transactionId, time, accounts[i], NO_COUNTERPARTY,
+              leg(debits, credits, i).getAmount(), i < debits.size());
+    }
+  }
+
+  /**
+   * Adds up to {@code limit} postings of the account to {@code page}, newest first, starting at
+   * posting {@code from}, or at the newest one if {@code from} is 0. Returns the posting to start
+   * the next page at, or 0 if no older posting is retained.
+   *
+   * @throws InvalidCursorException if {@code from} is not a posting of the account
+   */
+  public long history(String accountId, long from, int limit, List<AccountTransaction> page) {
+    State state = this.state;
+    Integer index = state.accountIndexes.get(accountId);
+    if (from > state.sequence.get() || (from != 0 && index == null)) {
+      throw new InvalidCursorException("Invalid cursor " + Long.toString(from, Character.MAX_RADIX));
+    }
+    if (index == null) {
+      return 0;
+    }
+    long sequence = from != 0 ? from : state.accountChunks.get(index >>> ACCOUNT_CHUNK_BITS).heads.get(index & (ACCOUNT_CHUNK_SIZE - 1));
+    while (sequence != 0 && page.size() < limit) {
+      sequence = read(state, sequence, index, page);
+    }
+    return sequence == 0 || isOverwritten(state, sequence) ? 0 : sequence;
+  }
+
+  /**
+   * Must not run concurrently with appends.
+   */
+  public void clear() {
+    state = new State((int) (capacity >>> SEGMENT_BITS));
+  }
+
+  public Map<String, Object> getMetrics() {
+    State state = this.state;
+    long postings = state.sequence.get();
+    int segments = 0;
+    for (int i = 0; i < state.segments.length(); i++) {
+      if (state.segments.get(i) != null) {
+        segments++;
+      }
+    }
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("postings", postings);
+    metrics.put("retained", Math.min(postings, capacity));
+    metrics.put("capacity", capacity);
+    metrics.put("accounts", state.accountCount.get());
+    metrics.put("allocatedBytes", (long) segments * SEGMENT_SIZE * WORDS * Long.BYTES);
+    return metrics;
+  }
+
+  private static TransferLeg leg(List<TransferLeg> debits, List<TransferLeg> credits, int i) {
+    return i < debits.size() ? debits.get(i) : credits.get(i - debits.size());
+  }
+
+  /**
+   * Writes one posting; a debit is stored as the negated amount.
+   */
+  private void append(State state, long sequence, long transactionId, long time, int account, int counterparty,
+                      BigDecimal amount, boolean debit) {
+    AtomicLongArray segment = segment(state, sequence);
+    int base = (int) (sequence & (SEGMENT_SIZE - 1)) * WORDS;
+    long overwritten = segment.get(base + SEQUENCE);
+    if (overwritten != 0 && (segment.get(base + META) & LARGE_AMOUNT) != 0) {
+      state.largeAmounts.remove(overwritten);
+    }
+    segment.lazySet(base + SEQUENCE, 0);
+    long meta = (sequence - transactionId) << 32;
+    BigInteger unscaled = amount.unscaledValue();
+    if (amount.scale() == (byte) amount.scale() && unscaled.bitLength() < Long.SIZE) {
+      segment.lazySet(base + AMOUNT, debit ? -unscaled.longValue() : unscaled.longValue());
+      meta |= amount.scale() & 0xff;
+    } else {
+      state.largeAmounts.put(sequence, debit ? amount.negate() : amount);
+      meta |= LARGE_AMOUNT;
+    }
+    segment.lazySet(base + TIME, time);
+    segment.lazySet(base + ACCOUNTS, ((long) account << 32) | (counterparty & 0xffffffffL));
+    segment.lazySet(base + META, meta);
+    AccountChunk chunk = state.accountChunks.get(account >>> ACCOUNT_CHUNK_BITS);
+    segment.lazySet(base + PREVIOUS, chunk.heads.getAndSet(account & (ACCOUNT_CHUNK_SIZE - 1), sequence));
+    segment.lazySet(base + SEQUENCE, sequence);
+  }
+
+  /**
+   * Adds the posting to the page and returns the account's previous posting, or 0 if the posting
+   * has been overwritten. A posting that is still being written is waited for; its writer is inside
+   * a transfer's critical section and finishes shortly.
+   */
+  private long read(State state, long sequence, int index, List<AccountTransaction> page) {
+    while (true) {
+      if (isOverwritten(state, sequence)) {
+        return 0;
+      }
+      AtomicLongArray segment = state.segments.get((int) ((sequence & mask) >>> SEGMENT_BITS));
+      int base = (int) (sequence & (SEGMENT_SIZE - 1)) * WORDS;
+      if (segment == null || segment.get(base + SEQUENCE) != sequence) {
+        Thread.yield();
+        continue;
+      }
+      long time = segment.get(base + TIME);
+      long amount = segment.get(base + AMOUNT);
+      long accounts = segment.get(base + ACCOUNTS);
+      long previous = segment.get(base + PREVIOUS);
+      long meta = segment.get(base + META);
+      BigDecimal largeAmount = (meta & LARGE_AMOUNT) != 0 ? state.largeAmounts.get(sequence) : null;
+      if (segment.get(base + SEQUENCE) != sequence) {
+        continue;
+      }
+      if ((int) (accounts >>> 32) != index) {
+        throw new InvalidCursorException("Invalid cursor " + Long.toString(sequence, Character.MAX_RADIX));
+      }
+      int counterparty = (int) accounts;
+      page.add(new AccountTransaction(sequence, sequence - (meta >>> 32), time,
+              largeAmount != null ? largeAmount : BigDecimal.valueOf(amount, (byte) meta),
+              counterparty == NO_COUNTERPARTY ? null : accountId(state, counterparty)));
+      return previous;
+    }
+  }
+
+  private boolean isOverwritten(State state, long sequence) {
+    return sequence <= state.sequence.get() - capacity;
+  }
+
+  private AtomicLongArray segment(State state, long sequence) {
+    int index = (int) ((sequence & mask) >>> SEGMENT_BITS);
+    AtomicLongArray segment = state.segments.get(index);
+    if (segment == null) {
+      state.segments.compareAndSet(index, null, new AtomicLongArray(SEGMENT_SIZE * WORDS));
+      segment = state.segments.get(index);
+    }
+    return segment;
+  }
+
+  private static int accountIndex(State state, String accountId) {
+    Integer index = state.accountIndexes.get(accountId);
+    return index != null ? index : state.accountIndexes.computeIfAbsent(accountId, id -> register(state, id));
+  }
+
+  private static int register(State state, String accountId) {
+    int index = state.accountCount.getAndIncrement();
+    if (index >= MAX_ACCOUNT_CHUNKS * ACCOUNT_CHUNK_SIZE) {
+      throw new IllegalStateException("Transaction ledger account index is full");
+    }
+    int chunkIndex = index >>> ACCOUNT_CHUNK_BITS;
+    AccountChunk chunk = state.accountChunks.get(chunkIndex);
+    if (chunk == null) {
+      state.accountChunks.compareAndSet(chunkIndex, null, new AccountChunk());
+      chunk = state.accountChunks.get(chunkIndex);
+    }
+    chunk.ids.set(index & (ACCOUNT_CHUNK_SIZE - 1), accountId);
+    return index;
+  }
+
+  private static String accountId(State state, int index) {
+    return state.accountChunks.get(index >>> ACCOUNT_CHUNK_BITS).ids.get(index & (ACCOUNT_CHUNK_SIZE - 1));
+  }
+
+  private static final class State {
+    private final AtomicReferenceArray<AtomicLongArray> segments;
+    /** Last reserved sequence; sequences start at 1 so that 0 can mean none */
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Integer> accountIndexes = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<AccountChunk> accountChunks = new AtomicReferenceArray<>(MAX_ACCOUNT_CHUNKS);
+    private final AtomicInteger accountCount = new AtomicInteger();
+    private final Map<Long, BigDecimal> largeAmounts = new ConcurrentHashMap<>();
+
+    private State(int segments) {
+      this.segments = new AtomicReferenceArray<>(segments);
+    }
+  }
+
+  private static final class AccountChunk {
+    private final AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(ACCOUNT_CHUNK_SIZE);
+    private final AtomicLongArray heads = new AtomicLongArray(ACCOUNT_CHUNK_SIZE);
+  }
+}
@@ -0,0 +1,229 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.repository.AccountFactory;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded admission of single transfers, in front of {@link AccountsService}.
+ *
+ * <p>A transfer is admitted only while fewer than the global limit are in flight and fewer than
+ * {@code account-depth} are in flight on its sender and on its receiver. Anything beyond is turned
+ * away at once instead of queueing on account locks for up to the lock timeout, so a contended
+ * account cannot tie up every request thread. Per-account depths are counted in a fixed array of
+ * stripes indexed by account id hash: accounts sharing a stripe share its depth, which can only
+ * cause extra rejections. Receivers configured as hot accounts take credits without a lock and are
+ * not counted.
+ *
+ * <p>In {@link Mode#ADAPTIVE adaptive} mode the global limit follows latency. Every
+ * {@value #WINDOW_SAMPLES} completions the average latency of the window is compared with a
+ * baseline that tracks the lowest window averages and creeps up slowly to relearn after lasting
+ * changes. While latency stays within {@code tolerance} times the baseline the limit grows by a
+ * fifth of its square root per window; beyond that it shrinks in proportion to the excess, by up to
+ * a tenth per window.
+ *
+ * <p>A rejection is returned as a {@link Decision}, never thrown, so turning a request away costs a
+ * few atomic operations.
+ */
+@Component
+public class TransferAdmission {
+
+  public enum Mode { FIXED, ADAPTIVE }
+
+  public enum Decision {
+    ADMITTED,
+    /** The global in-flight limit is reached */
+    OVERLOADED,
+    /** The sender or receiver already has {@code account-depth} transfers in flight */
+    ACCOUNT_BUSY
+  }
+
+  static final int WINDOW_SAMPLES = 128;
+  private static final double SMOOTHING = 0.2;
+  private static final double MIN_GRADIENT = 0.5;
+  private static final double BASELINE_CREEP = 0.001;
+
+  @Getter
+  private final Mode mode;
+  private final int minInFlight;
+  private final int maxInFlight;
+  private final int accountDepth;
+  private final int stripeMask;
+  private final double tolerance;
+  @Getter
+  private final long retryAfterSeconds;
+  private final AccountFactory accountFactory;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicIntegerArray accountDepths;
+  private volatile int limit;
+  /** Unrounded limit, so that increments smaller than one accumulate */
+  private double estimatedLimit;
+
+  private final AtomicLong windowSamples = new AtomicLong();
+  private final AtomicLong windowNanos = new AtomicLong();
+  private final AtomicBoolean adjusting = new AtomicBoolean();
+  private double baselineNanos;
+  private volatile double lastWindowNanos;
+
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder overloaded = new LongAdder();
+  private final LongAdder accountBusy = new LongAdder();
+
+  @Autowired
+  public TransferAdmission(AccountFactory accountFactory,
+                           @Value("${transfer.admission.mode:FIXED}") Mode mode,
+                           @Value("${transfer.admission.min-in-flight:8}") int minInFlight,
+                           @Value("${transfer.admission.max-in-flight:256}") int maxInFlight,
+                           @Value("${transfer.admission.account-depth:32}") int accountDepth,
+                           @Value("${transfer.admission.account-stripes:4096}") int accountStripes,
+                           @Value("${transfer.admission.tolerance:2.0}") double tolerance,
+                           @Value("${transfer.admission.retry-after:1}") long retryAfterSeconds) {
+    if (Integer.bitCount(accountStripes) != 1) {
+      throw new IllegalArgumentException("transfer.admission.account-stripes must be a power of two, was " + accountStripes);
+    }
+    if (minInFlight < 1 || minInFlight > maxInFlight) {
+      throw new IllegalArgumentException("transfer.admission.min-in-flight must be between 1 and max-in-flight, was " + minInFlight);
+    }
+    this.accountFactory = accountFactory;
+    this.mode = mode;
+    this.minInFlight = minInFlight;
+    this.maxInFlight = maxInFlight;
+    this.accountDepth = accountDepth;
+    this.stripeMask = accountStripes - 1;
+    this.tolerance = tolerance;
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.accountDepths = new AtomicIntegerArray(accountStripes);
+    this.limit = mode == Mode.ADAPTIVE ? minInFlight : maxInFlight;
+    this.estimatedLimit = limit;
+  }
+
+  /**
+   * Admits the transfer, or returns why not. An admitted transfer must be ended with
+   * {@link #release}.
+   */
+  public Decision tryAdmit(String fromAccountId, String toAccountId) {
+    if (inFlight.incrementAndGet() > limit) {
+      inFlight.decrementAndGet();
+      overloaded.increment();
+      return Decision.OVERLOADED;
+    }
+    int fromStripe = stripe(fromAccountId);
+    if (accountDepths.incrementAndGet(fromStripe) > accountDepth) {
+      accountDepths.decrementAndGet(fromStripe);
+      inFlight.decrementAndGet();
+      accountBusy.increment();
+      return Decision.ACCOUNT_BUSY;
+    }
+    int toStripe = countedStripe(toAccountId, fromStripe);
+    if (toStripe >= 0 && accountDepths.incrementAndGet(toStripe) > accountDepth) {
+      accountDepths.decrementAndGet(toStripe);
+      accountDepths.decrementAndGet(fromStripe);
+      inFlight.decrementAndGet();
+      accountBusy.increment();
+      return Decision.ACCOUNT_BUSY;
+    }
+    admitted.increment();
+    return Decision.ADMITTED;
+  }
+
+  /**
+   * Ends an admitted transfer, whatever its outcome. {@code startNanos} is the {@link System#nanoTime()}
+   * the request started at; in adaptive mode the time since is a latency sample.
+   */
+  public void release(String fromAccountId, String toAccountId, long startNanos) {
+    int fromStripe = stripe(fromAccountId);
+    int toStripe = countedStripe(toAccountId, fromStripe);
+    if (toStripe >= 0) {
+      accountDepths.decrementAndGet(toStripe);
+    }
+    accountDepths.decrementAndGet(fromStripe);
+    inFlight.decrementAndGet();
+    if (mode == Mode.ADAPTIVE) {
+      windowNanos.addAndGet(System.nanoTime() - startNanos);
+      if (windowSamples.incrementAndGet() >= WINDOW_SAMPLES) {
+        adjustLimit();
+      }
+    }
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public Map<String, Object> getMetrics() {
+    int deepest = 0;
+    for (int i = 0; i < accountDepths.length(); i++) {
+      deepest = Math.max(deepest, accountDepths.get(i));
+    }
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("mode", mode);
+    metrics.put("limit", limit);
+    metrics.put("inFlight", inFlight.get());
+    metrics.put("accountDepthLimit", accountDepth);
+    metrics.put("deepestAccountDepth", deepest);
+    metrics.put("admitted", admitted.sum());
+    metrics.put("rejectedOverloaded", overloaded.sum());
+    metrics.put("rejectedAccountBusy", accountBusy.sum());
+    if (mode == Mode.ADAPTIVE) {
+      metrics.put("baselineLatencyMicros", TimeUnit.NANOSECONDS.toMicros((long) baselineNanos));
+      metrics.put("windowLatencyMicros", TimeUnit.NANOSECONDS.toMicros((long) lastWindowNanos));
+    }
+    return metrics;
+  }
+
+  /**
+   * Closes the latency window, by one completing thread at a time; samples landing while it runs
+   * count towards the next window.
+   */
+  private void adjustLimit() {
+    if (!adjusting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long samples = windowSamples.getAndSet(0);
+      if (samples < WINDOW_SAMPLES) {
+        return; // closed by another thread in the meantime
+      }
+      double average = (double) windowNanos.getAndSet(0) / samples;
+      lastWindowNanos = average;
+      baselineNanos = baselineNanos == 0 || average < baselineNanos ? average
+              : baselineNanos + (average - baselineNanos) * BASELINE_CREEP;
+      double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * baselineNanos / average));
+      double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+      double smoothed = estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING;
+      estimatedLimit = Math.max(minInFlight, Math.min(maxInFlight, smoothed));
+      limit = (int) estimatedLimit;
+    } finally {
+      adjusting.set(false);
+    }
+  }
+
+  private int stripe(String accountId) {
+    int hash = accountId.hashCode() * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & stripeMask;
+  }
+
+  /**
+   * Stripe counted for the receiver, or -1 if it is not counted: hot receivers are not locked, and
+   * a receiver sharing the sender's stripe is already counted.
+   */
+  private int countedStripe(String toAccountId, int fromStripe) {
+    if (accountFactory.isHot(toAccountId)) {
+      return -1;
+    }
+    int toStripe = stripe(toAccountId);
+    return toStripe == fromStripe ? -1 : toStripe;
+  }
+}
@@ -0,0 +1,211 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.BatchTransferMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FixedPointAccount;
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Working state of one batch of transfers. The transfers are validated and resolved up front, then
+ * checked in order against running balances while every touched account is locked, and finally
+ * collapsed into a single net balance change per account.
+ */
+class TransferBatch {
+
+  private final List<TransferRequestDetails> transfers;
+  private final BatchTransferMode mode;
+  private final TransferStatus[] statuses;
+  private final String[] messages;
+  private final SyncAccount[] fromAccounts;
+  private final SyncAccount[] toAccounts;
+  private final Map<String, SyncAccount> accounts = new HashMap<>();
+
+  TransferBatch(List<TransferRequestDetails> transfers, BatchTransferMode mode) {
+    this.transfers = transfers;
+    this.mode = mode;
+    this.statuses = new TransferStatus[transfers.size()];
+    this.messages = new String[transfers.size()];
+    this.fromAccounts = new SyncAccount[transfers.size()];
+    this.toAccounts = new SyncAccount[transfers.size()];
+  }
+
+  /**
+   * Validates every transfer and looks up each distinct account once. Transfers that fail here are
+   * given their final status; the others stay pending.
+   */
+  void resolve(AccountsRepository accountsRepository) {
+    for (int i = 0; i < transfers.size(); i++) {
+      TransferRequestDetails transfer = transfers.get(i);
+      String violation = validate(transfer);
+      if (violation != null) {
+        fail(i, TransferStatus.INVALID_REQUEST, violation);
+        continue;
+      }
+      try {
+        fromAccounts[i] = lookup(accountsRepository, transfer.getFromAccountId());
+        toAccounts[i] = lookup(accountsRepository, transfer.getToAccountId());
+      } catch (AccountDoesNotExistsException e) {
+        fail(i, TransferStatus.ACCOUNT_NOT_FOUND, e.getMessage());
+        continue;
+      }
+      for (SyncAccount account : new SyncAccount[]{fromAccounts[i], toAccounts[i]}) {
+        if (account instanceof FixedPointAccount && !fitsFixedPoint((FixedPointAccount) account, transfer.getAmount())) {
+          fail(i, TransferStatus.INVALID_REQUEST, "Invalid amount to be transferred: " + transfer.getAmount()
+                  + " has more than " + ((FixedPointAccount) account).getScale() + " decimal places or is out of range");
+          break;
+        }
+      }
+    }
+    abortIfAnyFailed();
+  }
+
+  Collection<SyncAccount> touchedAccounts() {
+    List<SyncAccount> touched = new ArrayList<>();
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] == null) {
+        touched.add(fromAccounts[i]);
+        touched.add(toAccounts[i]);
+      }
+    }
+    return touched;
+  }
+
+  List<TransferRequestDetails> getTransfers() {
+    return transfers;
+  }
+
+  SyncAccount fromAccount(int index) {
+    return fromAccounts[index];
+  }
+
+  SyncAccount toAccount(int index) {
+    return toAccounts[index];
+  }
+
+  boolean isPending(int index) {
+    return statuses[index] == null;
+  }
+
+  boolean isCompleted(int index) {
+    return statuses[index] == TransferStatus.COMPLETED;
+  }
+
+  void failPending(TransferStatus status, String message) {
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] == null) {
+        fail(i, status, message);
+      }
+    }
+  }
+
+  void fail(int index, TransferStatus status, String message) {
+    statuses[index] = status;
+    messages[index] = message;
+  }
+
+  void complete(int index) {
+    statuses[index] = TransferStatus.COMPLETED;
+  }
+
+  /**
+   * Checks the pending transfers in order against the running balances, senders for cover and
+   * receivers for range, and returns the net change per account, which can then be applied without
+   * failing part way. Must be called while all touched accounts are locked. Returns an empty map when an
+   * all-or-nothing batch has to be aborted.
+   */
+  Map<SyncAccount, BigDecimal> net() {
+    Map<SyncAccount, BigDecimal> netChanges = new IdentityHashMap<>();
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] != null) {
+        continue;
+      }
+      SyncAccount fromAccount = fromAccounts[i];
+      BigDecimal amount = transfers.get(i).getAmount();
+      BigDecimal available = fromAccount.getBalance().add(netChanges.getOrDefault(fromAccount, BigDecimal.ZERO));
+      BigDecimal received = netChanges.getOrDefault(toAccounts[i], BigDecimal.ZERO).add(amount);
+      if (!toAccounts[i].canAdjustBalance(received)) {
+        fail(i, TransferStatus.INVALID_REQUEST, AccountsService.balanceOutOfRangeMessage(toAccounts[i], amount));
+      } else if (available.compareTo(amount) >= 0) {
+        netChanges.merge(fromAccount, amount.negate(), BigDecimal::add);
+        netChanges.merge(toAccounts[i], amount, BigDecimal::add);
+        complete(i);
+      } else {
+        fail(i, TransferStatus.INSUFFICIENT_BALANCE, InsufficientBalanceException.message(fromAccount.getAccountId()));
+      }
+    }
+    if (abortIfAnyFailed()) {
+      netChanges.clear();
+    }
+    netChanges.values().removeIf(change -> change.signum() == 0);
+    return netChanges;
+  }
+
+  BatchTransferResult result() {
+    List<TransferResult> results = new ArrayList<>(statuses.length);
+    int completed = 0;
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] == TransferStatus.COMPLETED) {
+        completed++;
+      }
+      results.add(new TransferResult(i, statuses[i], messages[i]));
+    }
+    return new BatchTransferResult(mode, completed, statuses.length - completed, results);
+  }
+
+  private boolean abortIfAnyFailed() {
+    if (mode != BatchTransferMode.ALL_OR_NOTHING) {
+      return false;
+    }
+    boolean anyFailed = false;
+    for (TransferStatus status : statuses) {
+      if (status != null && status != TransferStatus.COMPLETED && status != TransferStatus.ABORTED) {
+        anyFailed = true;
+        break;
+      }
+    }
+    if (anyFailed) {
+      for (int i = 0; i < statuses.length; i++) {
+        if (statuses[i] == null || statuses[i] == TransferStatus.COMPLETED) {
+          fail(i, TransferStatus.ABORTED, "Not applied because another transfer of the batch failed");
+        }
+      }
+    }
+    return anyFailed;
+  }
+
+  private SyncAccount lookup(AccountsRepository accountsRepository, String accountId) throws AccountDoesNotExistsException {
+    SyncAccount account = accounts.get(accountId);
+    if (account == null) {
+      account = (SyncAccount) accountsRepository.getAccount(accountId);
+      accounts.put(accountId, account);
+    }
+    return account;
+  }
+
+  private static boolean fitsFixedPoint(FixedPointAccount account, BigDecimal amount) {
+    try {
+      account.toMinorUnits(amount);
+      return true;
+    } catch (ArithmeticException e) {
+      return false;
+    }
+  }
+
+  private static String validate(TransferRequestDetails transfer) {
+    return transfer == null ? "Transfer cannot be null" : transfer.validate();
+  }
+}
@@ -0,0 +1,144 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage latency and outcome counters for single transfers.
+ *
+ * <p>Stages are recorded as {@code start = metrics.record(stage, start)}: the call stores the time
+ * since {@code start} and returns the current time, which starts the next stage. Nothing on the
+ * recording path allocates. The HTTP stage covers the whole request including JSON binding, the
+ * handler stage only the controller method, so their difference is the web and JSON overhead.
+ */
+@Component
+public class TransferMetrics {
+
+  public enum Stage {
+    /** Whole PUT /v1/accounts/transfer request, including JSON binding and response writing */
+    HTTP,
+    /** Controller method, excluding JSON binding */
+    HANDLER,
+    /** AccountsService.transferMoney */
+    SERVICE,
+    /** Repository lookups of both accounts */
+    LOOKUP,
+    /** Acquiring the account locks */
+    LOCK_WAIT,
+    /** Balance update and journal append under the locks */
+    EXECUTE,
+    /** Waiting for the journal to make the transfer durable */
+    DURABILITY,
+    /** Handing the notifications to the dispatcher */
+    NOTIFY
+  }
+
+  public enum Outcome { COMPLETED, INSUFFICIENT_BALANCE, ACCOUNT_NOT_FOUND, LOCK_TIMEOUT, FAILED }
+
+  private final LatencyRecorder[] stages = new LatencyRecorder[Stage.values().length];
+  private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+  private final LongAdder lockWaitNanos = new LongAdder();
+  private final LongAdder completedFirstAttempt = new LongAdder();
+  private final LongAdder completedAfterRetry = new LongAdder();
+
+  public TransferMetrics() {
+    for (int i = 0; i < stages.length; i++) {
+      stages[i] = new LatencyRecorder();
+    }
+    for (int i = 0; i < outcomes.length; i++) {
+      outcomes[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records the time since {@code startNanos} for the stage and returns the current
+   * {@link System#nanoTime()}.
+   */
+  public long record(Stage stage, long startNanos) {
+    long now = System.nanoTime();
+    long elapsed = now - startNanos;
+    stages[stage.ordinal()].record(elapsed);
+    if (stage == Stage.LOCK_WAIT) {
+      lockWaitNanos.add(elapsed);
+    }
+    return now;
+  }
+
+  public void count(Outcome outcome) {
+    outcomes[outcome.ordinal()].increment();
+  }
+
+  /**
+   * Counts a completed transfer by whether it was applied on its first attempt or needed retries
+   * after finding its account locks busy.
+   */
+  public void countCompletion(boolean retried) {
+    (retried ? completedAfterRetry : completedFirstAttempt).increment();
+  }
+
+  /**
+   * Counts the outcome of a transfer that failed with {@code failure}, or completed if it is null.
+   */
+  public void countFailure(Throwable failure) {
+    if (failure == null) {
+      count(Outcome.COMPLETED);
+    } else if (failure instanceof InsufficientBalanceException) {
+      count(Outcome.INSUFFICIENT_BALANCE);
+    } else if (failure instanceof AccountDoesNotExistsException) {
+      count(Outcome.ACCOUNT_NOT_FOUND);
+    } else if (failure instanceof TransferLockTimeoutException) {
+      count(Outcome.LOCK_TIMEOUT);
+    } else {
+      count(Outcome.FAILED);
+    }
+  }
+
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    Map<String, Object> latencies = new LinkedHashMap<>();
+    for (Stage stage : Stage.values()) {
+      latencies.put(name(stage), stages[stage.ordinal()].snapshot());
+    }
+    metrics.put("latency", latencies);
+
+    long attempts = 0;
+    for (LongAdder outcome : outcomes) {
+      attempts += outcome.sum();
+    }
+    Map<String, Object> counts = new LinkedHashMap<>();
+    for (Outcome outcome : Outcome.values()) {
+      long count = outcomes[outcome.ordinal()].sum();
+      counts.put(name(outcome), count);
+      counts.put(name(outcome) + "Rate", attempts == 0 ? 0.0 : (double) count / attempts);
+    }
+    metrics.put("outcomes", counts);
+    Map<String, Object> completions = new LinkedHashMap<>();
+    completions.put("firstAttempt", completedFirstAttempt.sum());
+    completions.put("afterRetry", completedAfterRetry.sum());
+    metrics.put("completions", completions);
+    metrics.put("lockWaitTotalMillis", TimeUnit.NANOSECONDS.toMillis(lockWaitNanos.sum()));
+    return metrics;
+  }
+
+  private static String name(Enum<?> value) {
+    StringBuilder name = new StringBuilder();
+    boolean upper = false;
+    for (char c : value.name().toLowerCase(Locale.ROOT).toCharArray()) {
+      if (c == '_') {
+        upper = true;
+      } else {
+        name.append(upper ? Character.toUpperCase(c) : c);
+        upper = false;
+      }
+    }
+    return name.toString();
+  }
+}
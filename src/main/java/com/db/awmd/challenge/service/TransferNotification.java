@@ -0,0 +1,41 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.math.BigDecimal;
+
+/**
+ * A notification waiting in the async pipeline. It keeps only references, the description text is
+ * rendered by the dispatcher thread so the transfer path never builds it.
+ */
+final class TransferNotification {
+
+  enum Kind { DEBIT, CREDIT, BATCH_NET, MULTI_LEG_NET }
+
+  final NotificationService target;
+  final Account account;
+  final Kind kind;
+  final String counterpartyId;
+  final BigDecimal amount;
+
+  TransferNotification(NotificationService target, Account account, Kind kind, String counterpartyId, BigDecimal amount) {
+    this.target = target;
+    this.account = account;
+    this.kind = kind;
+    this.counterpartyId = counterpartyId;
+    this.amount = amount;
+  }
+
+  String describe() {
+    switch (kind) {
+      case DEBIT:
+        return "Amount Debited: " + amount + ". You have successfully transferred amount: " + amount + " to AccountID: " + counterpartyId;
+      case CREDIT:
+        return "Amount Credited: " + amount + ". You have received amount: " + amount + " from AccountID: " + counterpartyId;
+      case MULTI_LEG_NET:
+        return "Multi-leg transfer applied. Net balance change: " + amount;
+      default:
+        return "Batch transfer applied. Net balance change: " + amount;
+    }
+  }
+}
@@ -0,0 +1,362 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.domain.TransferTicket;
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.IdempotencyKeyConflictException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Retries in the background the single transfers whose first attempt timed out on account locks,
+ * so the client gets a transfer id to poll instead of a failure it has to retry itself.
+ *
+ * <p>Retries are queued per account pair in the order they were accepted, and only the head of a
+ * pair is attempted: retries of one pair never compete with each other for the same locks and are
+ * applied in order. An attempt uses {@link AccountsService#tryTransferMoney}, which does not wait
+ * for locks. While the locks are busy the attempt is rescheduled after a backoff doubling from
+ * {@code base-backoff} to {@code max-backoff}, with equal jitter so that pairs which timed out
+ * together do not retry together, until {@code max-attempts} attempts in all have been made.
+ *
+ * <p>Backoffs are kept in a {@link TimerWheel} of {@code wheel-size} buckets of {@code tick} ms,
+ * turned by one thread that parks while no retry is waiting. Attempts run on {@code threads}
+ * workers, since in locking mode an attempt waits for the journal. The state of the last
+ * {@code retained} finished retries can still be looked up.
+ */
+@Slf4j
+@Component
+public class TransferRetryScheduler {
+
+  private static final class Retry {
+
+    private final String transferId;
+    private final TransferRequestDetails transferRequestDetails;
+    private volatile int attempts = 1;
+    private volatile String message;
+    private volatile TransferStatus status = TransferStatus.PENDING;
+
+    private Retry(String transferId, TransferRequestDetails transferRequestDetails) {
+      this.transferId = transferId;
+      this.transferRequestDetails = transferRequestDetails;
+    }
+
+    private TransferTicket ticket() {
+      TransferStatus current = status;
+      return new TransferTicket(transferId, current, attempts, message);
+    }
+  }
+
+  /**
+   * Retries of one account pair, oldest first; guarded by {@link #pairs}.
+   */
+  private static final class Pair {
+
+    private final String key;
+    private final ArrayDeque<Retry> retries = new ArrayDeque<>();
+    private long delayNanos;
+
+    private Pair(String key) {
+      this.key = key;
+    }
+  }
+
+  private final AccountsService accountsService;
+  private final IdempotencyStore idempotencyStore;
+  private final TransferMetrics transferMetrics;
+  private final int maxAttempts;
+  private final long tickNanos;
+  private final long baseBackoffNanos;
+  private final long maxBackoffNanos;
+  private final int maxPending;
+  private final int retained;
+
+  private final String idPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+  private final AtomicLong sequence = new AtomicLong();
+  private final Map<String, Retry> retries = new ConcurrentHashMap<>();
+  private final Queue<String> finished = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger finishedCount = new AtomicInteger();
+  private final AtomicInteger pending = new AtomicInteger();
+  private final Map<String, Pair> pairs = new HashMap<>();
+  private final Queue<Pair> arming = new ConcurrentLinkedQueue<>();
+  private final TimerWheel<Pair> wheel;
+  private final ExecutorService workers;
+  private final Thread ticker;
+  private volatile boolean running = true;
+
+  private final LongAdder scheduled = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder attempts = new LongAdder();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder timedOut = new LongAdder();
+
+  @Autowired
+  public TransferRetryScheduler(AccountsService accountsService, IdempotencyStore idempotencyStore,
+                                TransferMetrics transferMetrics,
+                                @Value("${transfer.retry.max-attempts:8}") int maxAttempts,
+                                @Value("${transfer.retry.tick:1}") long tickMillis,
+                                @Value("${transfer.retry.wheel-size:512}") int wheelSize,
+                                @Value("${transfer.retry.base-backoff:2}") long baseBackoffMillis,
+                                @Value("${transfer.retry.max-backoff:200}") long maxBackoffMillis,
+                                @Value("${transfer.retry.max-pending:10000}") int maxPending,
+                                @Value("${transfer.retry.retained:100000}") int retained,
+                                @Value("${transfer.retry.threads:2}") int threads) {
+    if (tickMillis < 1) {
+      throw new IllegalArgumentException("transfer.retry.tick must be at least 1 ms, was " + tickMillis);
+    }
+    this.accountsService = accountsService;
+    this.idempotencyStore = idempotencyStore;
+    this.transferMetrics = transferMetrics;
+    this.maxAttempts = maxAttempts;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.baseBackoffNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(tickMillis, baseBackoffMillis));
+    this.maxBackoffNanos = Math.max(baseBackoffNanos, TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis));
+    this.maxPending = maxPending;
+    this.retained = retained;
+    this.wheel = new TimerWheel<>(wheelSize);
+    AtomicInteger workerCount = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+      Thread thread = new Thread(runnable, "transfer-retry-" + workerCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.ticker = new Thread(this::turn, "transfer-retry-wheel");
+    this.ticker.setDaemon(true);
+    this.ticker.start();
+  }
+
+  /**
+   * Accepts for retry a transfer whose attempt just timed out on account locks. Returns its ticket,
+   * or null if retries are disabled or {@code max-pending} retries are already waiting, in which
+   * case the timeout stands. A transfer with an idempotency key claims the key again for the
+   * retry; if a request with the same key finished in the meantime, the ticket carries its outcome.
+   *
+   * @throws IdempotencyKeyConflictException as {@link IdempotencyStore#claim} does
+   */
+  public TransferTicket schedule(TransferRequestDetails transferRequestDetails) {
+    if (maxAttempts <= 1) {
+      return null;
+    }
+    if (pending.incrementAndGet() > maxPending) {
+      pending.decrementAndGet();
+      rejected.increment();
+      return null;
+    }
+    Retry retry = new Retry(idPrefix + sequence.incrementAndGet(), transferRequestDetails);
+    retries.put(retry.transferId, retry);
+    scheduled.increment();
+    String key = transferRequestDetails.getIdempotencyKey();
+    if (key != null) {
+      IdempotencyStore.Outcome previous;
+      try {
+        previous = idempotencyStore.claim(key, transferRequestDetails);
+      } catch (RuntimeException e) {
+        retries.remove(retry.transferId);
+        pending.decrementAndGet();
+        throw e;
+      }
+      if (previous != null) {
+        retry.message = previous.getMessage();
+        retry.status = previous.getStatus();
+        end(retry, previous.getStatus() == TransferStatus.COMPLETED ? completed : failed);
+        return retry.ticket();
+      }
+    }
+
+    String from = transferRequestDetails.getFromAccountId();
+    String to = transferRequestDetails.getToAccountId();
+    String pairKey = from.compareTo(to) < 0 ? from + '\n' + to : to + '\n' + from;
+    Pair pair;
+    boolean first;
+    synchronized (pairs) {
+      pair = pairs.computeIfAbsent(pairKey, Pair::new);
+      first = pair.retries.isEmpty();
+      pair.retries.add(retry);
+    }
+    if (first) {
+      arm(pair, backoff(retry.attempts));
+    }
+    return retry.ticket();
+  }
+
+  /**
+   * Current state of a retried transfer, or null if the id is unknown or its state no longer
+   * retained.
+   */
+  public TransferTicket getTicket(String transferId) {
+    Retry retry = retries.get(transferId);
+    return retry == null ? null : retry.ticket();
+  }
+
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("scheduled", scheduled.sum());
+    metrics.put("pending", pending.get());
+    metrics.put("completed", completed.sum());
+    metrics.put("failed", failed.sum());
+    metrics.put("timedOut", timedOut.sum());
+    metrics.put("attempts", attempts.sum());
+    metrics.put("rejected", rejected.sum());
+    return metrics;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    running = false;
+    LockSupport.unpark(ticker);
+    workers.shutdownNow();
+  }
+
+  /**
+   * Turns the wheel one tick at a time, arming the timers handed over since the last tick, and
+   * parks while none is armed.
+   */
+  private void turn() {
+    long next = System.nanoTime();
+    while (running) {
+      Pair pair;
+      while ((pair = arming.poll()) != null) {
+        wheel.schedule(pair, (pair.delayNanos + tickNanos - 1) / tickNanos);
+      }
+      if (wheel.isEmpty()) {
+        LockSupport.park(this);
+        next = System.nanoTime();
+        continue;
+      }
+      long wait = next + tickNanos - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(this, wait);
+        continue; // arms whatever was handed over meanwhile, then checks the time again
+      }
+      next += tickNanos;
+      try {
+        wheel.advance(due -> workers.execute(() -> attempt(due)));
+      } catch (RuntimeException e) {
+        log.error("Could not start transfer retries", e);
+      }
+    }
+  }
+
+  private void arm(Pair pair, long delayNanos) {
+    pair.delayNanos = delayNanos;
+    arming.add(pair);
+    LockSupport.unpark(ticker);
+  }
+
+  /**
+   * Equal jitter: half the doubled backoff, plus a random share of the other half.
+   */
+  private long backoff(int attempt) {
+    long backoff = baseBackoffNanos << Math.min(attempt - 1, 20);
+    backoff = Math.min(backoff, maxBackoffNanos);
+    return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+  }
+
+  private void attempt(Pair pair) {
+    Retry retry;
+    synchronized (pairs) {
+      retry = pair.retries.peek();
+    }
+    retry.attempts++;
+    attempts.increment();
+    CompletableFuture<Void> applied;
+    try {
+      applied = accountsService.tryTransferMoney(retry.transferRequestDetails, workers);
+    } catch (Exception e) {
+      finish(pair, retry, e);
+      return;
+    }
+    if (applied != null) {
+      applied.whenComplete((ignored, failure) ->
+              finish(pair, retry, failure instanceof CompletionException ? failure.getCause() : failure));
+    } else if (retry.attempts >= maxAttempts) {
+      finish(pair, retry, new TransferLockTimeoutException("Could not lock accounts "
+              + retry.transferRequestDetails.getFromAccountId() + " and " + retry.transferRequestDetails.getToAccountId()
+              + " in " + retry.attempts + " attempts, transfer not performed"));
+    } else {
+      arm(pair, backoff(retry.attempts));
+    }
+  }
+
+  /**
+   * Records how the head retry of the pair ended and starts the next retry of the pair, if any.
+   */
+  private void finish(Pair pair, Retry retry, Throwable failure) {
+    String key = retry.transferRequestDetails.getIdempotencyKey();
+    if (key != null) {
+      idempotencyStore.finish(key, failure);
+    }
+    retry.message = failure == null ? null : failure.getMessage();
+    retry.status = status(failure);
+    if (failure == null) {
+      transferMetrics.countCompletion(true);
+    }
+    end(retry, failure == null ? completed : failure instanceof TransferLockTimeoutException ? timedOut : failed);
+
+    boolean more;
+    synchronized (pairs) {
+      pair.retries.poll();
+      more = !pair.retries.isEmpty();
+      if (!more) {
+        pairs.remove(pair.key);
+      }
+    }
+    if (more) {
+      workers.execute(() -> attempt(pair));
+    }
+  }
+
+  private void end(Retry retry, LongAdder outcome) {
+    outcome.increment();
+    pending.decrementAndGet();
+    finished.add(retry.transferId);
+    if (finishedCount.incrementAndGet() > retained) {
+      String oldest = finished.poll();
+      if (oldest != null) {
+        finishedCount.decrementAndGet();
+        retries.remove(oldest);
+      }
+    }
+  }
+
+  private static TransferStatus status(Throwable failure) {
+    if (failure == null) {
+      return TransferStatus.COMPLETED;
+    } else if (failure instanceof InsufficientBalanceException) {
+      return TransferStatus.INSUFFICIENT_BALANCE;
+    } else if (failure instanceof AccountDoesNotExistsException) {
+      return TransferStatus.ACCOUNT_NOT_FOUND;
+    } else if (failure instanceof InvalidBalanceException) {
+      return TransferStatus.INVALID_REQUEST;
+    } else if (failure instanceof TransferLockTimeoutException) {
+      return TransferStatus.LOCK_TIMEOUT;
+    }
+    log.error("Retried transfer failed", failure);
+    return TransferStatus.FAILED;
+  }
+}
@@ -0,0 +1,80 @@
+package com.db.awmd.challenge.tcp;
+
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames of the binary transfer protocol, all big-endian.
+ *
+ * <p>A request is {@code [int length][long requestId][long amount][byte fromLength][from]
+ * [byte toLength][to]}, {@code length} counting the bytes after itself, {@code amount} in minor
+ * units at {@code accounts.balance.scale} and the account ids in UTF-8, at most
+ * {@value #MAX_ID_BYTES} bytes each. A response is a fixed {@value #RESPONSE_BYTES} bytes,
+ * {@code [long requestId][byte status]}. Requests may be pipelined; responses come back in
+ * completion order, not request order, and carry the request id they answer.
+ */
+public final class BinaryTransferProtocol {
+
+  public static final byte COMPLETED = 0;
+  public static final byte INVALID_REQUEST = 1;
+  public static final byte ACCOUNT_NOT_FOUND = 2;
+  public static final byte INSUFFICIENT_BALANCE = 3;
+  /** Account locks not acquired within the lock timeout, or the server too busy; not performed */
+  public static final byte LOCK_TIMEOUT = 4;
+  public static final byte FAILED = 5;
+
+  public static final int MAX_ID_BYTES = 255;
+  public static final int RESPONSE_BYTES = 9;
+  static final int MIN_LENGTH = 8 + 8 + 1 + 1;
+  static final int MAX_LENGTH = 8 + 8 + 1 + MAX_ID_BYTES + 1 + MAX_ID_BYTES;
+
+  private BinaryTransferProtocol() {
+  }
+
+  /**
+   * Writes a request frame at the buffer's position.
+   *
+   * @throws IllegalArgumentException if an account id is empty or longer than {@value #MAX_ID_BYTES}
+   *                                  bytes in UTF-8
+   */
+  public static void writeRequest(ByteBuffer buffer, long requestId, String fromAccountId, String toAccountId, long amount) {
+    byte[] from = idBytes(fromAccountId);
+    byte[] to = idBytes(toAccountId);
+    buffer.putInt(8 + 8 + 1 + from.length + 1 + to.length)
+            .putLong(requestId)
+            .putLong(amount)
+            .put((byte) from.length).put(from)
+            .put((byte) to.length).put(to);
+  }
+
+  /**
+   * Status code of a transfer that failed with {@code failure}, or completed if it is null.
+   */
+  public static byte status(Throwable failure) {
+    if (failure == null) {
+      return COMPLETED;
+    } else if (failure instanceof InsufficientBalanceException) {
+      return INSUFFICIENT_BALANCE;
+    } else if (failure instanceof AccountDoesNotExistsException) {
+      return ACCOUNT_NOT_FOUND;
+    } else if (failure instanceof InvalidBalanceException) {
+      return INVALID_REQUEST;
+    } else if (failure instanceof TransferLockTimeoutException) {
+      return LOCK_TIMEOUT;
+    }
+    return FAILED;
+  }
+
+  private static byte[] idBytes(String accountId) {
+    byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length == 0 || bytes.length > MAX_ID_BYTES) {
+      throw new IllegalArgumentException("Account id must be 1 to " + MAX_ID_BYTES + " bytes in UTF-8: " + accountId);
+    }
+    return bytes;
+  }
+}
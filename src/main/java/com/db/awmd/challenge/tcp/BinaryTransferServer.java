@@ -0,0 +1,337 @@
+package com.db.awmd.challenge.tcp;
+
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.service.AsyncTransferExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.db.awmd.challenge.tcp.BinaryTransferProtocol.INVALID_REQUEST;
+import static com.db.awmd.challenge.tcp.BinaryTransferProtocol.MAX_ID_BYTES;
+import static com.db.awmd.challenge.tcp.BinaryTransferProtocol.MAX_LENGTH;
+import static com.db.awmd.challenge.tcp.BinaryTransferProtocol.MIN_LENGTH;
+import static com.db.awmd.challenge.tcp.BinaryTransferProtocol.RESPONSE_BYTES;
+
+/**
+ * Listener for the {@link BinaryTransferProtocol}, for clients sending transfers at volumes where
+ * HTTP parsing and JSON binding would cost more than the transfers themselves.
+ *
+ * <p>One selector thread accepts connections, decodes request frames straight from a direct read
+ * buffer and hands each transfer to {@link AsyncTransferExecutor}, so a transfer waiting for its
+ * account locks holds no thread and many transfers of one connection run at once. Completions
+ * append their fixed-size response to the connection's direct write buffer and queue the
+ * connection for the selector thread, which writes the buffer to the socket without an
+ * intermediate heap copy; responses completing together go out in one write. A connection has at
+ * most {@code max-in-flight} transfers whose response is not yet written: beyond that the selector
+ * stops reading it, so a pipelining client is slowed by TCP flow control and the write buffer is
+ * sized once. A malformed frame closes the connection.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.binary.enabled", havingValue = "true")
+public class BinaryTransferServer {
+
+  private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+  private final class Connection {
+
+    private final SocketChannel channel;
+    private SelectionKey key;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+    /** Responses not yet written, appended by completing transfers; guarded by itself */
+    private final ByteBuffer out = ByteBuffer.allocateDirect(maxInFlight * RESPONSE_BYTES);
+    private final byte[] id = new byte[MAX_ID_BYTES];
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    // selector thread only
+    private long requests;
+    private long writtenBytes;
+    private boolean outPending;
+    private boolean inputShutdown;
+
+    private Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    private int inFlight() {
+      return (int) (requests - writtenBytes / RESPONSE_BYTES);
+    }
+  }
+
+  private final AsyncTransferExecutor asyncTransferExecutor;
+  private final int scale;
+  private final long minAmount;
+  private final int maxInFlight;
+  private final Selector selector;
+  private final ServerSocketChannel serverChannel;
+  private final Thread selectorThread;
+  private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+  private volatile boolean running = true;
+
+  private final AtomicInteger connections = new AtomicInteger();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder invalid = new LongAdder();
+  private final LongAdder protocolErrors = new LongAdder();
+
+  @Autowired
+  public BinaryTransferServer(AsyncTransferExecutor asyncTransferExecutor,
+                              @Value("${transfer.binary.port:18081}") int port,
+                              @Value("${transfer.binary.max-in-flight:1024}") int maxInFlight,
+                              @Value("${accounts.balance.scale:2}") int scale) throws IOException {
+    this.asyncTransferExecutor = asyncTransferExecutor;
+    this.scale = scale;
+    // the same lower bound as the REST endpoint's validation, an amount of 1
+    this.minAmount = BigDecimal.ONE.movePointRight(scale).longValueExact();
+    this.maxInFlight = maxInFlight;
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(port));
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    this.selectorThread = new Thread(this::run, "transfer-binary");
+    selectorThread.setDaemon(true);
+    selectorThread.start();
+    log.info("Binary transfer listener on port {}", getPort());
+  }
+
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("port", getPort());
+    metrics.put("connections", connections.get());
+    metrics.put("requests", requests.sum());
+    metrics.put("invalidRequests", invalid.sum());
+    metrics.put("protocolErrors", protocolErrors.sum());
+    return metrics;
+  }
+
+  @PreDestroy
+  public void shutdown() throws IOException, InterruptedException {
+    running = false;
+    selector.wakeup();
+    selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+    for (SelectionKey key : selector.keys()) {
+      key.channel().close();
+    }
+    selector.close();
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        selector.select();
+        Connection connection;
+        while ((connection = flushes.poll()) != null) {
+          // cleared first, so a response appended while flushing queues the connection again
+          connection.flushQueued.set(false);
+          flush(connection);
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          connection = (Connection) key.attachment();
+          if (key.isReadable()) {
+            read(connection);
+          }
+          if (key.isValid() && key.isWritable()) {
+            flush(connection);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        if (running) {
+          log.error("Binary transfer listener failed", e);
+        }
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    connections.incrementAndGet();
+  }
+
+  private void read(Connection connection) {
+    int read;
+    try {
+      read = connection.channel.read(connection.in);
+    } catch (IOException e) {
+      close(connection);
+      return;
+    }
+    if (read < 0) {
+      connection.inputShutdown = true;
+    }
+    decode(connection);
+  }
+
+  /**
+   * Starts the transfer of every complete frame in the read buffer, up to the in-flight limit.
+   */
+  private void decode(Connection connection) {
+    ByteBuffer in = connection.in;
+    in.flip();
+    while (connection.inFlight() < maxInFlight && in.remaining() >= 4) {
+      int length = in.getInt(in.position());
+      if (length < MIN_LENGTH || length > MAX_LENGTH) {
+        protocolError(connection, "frame length " + length);
+        return;
+      }
+      if (in.remaining() < 4 + length) {
+        break;
+      }
+      int end = in.position() + 4 + length;
+      in.position(in.position() + 4);
+      long requestId = in.getLong();
+      long amount = in.getLong();
+      String fromAccountId = readId(connection, end);
+      String toAccountId = fromAccountId == null ? null : readId(connection, end);
+      if (toAccountId == null || in.position() != end) {
+        protocolError(connection, "account id lengths do not match the frame length");
+        return;
+      }
+      connection.requests++;
+      transfer(connection, requestId, fromAccountId, toAccountId, amount);
+    }
+    in.compact();
+    updateInterest(connection);
+  }
+
+  private String readId(Connection connection, int end) {
+    ByteBuffer in = connection.in;
+    int length = in.get() & 0xff;
+    if (in.position() + length > end) {
+      return null;
+    }
+    in.get(connection.id, 0, length);
+    return new String(connection.id, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private void transfer(Connection connection, long requestId, String fromAccountId, String toAccountId, long amount) {
+    requests.increment();
+    if (fromAccountId.isEmpty() || toAccountId.isEmpty() || amount < minAmount) {
+      invalid.increment();
+      respond(connection, requestId, INVALID_REQUEST);
+      return;
+    }
+    TransferRequestDetails transferRequestDetails =
+            new TransferRequestDetails(fromAccountId, toAccountId, BigDecimal.valueOf(amount, scale));
+    asyncTransferExecutor.submit(transferRequestDetails).whenComplete((ignored, failure) ->
+            respond(connection, requestId, BinaryTransferProtocol.status(failure)));
+  }
+
+  /**
+   * Appends a response for the selector thread to write; called from any thread.
+   */
+  private void respond(Connection connection, long requestId, byte status) {
+    synchronized (connection.out) {
+      connection.out.putLong(requestId).put(status);
+    }
+    if (connection.flushQueued.compareAndSet(false, true)) {
+      flushes.add(connection);
+      selector.wakeup();
+    }
+  }
+
+  private void flush(Connection connection) {
+    if (!connection.channel.isOpen()) {
+      return;
+    }
+    boolean wasFull = connection.inFlight() >= maxInFlight;
+    int written;
+    synchronized (connection.out) {
+      connection.out.flip();
+      try {
+        written = connection.channel.write(connection.out);
+      } catch (IOException e) {
+        connection.out.clear();
+        close(connection);
+        return;
+      }
+      connection.outPending = connection.out.hasRemaining();
+      connection.out.compact();
+    }
+    connection.writtenBytes += written;
+    if (wasFull && connection.inFlight() < maxInFlight) {
+      decode(connection); // frames left in the read buffer when the limit was reached
+    } else {
+      updateInterest(connection);
+    }
+  }
+
+  private void updateInterest(Connection connection) {
+    if (!connection.key.isValid()) {
+      return;
+    }
+    if (connection.inputShutdown && connection.inFlight() == 0 && !connection.outPending) {
+      close(connection);
+      return;
+    }
+    int ops = 0;
+    if (!connection.inputShutdown && connection.inFlight() < maxInFlight) {
+      ops |= SelectionKey.OP_READ;
+    }
+    if (connection.outPending) {
+      ops |= SelectionKey.OP_WRITE;
+    }
+    connection.key.interestOps(ops);
+  }
+
+  private void protocolError(Connection connection, String problem) {
+    protocolErrors.increment();
+    log.warn("Closing binary transfer connection from {}: {}", connection.channel.socket().getRemoteSocketAddress(), problem);
+    close(connection);
+  }
+
+  private void close(Connection connection) {
+    if (!connection.channel.isOpen()) {
+      return;
+    }
+    connection.key.cancel();
+    try {
+      connection.channel.close();
+    } catch (IOException e) {
+      log.debug("Could not close binary transfer connection", e);
+    }
+    connections.decrementAndGet();
+  }
+}
@@ -1,59 +1,304 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchTransferMode;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
 import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferTicket;
 import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IdempotencyKeyConflictException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.exception.InvalidCursorException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import com.db.awmd.challenge.exception.UnsupportedTransferModeException;
+import com.db.awmd.challenge.service.AccountImportFormat;
+import com.db.awmd.challenge.service.AccountImporter;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncTransferExecutor;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.db.awmd.challenge.service.TransferRetryScheduler;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import javax.validation.Valid;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
 public class AccountsController {
 
+  public static final String NDJSON_VALUE = "application/x-ndjson";
+
+  public static final String CSV_VALUE = "text/csv";
+
+  public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+  private static final int IMPORT_READ_BUFFER_CHARS = 64 * 1024;
+
   private final AccountsService accountsService;
 
+  private final AccountImporter accountImporter;
+
+  private final AsyncTransferExecutor asyncTransferExecutor;
+
+  private final TransferMetrics transferMetrics;
+
+  private final TransferAdmission transferAdmission;
+
+  private final TransferRetryScheduler transferRetryScheduler;
+
+  private final ResponseEntity<Object> overloaded;
+
+  private final ResponseEntity<Object> accountBusy;
+
+  private final ObjectReader transferReader;
+
+  private final JsonFactory jsonFactory;
+
+  @Value("${transfer.batch.max-size:10000}")
+  private int maxBatchSize;
+
+  @Value("${accounts.query.max-size:1000}")
+  private int maxQuerySize;
+
+  @Value("${accounts.list.max-limit:1000}")
+  private int maxListLimit;
+
+  @Value("${accounts.transactions.max-limit:1000}")
+  private int maxTransactionsLimit;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService, AccountImporter accountImporter,
+                            AsyncTransferExecutor asyncTransferExecutor, TransferMetrics transferMetrics,
+                            TransferAdmission transferAdmission, TransferRetryScheduler transferRetryScheduler,
+                            ObjectMapper objectMapper) {
     this.accountsService = accountsService;
+    this.accountImporter = accountImporter;
+    this.asyncTransferExecutor = asyncTransferExecutor;
+    this.transferMetrics = transferMetrics;
+    this.transferAdmission = transferAdmission;
+    this.transferRetryScheduler = transferRetryScheduler;
+    this.overloaded = rejection("Too many transfers in progress", HttpStatus.SERVICE_UNAVAILABLE);
+    this.accountBusy = rejection("Too many transfers in progress on the account", HttpStatus.TOO_MANY_REQUESTS);
+    this.transferReader = objectMapper.readerFor(TransferRequestDetails.class);
+    this.jsonFactory = objectMapper.getFactory();
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
+  public ResponseEntity<Object> createAccount(@RequestBody Account account) {
+    String violation = account.validate();
+    if (violation != null) {
+      return new ResponseEntity<>(violation, HttpStatus.BAD_REQUEST);
+    }
     log.info("Creating account {}", account);
 
     try {
     this.accountsService.createAccount(account);
     } catch (DuplicateAccountIdException daie) {
       return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (InvalidBalanceException ibe) {
+      return new ResponseEntity<>(ibe.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (InvalidAccountIdException iaie) {
+      return new ResponseEntity<>(iaie.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  /**
+   * Bulk creation from an NDJSON or CSV stream. The body is parsed line by line as it arrives, never
+   * buffered whole; lines that cannot be created are reported in the summary.
+   */
+  @PostMapping(path = "/import", consumes = {NDJSON_VALUE, CSV_VALUE})
+  public ResponseEntity<Object> importAccounts(HttpServletRequest request) throws IOException {
+    AccountImportFormat format = request.getContentType().startsWith(CSV_VALUE) ? AccountImportFormat.CSV : AccountImportFormat.NDJSON;
+    log.info("Importing accounts from {}", format);
+    try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8), IMPORT_READ_BUFFER_CHARS)) {
+      return new ResponseEntity<>(accountImporter.importAccounts(reader, format), HttpStatus.OK);
+    }
+  }
+
+  @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> listAccounts(@RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "100") int limit) {
+    if (limit < 1 || limit > maxListLimit) {
+      return new ResponseEntity<>("Limit must be between 1 and " + maxListLimit, HttpStatus.BAD_REQUEST);
+    }
+    try {
+      return new ResponseEntity<>(this.accountsService.listAccounts(cursor, limit), HttpStatus.OK);
+    } catch (InvalidCursorException invalidCursorException) {
+      return new ResponseEntity<>(invalidCursorException.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  /**
+   * Every account as NDJSON, written straight to the response as the repository is scanned, so the
+   * export runs in constant memory whatever the number of accounts.
+   */
+  @GetMapping(produces = NDJSON_VALUE)
+  public void exportAccounts(HttpServletResponse response) throws IOException {
+    log.info("Exporting accounts");
+    response.setContentType(NDJSON_VALUE);
+    try (JsonGenerator generator = jsonFactory.createGenerator(response.getOutputStream())) {
+      generator.setRootValueSeparator(null);
+      accountsService.forEachAccount(account -> {
+        try {
+          generator.writeStartObject();
+          generator.writeStringField("accountId", account.getAccountId());
+          generator.writeNumberField("balance", account.getBalance());
+          generator.writeEndObject();
+          generator.writeRaw('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
   @GetMapping(path = "/{accountId}")
   public ResponseEntity<Object> getAccount(@PathVariable String accountId) {
     log.info("Retrieving account for id {}", accountId);
     try {
-      Account account = this.accountsService.getAccount(accountId);
+      Account account = this.accountsService.getAccountSnapshot(accountId);
       return new ResponseEntity<Object>(account, HttpStatus.OK);
     }catch (AccountDoesNotExistsException accountDoesNotExistsException){
       return new ResponseEntity<Object>(accountDoesNotExistsException.getMessage(), HttpStatus.NOT_FOUND);
     }
   }
 
+  @GetMapping(path = "/{accountId}/transactions")
+  public ResponseEntity<Object> getTransactions(@PathVariable String accountId,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(defaultValue = "100") int limit) {
+    if (limit < 1 || limit > maxTransactionsLimit) {
+      return new ResponseEntity<>("Limit must be between 1 and " + maxTransactionsLimit, HttpStatus.BAD_REQUEST);
+    }
+    try {
+      return new ResponseEntity<>(this.accountsService.getTransactions(accountId, cursor, limit), HttpStatus.OK);
+    } catch (AccountDoesNotExistsException accountDoesNotExistsException) {
+      return new ResponseEntity<>(accountDoesNotExistsException.getMessage(), HttpStatus.NOT_FOUND);
+    } catch (InvalidCursorException invalidCursorException) {
+      return new ResponseEntity<>(invalidCursorException.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  @PostMapping(path = "/query", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> queryAccounts(@RequestBody List<String> accountIds) {
+    if (accountIds.size() > maxQuerySize) {
+      return new ResponseEntity<>("Query cannot contain more than " + maxQuerySize + " account ids", HttpStatus.BAD_REQUEST);
+    }
+    try {
+      return new ResponseEntity<>(this.accountsService.queryAccounts(accountIds), HttpStatus.OK);
+    } catch (TransferLockTimeoutException transferLockTimeoutException) {
+      return new ResponseEntity<>(transferLockTimeoutException.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+  }
+
   @PutMapping(path = "/transfer")
-  public ResponseEntity<Object> amountTransfer(@RequestBody @Valid TransferRequestDetails transferRequestDetails){
+  public ResponseEntity<Object> amountTransfer(@RequestBody TransferRequestDetails transferRequestDetails,
+                                               @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey){
+    long start = System.nanoTime();
+    try {
+      String violation = transferRequestDetails.validate();
+      if (violation != null) {
+        return new ResponseEntity<>(violation, HttpStatus.BAD_REQUEST);
+      }
+      TransferRequestDetails keyed = withIdempotencyKey(transferRequestDetails, idempotencyKey);
+      if (keyed == null) {
+        return new ResponseEntity<>(IDEMPOTENCY_KEY_HEADER + " header does not match idempotencyKey", HttpStatus.BAD_REQUEST);
+      }
+      TransferAdmission.Decision decision = transferAdmission.tryAdmit(keyed.getFromAccountId(), keyed.getToAccountId());
+      if (decision != TransferAdmission.Decision.ADMITTED) {
+        return decision == TransferAdmission.Decision.OVERLOADED ? overloaded : accountBusy;
+      }
+      try {
+        return transfer(keyed);
+      } finally {
+        transferAdmission.release(keyed.getFromAccountId(), keyed.getToAccountId(), start);
+      }
+    } finally {
+      transferMetrics.record(TransferMetrics.Stage.HANDLER, start);
+    }
+  }
+
+  /**
+   * Response turning a transfer away at admission, built once: rejecting must stay cheap when
+   * rejections are what an overloaded server mostly sends.
+   */
+  private ResponseEntity<Object> rejection(String message, HttpStatus status) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, Long.toString(transferAdmission.getRetryAfterSeconds()));
+    return new ResponseEntity<>(message, HttpHeaders.readOnlyHttpHeaders(headers), status);
+  }
+
+  /**
+   * Same contract as {@link #amountTransfer}, but the transfer runs on {@link AsyncTransferExecutor}:
+   * the request thread is released at once and waits for account locks occupy no thread.
+   */
+  @PutMapping(path = "/transfer/async")
+  public CompletableFuture<ResponseEntity<Object>> amountTransferAsync(@RequestBody TransferRequestDetails transferRequestDetails,
+                                                                       @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+    String violation = transferRequestDetails.validate();
+    if (violation != null) {
+      return CompletableFuture.completedFuture(new ResponseEntity<>(violation, HttpStatus.BAD_REQUEST));
+    }
+    TransferRequestDetails keyed = withIdempotencyKey(transferRequestDetails, idempotencyKey);
+    if (keyed == null) {
+      return CompletableFuture.completedFuture(
+              new ResponseEntity<>(IDEMPOTENCY_KEY_HEADER + " header does not match idempotencyKey", HttpStatus.BAD_REQUEST));
+    }
+    log.info("Transferring amount: {} from account id {} to account id {} asynchronously",
+            keyed.getAmount(), keyed.getFromAccountId(), keyed.getToAccountId());
+    return asyncTransferExecutor.submit(keyed).handle((ignored, failure) ->
+            failure == null ? new ResponseEntity<>(HttpStatus.ACCEPTED) : transferFailed(failure));
+  }
+
+  /**
+   * Returns the transfer with the key from the {@value #IDEMPOTENCY_KEY_HEADER} header, if any, or
+   * null if the header contradicts a key in the body.
+   */
+  private static TransferRequestDetails withIdempotencyKey(TransferRequestDetails transferRequestDetails, String headerKey) {
+    if (headerKey == null) {
+      return transferRequestDetails;
+    }
+    String bodyKey = transferRequestDetails.getIdempotencyKey();
+    if (bodyKey != null && !bodyKey.equals(headerKey)) {
+      return null;
+    }
+    return transferRequestDetails.withIdempotencyKey(headerKey);
+  }
 
+  private ResponseEntity<Object> transfer(TransferRequestDetails transferRequestDetails) {
     log.info("Transferring amount: {} from account id {} to account id {} ",
             transferRequestDetails.getAmount(),
             transferRequestDetails.getFromAccountId(),
@@ -61,17 +306,129 @@ public class AccountsController {
 
     try {
       this.accountsService.transferMoney(transferRequestDetails);
+    } catch (TransferLockTimeoutException transferLockTimeoutException) {
+      return retry(transferRequestDetails, transferLockTimeoutException);
+    } catch (Exception exe) {
+      return transferFailed(exe);
     }
-    catch (AccountDoesNotExistsException accountDoesNotExistsException){
-      return new ResponseEntity<>(accountDoesNotExistsException.getMessage(), HttpStatus.NOT_FOUND);
+    return new ResponseEntity<>(HttpStatus.ACCEPTED);
+  }
+
+  /**
+   * Hands a transfer that timed out on account locks to the retry scheduler: 202 with the ticket to
+   * poll at its Location, or the timeout itself if the scheduler takes no more retries.
+   */
+  private ResponseEntity<Object> retry(TransferRequestDetails transferRequestDetails, TransferLockTimeoutException timeout) {
+    TransferTicket ticket;
+    try {
+      ticket = transferRetryScheduler.schedule(transferRequestDetails);
+    } catch (Exception exe) {
+      return transferFailed(exe);
     }
-    catch (InsufficientBalanceException insufficientBalanceException) {
-      return new ResponseEntity<>(insufficientBalanceException.getMessage(),HttpStatus.FORBIDDEN);
+    if (ticket == null) {
+      return transferFailed(timeout);
     }
-    catch (RuntimeException exe){
-      return new ResponseEntity<>(exe.getMessage(),HttpStatus.INTERNAL_SERVER_ERROR);
+    log.info("Retrying transfer from account id {} to account id {} as {}",
+            transferRequestDetails.getFromAccountId(), transferRequestDetails.getToAccountId(), ticket.getTransferId());
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.LOCATION, "/v1/accounts/transfer/" + ticket.getTransferId());
+    return new ResponseEntity<>(ticket, headers, HttpStatus.ACCEPTED);
+  }
+
+  @GetMapping(path = "/transfer/{transferId}")
+  public ResponseEntity<Object> getRetriedTransfer(@PathVariable String transferId) {
+    TransferTicket ticket = transferRetryScheduler.getTicket(transferId);
+    if (ticket == null) {
+      return new ResponseEntity<>("Transfer id " + transferId + " is not known", HttpStatus.NOT_FOUND);
+    }
+    return new ResponseEntity<>(ticket, HttpStatus.OK);
+  }
+
+  private static ResponseEntity<Object> transferFailed(Throwable failure) {
+    HttpStatus status;
+    if (failure instanceof AccountDoesNotExistsException) {
+      status = HttpStatus.NOT_FOUND;
+    } else if (failure instanceof InsufficientBalanceException) {
+      status = HttpStatus.FORBIDDEN;
+    } else if (failure instanceof TransferLockTimeoutException) {
+      status = HttpStatus.SERVICE_UNAVAILABLE;
+    } else if (failure instanceof InvalidBalanceException) {
+      status = HttpStatus.BAD_REQUEST;
+    } else if (failure instanceof IdempotencyKeyConflictException) {
+      status = HttpStatus.CONFLICT;
+    } else {
+      status = HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+    return new ResponseEntity<>(failure.getMessage(), status);
+  }
+
+  @PutMapping(path = "/transfer/multi-leg", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> multiLegTransfer(@RequestBody MultiLegTransferRequest request) {
+    log.info("Transferring {} debits to {} credits atomically",
+            request.getDebits() == null ? 0 : request.getDebits().size(),
+            request.getCredits() == null ? 0 : request.getCredits().size());
+    try {
+      this.accountsService.transferMultiLeg(request);
+    } catch (UnsupportedTransferModeException unsupportedTransferModeException) {
+      return new ResponseEntity<>(unsupportedTransferModeException.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (Exception exe) {
+      return transferFailed(exe);
     }
     return new ResponseEntity<>(HttpStatus.ACCEPTED);
   }
 
+  @PutMapping(path = "/transfer/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> batchTransfer(HttpServletRequest request,
+                                              @RequestParam(defaultValue = "BEST_EFFORT") BatchTransferMode mode) throws IOException {
+    List<TransferRequestDetails> transfers = new ArrayList<>();
+    try (JsonParser parser = jsonFactory.createParser(request.getInputStream())) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        return new ResponseEntity<>("Batch must be a JSON array of transfers", HttpStatus.BAD_REQUEST);
+      }
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        if (transfers.size() == maxBatchSize) {
+          return batchTooLarge();
+        }
+        transfers.add(transferReader.readValue(parser));
+      }
+    } catch (JsonProcessingException jsonProcessingException) {
+      return new ResponseEntity<>(jsonProcessingException.getOriginalMessage(), HttpStatus.BAD_REQUEST);
+    }
+    return transferBatch(transfers, mode);
+  }
+
+  @PutMapping(path = "/transfer/batch", consumes = NDJSON_VALUE)
+  public ResponseEntity<Object> batchTransferNdjson(HttpServletRequest request,
+                                                    @RequestParam(defaultValue = "BEST_EFFORT") BatchTransferMode mode) throws IOException {
+    List<TransferRequestDetails> transfers = new ArrayList<>();
+    try (MappingIterator<TransferRequestDetails> lines = transferReader.readValues(request.getInputStream())) {
+      while (lines.hasNextValue()) {
+        if (transfers.size() == maxBatchSize) {
+          return batchTooLarge();
+        }
+        transfers.add(lines.nextValue());
+      }
+    } catch (JsonProcessingException jsonProcessingException) {
+      return new ResponseEntity<>(jsonProcessingException.getOriginalMessage(), HttpStatus.BAD_REQUEST);
+    }
+    return transferBatch(transfers, mode);
+  }
+
+  /**
+   * Sent as soon as a batch turns out to be too large, while its transfers are parsed one by one,
+   * so the rest of an oversized body is never read into memory.
+   */
+  private ResponseEntity<Object> batchTooLarge() {
+    return new ResponseEntity<>("Batch cannot contain more than " + maxBatchSize + " transfers", HttpStatus.BAD_REQUEST);
+  }
+
+  private ResponseEntity<Object> transferBatch(List<TransferRequestDetails> transfers, BatchTransferMode mode) {
+    log.info("Transferring batch of {} transfers in {} mode", transfers.size(), mode);
+
+    try {
+      return new ResponseEntity<>(this.accountsService.transferBatch(transfers, mode), HttpStatus.OK);
+    } catch (UnsupportedTransferModeException unsupportedTransferModeException) {
+      return new ResponseEntity<>(unsupportedTransferModeException.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
 }
@@ -0,0 +1,211 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Streaming codecs for the request and response bodies on the hot paths, {@link Account} and
+ * {@link TransferRequestDetails}, registered with the application's {@code ObjectMapper} as a
+ * module bean. Fields are read straight off the token stream into locals and the object is built
+ * once, with no creator property buffer or reflective field writes; decimals are parsed from the
+ * parser's recycled text buffer without an intermediate string. Unknown fields are skipped.
+ *
+ * <p>The codecs bind what they are given, missing fields as null: a batch reports an invalid
+ * transfer per item rather than failing the whole request, so validation is left to the callers,
+ * which check {@link Account#validate()} and {@link TransferRequestDetails#validate()} inline.
+ */
+@Component
+public class DomainJsonModule extends SimpleModule {
+
+  public DomainJsonModule() {
+    super("DomainJsonModule");
+    addDeserializer(Account.class, new AccountDeserializer());
+    addSerializer(Account.class, new AccountSerializer());
+    addDeserializer(TransferRequestDetails.class, new TransferRequestDetailsDeserializer());
+    addSerializer(TransferRequestDetails.class, new TransferRequestDetailsSerializer());
+  }
+
+  static final class AccountDeserializer extends StdDeserializer<Account> {
+
+    AccountDeserializer() {
+      super(Account.class);
+    }
+
+    @Override
+    public Account deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      String accountId = null;
+      BigDecimal balance = null;
+      for (JsonToken token = firstField(p, ctxt, Account.class); token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+        String field = p.getCurrentName();
+        p.nextToken();
+        switch (field) {
+          case "accountId":
+            accountId = text(p, ctxt);
+            break;
+          case "balance":
+            balance = decimal(p, ctxt);
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
+      return new Account(accountId, balance);
+    }
+  }
+
+  static final class AccountSerializer extends StdSerializer<Account> {
+
+    AccountSerializer() {
+      super(Account.class);
+    }
+
+    @Override
+    public void serialize(Account account, JsonGenerator gen, SerializerProvider provider) throws IOException {
+      gen.writeStartObject();
+      gen.writeStringField("accountId", account.getAccountId());
+      writeDecimalField(gen, "balance", account.getBalance());
+      gen.writeEndObject();
+    }
+  }
+
+  static final class TransferRequestDetailsDeserializer extends StdDeserializer<TransferRequestDetails> {
+
+    TransferRequestDetailsDeserializer() {
+      super(TransferRequestDetails.class);
+    }
+
+    @Override
+    public TransferRequestDetails deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      String fromAccountId = null;
+      String toAccountId = null;
+      BigDecimal amount = null;
+      String idempotencyKey = null;
+      for (JsonToken token = firstField(p, ctxt, TransferRequestDetails.class); token == JsonToken.FIELD_NAME;
+           token = p.nextToken()) {
+        String field = p.getCurrentName();
+        p.nextToken();
+        switch (field) {
+          case "fromAccountId":
+            fromAccountId = text(p, ctxt);
+            break;
+          case "toAccountId":
+            toAccountId = text(p, ctxt);
+            break;
+          case "amount":
+          case "amountToTransfer":
+            amount = decimal(p, ctxt);
+            break;
+          case "idempotencyKey":
+            idempotencyKey = text(p, ctxt);
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
+      return new TransferRequestDetails(fromAccountId, toAccountId, amount, idempotencyKey);
+    }
+  }
+
+  static final class TransferRequestDetailsSerializer extends StdSerializer<TransferRequestDetails> {
+
+    TransferRequestDetailsSerializer() {
+      super(TransferRequestDetails.class);
+    }
+
+    @Override
+    public void serialize(TransferRequestDetails transfer, JsonGenerator gen, SerializerProvider provider) throws IOException {
+      gen.writeStartObject();
+      gen.writeStringField("fromAccountId", transfer.getFromAccountId());
+      gen.writeStringField("toAccountId", transfer.getToAccountId());
+      writeDecimalField(gen, "amount", transfer.getAmount());
+      gen.writeStringField("idempotencyKey", transfer.getIdempotencyKey());
+      gen.writeEndObject();
+    }
+  }
+
+  /**
+   * Moves past the start of the object; returns the token of the first field, or the end of an
+   * empty object.
+   */
+  private static JsonToken firstField(JsonParser p, DeserializationContext ctxt, Class<?> type) throws IOException {
+    JsonToken token = p.getCurrentToken();
+    if (token == JsonToken.START_OBJECT) {
+      return p.nextToken();
+    }
+    if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+      ctxt.handleUnexpectedToken(type, p);
+    }
+    return token;
+  }
+
+  /**
+   * The value as a string; like Jackson's own binding, other scalars are taken as their text.
+   */
+  private static String text(JsonParser p, DeserializationContext ctxt) throws IOException {
+    JsonToken token = p.getCurrentToken();
+    if (token == JsonToken.VALUE_STRING) {
+      return p.getText();
+    }
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (token.isScalarValue()) {
+      return p.getValueAsString();
+    }
+    return (String) ctxt.handleUnexpectedToken(String.class, p);
+  }
+
+  /**
+   * The value as a decimal, from a JSON number or string; a blank string is taken as null.
+   */
+  private static BigDecimal decimal(JsonParser p, DeserializationContext ctxt) throws IOException {
+    switch (p.getCurrentToken()) {
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return p.getDecimalValue();
+      case VALUE_NULL:
+        return null;
+      case VALUE_STRING:
+        char[] chars = p.getTextCharacters();
+        int start = p.getTextOffset();
+        int end = start + p.getTextLength();
+        while (start < end && Character.isWhitespace(chars[start])) {
+          start++;
+        }
+        while (end > start && Character.isWhitespace(chars[end - 1])) {
+          end--;
+        }
+        if (start == end) {
+          return null;
+        }
+        try {
+          return new BigDecimal(chars, start, end - start);
+        } catch (NumberFormatException e) {
+          return (BigDecimal) ctxt.handleWeirdStringValue(BigDecimal.class, p.getText(), "not a valid representation");
+        }
+      default:
+        return (BigDecimal) ctxt.handleUnexpectedToken(BigDecimal.class, p);
+    }
+  }
+
+  private static void writeDecimalField(JsonGenerator gen, String field, BigDecimal value) throws IOException {
+    gen.writeFieldName(field);
+    if (value == null) {
+      gen.writeNull();
+    } else {
+      gen.writeNumber(value);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.AsyncTransferExecutor;
+import com.db.awmd.challenge.service.IdempotencyStore;
+import com.db.awmd.challenge.service.TransactionLedger;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.service.TransferMetrics;
+import com.db.awmd.challenge.service.TransferRetryScheduler;
+import com.db.awmd.challenge.tcp.BinaryTransferServer;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+  private final AsyncNotificationDispatcher notificationDispatcher;
+
+  private final TransferMetrics transferMetrics;
+
+  private final IdempotencyStore idempotencyStore;
+
+  private final AsyncTransferExecutor asyncTransferExecutor;
+
+  private final TransactionLedger transactionLedger;
+
+  private final TransferAdmission transferAdmission;
+
+  private final TransferRetryScheduler transferRetryScheduler;
+
+  @Setter
+  @Autowired(required = false)
+  private BinaryTransferServer binaryTransferServer;
+
+  @Autowired
+  public MetricsController(AsyncNotificationDispatcher notificationDispatcher, TransferMetrics transferMetrics,
+                           IdempotencyStore idempotencyStore, AsyncTransferExecutor asyncTransferExecutor,
+                           TransactionLedger transactionLedger, TransferAdmission transferAdmission,
+                           TransferRetryScheduler transferRetryScheduler) {
+    this.notificationDispatcher = notificationDispatcher;
+    this.transferMetrics = transferMetrics;
+    this.idempotencyStore = idempotencyStore;
+    this.asyncTransferExecutor = asyncTransferExecutor;
+    this.transactionLedger = transactionLedger;
+    this.transferAdmission = transferAdmission;
+    this.transferRetryScheduler = transferRetryScheduler;
+  }
+
+  @GetMapping
+  public Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("transfers", transferMetrics.getMetrics());
+    metrics.put("notifications", notificationDispatcher.getMetrics());
+    metrics.put("idempotency", idempotencyStore.getMetrics());
+    metrics.put("asyncTransfers", asyncTransferExecutor.getMetrics());
+    metrics.put("transactions", transactionLedger.getMetrics());
+    metrics.put("admission", transferAdmission.getMetrics());
+    metrics.put("retries", transferRetryScheduler.getMetrics());
+    if (binaryTransferServer != null) {
+      metrics.put("binary", binaryTransferServer.getMetrics());
+    }
+    return metrics;
+  }
+}
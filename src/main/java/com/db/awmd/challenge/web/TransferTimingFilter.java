@@ -0,0 +1,45 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.service.TransferMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Times whole single-transfer requests, JSON binding and response writing included, as the
+ * {@link TransferMetrics.Stage#HTTP HTTP} stage.
+ */
+@Component
+public class TransferTimingFilter extends OncePerRequestFilter {
+
+  private static final String TRANSFER_PATH = "/v1/accounts/transfer";
+
+  private final TransferMetrics transferMetrics;
+
+  @Autowired
+  public TransferTimingFilter(TransferMetrics transferMetrics) {
+    this.transferMetrics = transferMetrics;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    return !TRANSFER_PATH.equals(request.getRequestURI());
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+          throws ServletException, IOException {
+    long start = System.nanoTime();
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      transferMetrics.record(TransferMetrics.Stage.HTTP, start);
+    }
+  }
+}
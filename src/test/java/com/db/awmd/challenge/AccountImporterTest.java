@@ -0,0 +1,73 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountImportFormat;
+import com.db.awmd.challenge.service.AccountImporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Test;
+
+public class AccountImporterTest {
+
+  private final AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory() {
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+      if (account.getAccountId().equals("Id-broken")) {
+        throw new IllegalStateException("storage unavailable");
+      }
+      super.createAccount(account);
+    }
+
+    @Override
+    public void createAccounts(List<Account> accounts, Consumer<Account> onCreated,
+                               BiConsumer<Account, RuntimeException> onFailure) {
+      super.createAccounts(accounts, onCreated, onFailure);
+      if (accounts.stream().anyMatch(account -> account.getAccountId().equals("Id-undurable"))) {
+        throw new IllegalStateException("sync failed");
+      }
+    }
+  };
+
+  private final AccountImporter accountImporter = new AccountImporter(accountsRepository, new ObjectMapper(), 10, 1, 100);
+
+  @After
+  public void shutdownImporter() {
+    accountImporter.shutdown();
+  }
+
+  @Test
+  public void unexpectedFailureFailsOnlyTheAccountsNotYetCreated() throws Exception {
+    String csv = "accountId,balance\nId-1,10\nId-1,20\nId-2,30\nId-broken,40\nId-3,50\nId-4,60\n";
+
+    AccountImportResult result = accountImporter.importAccounts(new BufferedReader(new StringReader(csv)), AccountImportFormat.CSV);
+
+    assertThat(result.getReceived()).isEqualTo(6);
+    assertThat(result.getCreated()).isEqualTo(2);
+    assertThat(result.getDuplicates()).isEqualTo(1);
+    assertThat(result.getInvalid()).isEqualTo(3);
+    assertThat(result.getErrors()).containsExactly("3 accounts of a batch failed: storage unavailable");
+    assertThat(accountsRepository.findAccount("Id-2")).isNotNull();
+    assertThat(accountsRepository.findAccount("Id-3")).isNull();
+  }
+
+  @Test
+  public void failureAfterEveryAccountIsCreatedCountsThemCreated() throws Exception {
+    String csv = "Id-1,10\nId-undurable,20\n";
+
+    AccountImportResult result = accountImporter.importAccounts(new BufferedReader(new StringReader(csv)), AccountImportFormat.CSV);
+
+    assertThat(result.getCreated()).isEqualTo(2);
+    assertThat(result.getInvalid()).isZero();
+    assertThat(result.getErrors()).containsExactly("batch of 2 accounts created but not confirmed durable: sync failed");
+  }
+}
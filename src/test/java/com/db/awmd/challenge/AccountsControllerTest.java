@@ -3,12 +3,22 @@ package com.db.awmd.challenge;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransactionLedger;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.service.TransferRetryScheduler;
+import com.jayway.jsonpath.JsonPath;
 import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -18,6 +28,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 @RunWith(SpringRunner.class)
@@ -30,6 +41,15 @@ public class AccountsControllerTest {
   @Autowired
   private AccountsService accountsService;
 
+  @Autowired
+  private TransactionLedger transactionLedger;
+
+  @Autowired
+  private TransferAdmission transferAdmission;
+
+  @Autowired
+  private TransferRetryScheduler transferRetryScheduler;
+
   @Autowired
   private WebApplicationContext webApplicationContext;
 
@@ -39,6 +59,7 @@ public class AccountsControllerTest {
 
     // Reset the existing accounts before each test.
     accountsService.getAccountsRepository().clearAccounts();
+    transactionLedger.clear();
   }
 
   @Test
@@ -431,4 +452,389 @@ public class AccountsControllerTest {
 
 
   }
+
+  @Test
+  public void batchTransferBestEffort() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(100)));
+
+    this.mockMvc.perform(put("/v1/accounts/transfer/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":60},"
+                    + "{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":60},"
+                    + "{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-missing\",\"amount\":10},"
+                    + "{\"fromAccountId\":\"\",\"toAccountId\":\"Id-second\",\"amount\":10}]"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.completed").value(1))
+            .andExpect(jsonPath("$.failed").value(3))
+            .andExpect(jsonPath("$.results[0].status").value("COMPLETED"))
+            .andExpect(jsonPath("$.results[1].status").value("INSUFFICIENT_BALANCE"))
+            .andExpect(jsonPath("$.results[2].status").value("ACCOUNT_NOT_FOUND"))
+            .andExpect(jsonPath("$.results[3].status").value("INVALID_REQUEST"));
+
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("40");
+    assertThat(accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("160");
+  }
+
+  @Test
+  public void batchTransferAllOrNothing() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(100)));
+
+    this.mockMvc.perform(put("/v1/accounts/transfer/batch?mode=ALL_OR_NOTHING")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":60},"
+                    + "{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":60}]"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.completed").value(0))
+            .andExpect(jsonPath("$.results[0].status").value("ABORTED"))
+            .andExpect(jsonPath("$.results[1].status").value("INSUFFICIENT_BALANCE"));
+
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("100");
+    assertThat(accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("100");
+  }
+
+  @Test
+  public void batchTransferNdjson() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(100)));
+
+    this.mockMvc.perform(put("/v1/accounts/transfer/batch")
+            .contentType("application/x-ndjson")
+            .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":30}\n"
+                    + "{\"fromAccountId\":\"Id-second\",\"toAccountId\":\"Id-first\",\"amount\":10}\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.completed").value(2));
+
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("80");
+    assertThat(accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("120");
+  }
+
+  @Test
+  public void oversizedBatchIsRejectedBeforeTheRestIsRead() throws Exception {
+    StringBuilder body = new StringBuilder("[");
+    for (int i = 0; i <= 10000; i++) {
+      body.append("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":1},");
+    }
+    // never reached: parsing stops at the transfer beyond the limit
+    body.append("not json");
+
+    this.mockMvc.perform(put("/v1/accounts/transfer/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body.toString()))
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("Batch cannot contain more than 10000 transfers"));
+  }
+
+  @Test
+  public void transferMetrics() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(100)));
+
+    this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":30}"))
+            .andExpect(status().isAccepted());
+    this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":300}"))
+            .andExpect(status().isForbidden());
+
+    this.mockMvc.perform(get("/v1/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.transfers.latency.handler.count").isNumber())
+            .andExpect(jsonPath("$.transfers.latency.lockWait.p99Micros").isNumber())
+            .andExpect(jsonPath("$.transfers.outcomes.completed").isNumber())
+            .andExpect(jsonPath("$.transfers.outcomes.insufficientBalanceRate").isNumber())
+            .andExpect(jsonPath("$.transfers.lockWaitTotalMillis").isNumber());
+  }
+
+  @Test
+  public void transferToBusyAccountIsRejectedWithRetryAfter() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(100)));
+
+    int held = 0;
+    try {
+      while (transferAdmission.tryAdmit("Id-first", "Id-held") == TransferAdmission.Decision.ADMITTED) {
+        held++;
+      }
+      this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+              .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":30}"))
+              .andExpect(status().isTooManyRequests())
+              .andExpect(header().string("Retry-After", "1"));
+    } finally {
+      for (int i = 0; i < held; i++) {
+        transferAdmission.release("Id-first", "Id-held", System.nanoTime());
+      }
+    }
+
+    this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":30}"))
+            .andExpect(status().isAccepted());
+    this.mockMvc.perform(get("/v1/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.admission.inFlight").value(0))
+            .andExpect(jsonPath("$.admission.rejectedAccountBusy").isNumber());
+  }
+
+  @Test
+  public void transferTimingOutOnLocksIsRetried() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(100)));
+
+    String transferId;
+    SyncAccount first = (SyncAccount) accountsService.getAccount("Id-first");
+    // held by another thread, as the request runs on this one and the lock is reentrant
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread holder = new Thread(() -> {
+      first.getLock().lock();
+      try {
+        locked.countDown();
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        first.getLock().unlock();
+      }
+    });
+    holder.start();
+    locked.await();
+    try {
+      MvcResult result = this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+              .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":30}"))
+              .andExpect(status().isAccepted())
+              .andExpect(jsonPath("$.status").value("PENDING"))
+              .andReturn();
+      transferId = JsonPath.read(result.getResponse().getContentAsString(), "$.transferId");
+      assertThat(result.getResponse().getHeader("Location")).isEqualTo("/v1/accounts/transfer/" + transferId);
+    } finally {
+      release.countDown();
+      holder.join();
+    }
+
+    // the ticket is completed just after the balances change, so wait for the ticket itself
+    long deadline = System.currentTimeMillis() + 5000;
+    while (transferRetryScheduler.getTicket(transferId).getStatus() == TransferStatus.PENDING
+            && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    this.mockMvc.perform(get("/v1/accounts/transfer/" + transferId))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("COMPLETED"));
+    assertThat(accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("130");
+    this.mockMvc.perform(get("/v1/accounts/transfer/no-such-transfer")).andExpect(status().isNotFound());
+    this.mockMvc.perform(get("/v1/metrics"))
+            .andExpect(jsonPath("$.retries.completed").isNumber())
+            .andExpect(jsonPath("$.transfers.completions.afterRetry").isNumber());
+  }
+
+  @Test
+  public void queryAccounts() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal("20.5")));
+
+    this.mockMvc.perform(post("/v1/accounts/query").contentType(MediaType.APPLICATION_JSON)
+            .content("[\"Id-second\",\"Id-missing\",\"Id-first\"]"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.found").value(2))
+            .andExpect(jsonPath("$.missing").value(1))
+            .andExpect(jsonPath("$.accounts[0].accountId").value("Id-second"))
+            .andExpect(jsonPath("$.accounts[0].balance").value(20.5))
+            .andExpect(jsonPath("$.accounts[1].status").value("NOT_FOUND"))
+            .andExpect(jsonPath("$.accounts[1].balance").doesNotExist())
+            .andExpect(jsonPath("$.accounts[2].balance").value(100));
+  }
+
+  @Test
+  public void importAccountsNdjson() throws Exception {
+    this.accountsService.createAccount(new Account("Id-existing", new BigDecimal(1)));
+
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 2500; i++) {
+      body.append("{\"accountId\":\"Id-").append(i).append("\",\"balance\":").append(i).append("}\n");
+    }
+    body.append("{\"accountId\":\"Id-existing\",\"balance\":5}\n");
+    body.append("{\"accountId\":\"Id-7\",\"balance\":5}\n");
+    body.append("{\"accountId\":\"Id-negative\",\"balance\":-5}\n");
+    body.append("not json\n");
+
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("application/x-ndjson").content(body.toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.received").value(2504))
+            .andExpect(jsonPath("$.created").value(2500))
+            .andExpect(jsonPath("$.duplicates").value(2))
+            .andExpect(jsonPath("$.invalid").value(2))
+            .andExpect(jsonPath("$.errors[0]").value("line 2503: Initial balance must be positive."));
+
+    assertThat(accountsService.getAccount("Id-2499").getBalance()).isEqualByComparingTo("2499");
+    assertThat(accountsService.getAccount("Id-7").getBalance()).isEqualByComparingTo("7");
+    assertThat(accountsService.getAccount("Id-existing").getBalance()).isEqualByComparingTo("1");
+  }
+
+  @Test
+  public void importAccountsCsv() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("text/csv")
+            .content("accountId,balance\nId-first,100.50\nId-second, 20\nId-third\nId-first,1\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.received").value(4))
+            .andExpect(jsonPath("$.created").value(2))
+            .andExpect(jsonPath("$.duplicates").value(1))
+            .andExpect(jsonPath("$.duplicateIds[0]").value("Id-first"))
+            .andExpect(jsonPath("$.errors[0]").value("line 4: expected accountId,balance"));
+
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("100.50");
+    assertThat(accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("20");
+  }
+
+  @Test
+  public void listAccountsByCursor() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(100 + i)));
+    }
+
+    String firstPage = this.mockMvc.perform(get("/v1/accounts").param("limit", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accounts.length()").value(2))
+            .andExpect(jsonPath("$.accounts[0].accountId").value("Id-0"))
+            .andExpect(jsonPath("$.accounts[1].balance").value(101))
+            .andReturn().getResponse().getContentAsString();
+    String cursor = JsonPath.read(firstPage, "$.nextCursor");
+
+    String secondPage = this.mockMvc.perform(get("/v1/accounts").param("limit", "2").param("cursor", cursor))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accounts[0].accountId").value("Id-2"))
+            .andExpect(jsonPath("$.accounts[1].accountId").value("Id-3"))
+            .andReturn().getResponse().getContentAsString();
+    cursor = JsonPath.read(secondPage, "$.nextCursor");
+
+    this.mockMvc.perform(get("/v1/accounts").param("limit", "2").param("cursor", cursor))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accounts.length()").value(1))
+            .andExpect(jsonPath("$.accounts[0].accountId").value("Id-4"))
+            .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+    this.mockMvc.perform(get("/v1/accounts").param("cursor", "not a cursor"))
+            .andExpect(status().isBadRequest());
+    this.mockMvc.perform(get("/v1/accounts").param("limit", "0"))
+            .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void exportAccountsAsNdjson() throws Exception {
+    accountsService.createAccount(new Account("Id-first", new BigDecimal("100.50")));
+    accountsService.createAccount(new Account("Id-second", new BigDecimal(20)));
+
+    this.mockMvc.perform(get("/v1/accounts").accept("application/x-ndjson"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+            .andExpect(content().string("{\"accountId\":\"Id-first\",\"balance\":100.50}\n"
+                    + "{\"accountId\":\"Id-second\",\"balance\":20}\n"));
+  }
+
+  @Test
+  public void transferRetriesWithIdempotencyKeyMoveMoneyOnce() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(0)));
+    String transfer = "{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":60}";
+
+    for (int attempt = 0; attempt < 3; attempt++) {
+      this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+              .header("Idempotency-Key", "retry-test-1").content(transfer))
+              .andExpect(status().isAccepted());
+    }
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("40");
+    assertThat(accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("60");
+
+    // a new key is a new transfer, and its rejection is replayed to retries as well
+    for (int attempt = 0; attempt < 2; attempt++) {
+      this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+              .header("Idempotency-Key", "retry-test-2").content(transfer))
+              .andExpect(status().isForbidden());
+    }
+
+    this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+            .header("Idempotency-Key", "retry-test-1")
+            .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":10}"))
+            .andExpect(status().isConflict());
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("40");
+
+    this.mockMvc.perform(get("/v1/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.idempotency.replays").isNumber())
+            .andExpect(jsonPath("$.idempotency.hitRate").isNumber())
+            .andExpect(jsonPath("$.idempotency.estimatedBytes").isNumber());
+  }
+
+  @Test
+  public void asyncTransfer() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(0)));
+
+    MvcResult accepted = this.mockMvc.perform(put("/v1/accounts/transfer/async").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":30}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    this.mockMvc.perform(asyncDispatch(accepted)).andExpect(status().isAccepted());
+
+    MvcResult rejected = this.mockMvc.perform(put("/v1/accounts/transfer/async").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":300}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    this.mockMvc.perform(asyncDispatch(rejected)).andExpect(status().isForbidden());
+
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("70");
+    assertThat(accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("30");
+  }
+
+  @Test
+  public void multiLegTransfer() throws Exception {
+    this.accountsService.createAccount(new Account("Id-customer", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-merchant", BigDecimal.ZERO));
+    this.accountsService.createAccount(new Account("Id-fees", BigDecimal.ZERO));
+
+    this.mockMvc.perform(put("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"debits\":[{\"accountId\":\"Id-customer\",\"amount\":60}],"
+                    + "\"credits\":[{\"accountId\":\"Id-merchant\",\"amount\":58},{\"accountId\":\"Id-fees\",\"amount\":2}]}"))
+            .andExpect(status().isAccepted());
+    this.mockMvc.perform(put("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"debits\":[{\"accountId\":\"Id-customer\",\"amount\":60}],"
+                    + "\"credits\":[{\"accountId\":\"Id-merchant\",\"amount\":60}]}"))
+            .andExpect(status().isForbidden());
+    this.mockMvc.perform(put("/v1/accounts/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+            .content("{\"debits\":[{\"accountId\":\"Id-customer\",\"amount\":1}],"
+                    + "\"credits\":[{\"accountId\":\"Id-missing\",\"amount\":1}]}"))
+            .andExpect(status().isNotFound());
+
+    assertThat(accountsService.getAccount("Id-customer").getBalance()).isEqualByComparingTo("40");
+    assertThat(accountsService.getAccount("Id-merchant").getBalance()).isEqualByComparingTo("58");
+    assertThat(accountsService.getAccount("Id-fees").getBalance()).isEqualByComparingTo("2");
+  }
+
+  @Test
+  public void transactionHistoryIsPaged() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", BigDecimal.ZERO));
+    for (int amount = 1; amount <= 3; amount++) {
+      this.mockMvc.perform(put("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+              .content("{\"fromAccountId\":\"Id-first\",\"toAccountId\":\"Id-second\",\"amount\":" + amount + "}"))
+              .andExpect(status().isAccepted());
+    }
+
+    MvcResult firstPage = this.mockMvc.perform(get("/v1/accounts/Id-second/transactions?limit=2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.transactions.length()").value(2))
+            .andExpect(jsonPath("$.transactions[0].amount").value(3))
+            .andExpect(jsonPath("$.transactions[0].counterpartyAccountId").value("Id-first"))
+            .andReturn();
+    String cursor = JsonPath.read(firstPage.getResponse().getContentAsString(), "$.nextCursor");
+    this.mockMvc.perform(get("/v1/accounts/Id-second/transactions?limit=2&cursor=" + cursor))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.transactions.length()").value(1))
+            .andExpect(jsonPath("$.transactions[0].amount").value(1))
+            .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+    this.mockMvc.perform(get("/v1/accounts/Id-first/transactions?cursor=" + cursor)).andExpect(status().isBadRequest());
+    this.mockMvc.perform(get("/v1/accounts/Id-first/transactions?limit=0")).andExpect(status().isBadRequest());
+    this.mockMvc.perform(get("/v1/accounts/Id-missing/transactions")).andExpect(status().isNotFound());
+  }
 }
@@ -2,18 +2,38 @@ package com.db.awmd.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountQueryResult;
+import com.db.awmd.challenge.domain.AccountTransaction;
+import com.db.awmd.challenge.domain.AccountTransactionPage;
+import com.db.awmd.challenge.domain.AccountQueryStatus;
+import com.db.awmd.challenge.domain.BatchTransferMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.domain.TransferRequestDetails;
 import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
 import com.db.awmd.challenge.service.AccountsService;
 import java.math.BigDecimal;
 
+import com.db.awmd.challenge.domain.SyncAccount;
 import com.db.awmd.challenge.service.NotificationService;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -81,6 +101,7 @@ public class AccountsServiceTest {
       this.accountsService.getAccount(uniqueId);
     } catch (AccountDoesNotExistsException ex) {
       assertThat(ex.getMessage()).isEqualTo("Account id " + uniqueId + " does not exists!");
+      assertThat(ex.getStackTrace()).isEmpty();
     }
 
   }
@@ -116,6 +137,7 @@ public class AccountsServiceTest {
       this.accountsService.transferMoney(new TransferRequestDetails(fromAccountId, toAccountId, new BigDecimal(10000)));
     }catch (InsufficientBalanceException insufficientBalanceException){
       assertThat(insufficientBalanceException.getMessage()).isEqualTo("Insufficient account balance in accountId:"+fromAccountId+"to perform this transaction");
+      assertThat(insufficientBalanceException.getStackTrace()).isEmpty();
     }
   }
 
@@ -138,9 +160,220 @@ public class AccountsServiceTest {
     fromAccount.setBalance(new BigDecimal(900));
     toAccount.setBalance(new BigDecimal(1100));
 
-    verify(notificationService, times(1)).notifyAboutTransfer(fromAccount,"Amount Debited: " + amountToTransfer + ". You have successfully transferred amount: " + amountToTransfer + " to AccountID: "+ toAccount.getAccountId());
-    verify(notificationService, times(1)).notifyAboutTransfer(toAccount,"Amount Credited: " + amountToTransfer + ". You have received amount: " + amountToTransfer + " from AccountID: " + fromAccount.getAccountId());
+    verify(notificationService, timeout(1000).times(1)).notifyAboutTransfer(fromAccount,"Amount Debited: " + amountToTransfer + ". You have successfully transferred amount: " + amountToTransfer + " to AccountID: "+ toAccount.getAccountId());
+    verify(notificationService, timeout(1000).times(1)).notifyAboutTransfer(toAccount,"Amount Credited: " + amountToTransfer + ". You have received amount: " + amountToTransfer + " from AccountID: " + fromAccount.getAccountId());
   }
 
+  @Test
+  public void transferAmountCrossingPairsAreNotBoundedByLockTimeout() throws Exception {
+    String firstAccountId = "Id-first";
+    String secondAccountId = "Id-second";
+    int transfersPerThread = 2000;
+
+    this.accountsService.createAccount(new Account(firstAccountId, new BigDecimal(transfersPerThread)));
+    this.accountsService.createAccount(new Account(secondAccountId, new BigDecimal(transfersPerThread)));
+
+    // Every transfer must complete: a lock timeout or any other failure in a worker fails the test
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService workers = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> forward = workers.submit(crossingTransfers(start, firstAccountId, secondAccountId, transfersPerThread));
+      Future<?> backward = workers.submit(crossingTransfers(start, secondAccountId, firstAccountId, transfersPerThread));
+      start.countDown();
+      forward.get(30, TimeUnit.SECONDS);
+      backward.get(30, TimeUnit.SECONDS);
+    } finally {
+      workers.shutdownNow();
+    }
+
+    assertThat(this.accountsService.getAccount(firstAccountId).getBalance()).isEqualByComparingTo(String.valueOf(transfersPerThread));
+    assertThat(this.accountsService.getAccount(secondAccountId).getBalance()).isEqualByComparingTo(String.valueOf(transfersPerThread));
+  }
+
+  @Test
+  public void transferAmountFailsFastWhenLockIsHeld() throws Exception {
+    String fromAccountId = "Id-fromAccount";
+    String toAccountId = "Id-toAccount";
+
+    this.accountsService.createAccount(new Account(fromAccountId, new BigDecimal(1000)));
+    this.accountsService.createAccount(new Account(toAccountId, new BigDecimal(1000)));
 
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    SyncAccount toAccount = (SyncAccount) this.accountsService.getAccount(toAccountId);
+    Thread holder = new Thread(() -> {
+      toAccount.getLock().lock();
+      try {
+        locked.countDown();
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        toAccount.getLock().unlock();
+      }
+    });
+    holder.start();
+    locked.await();
+
+    try {
+      this.accountsService.transferMoney(new TransferRequestDetails(fromAccountId, toAccountId, new BigDecimal(100)));
+      fail("Should have failed when the account lock cannot be taken");
+    } catch (TransferLockTimeoutException ex) {
+      assertThat(ex.getMessage()).contains(toAccountId);
+    } finally {
+      release.countDown();
+      holder.join();
+    }
+
+    assertThat(this.accountsService.getAccount(fromAccountId).getBalance()).isEqualByComparingTo("1000");
+    assertThat(((SyncAccount) this.accountsService.getAccount(fromAccountId)).getLock().isLocked()).isFalse();
+  }
+
+  @Test
+  public void getAccountSnapshotDoesNotWaitForTheLock() throws Exception {
+    String accountId = "Id-snapshot";
+    this.accountsService.createAccount(new Account(accountId, new BigDecimal(1000)));
+    this.accountsService.createAccount(new Account("Id-other", new BigDecimal(1000)));
+    SyncAccount account = (SyncAccount) this.accountsService.getAccount(accountId);
+
+    // Held by this thread, so any read that needed the lock from another thread would block
+    account.getLock().lock();
+    Account snapshot;
+    try {
+      Account[] read = new Account[1];
+      Thread reader = new Thread(() -> {
+        try {
+          read[0] = this.accountsService.getAccountSnapshot(accountId);
+        } catch (AccountDoesNotExistsException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      reader.start();
+      reader.join(1000);
+      assertThat(reader.isAlive()).isFalse();
+      snapshot = read[0];
+    } finally {
+      account.getLock().unlock();
+    }
+    assertThat(snapshot.getBalance()).isEqualByComparingTo("1000");
+
+    this.accountsService.transferMoney(new TransferRequestDetails(accountId, "Id-other", new BigDecimal(100)));
+    assertThat(snapshot.getBalance()).isEqualByComparingTo("1000");
+    assertThat(this.accountsService.getAccountSnapshot(accountId).getBalance()).isEqualByComparingTo("900");
+  }
+
+  @Test
+  public void queryAccountsIsPointInTimeUnderConcurrentTransfers() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(1000)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(1000)));
+
+    Thread writer = new Thread(() -> {
+      for (int i = 0; i < 5000; i++) {
+        try {
+          this.accountsService.transferMoney(new TransferRequestDetails(
+                  i % 2 == 0 ? "Id-first" : "Id-second", i % 2 == 0 ? "Id-second" : "Id-first", new BigDecimal(7)));
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    });
+    writer.start();
+    while (writer.isAlive()) {
+      AccountQueryResult result = this.accountsService.queryAccounts(Arrays.asList("Id-first", "Id-missing", "Id-second"));
+      assertThat(result.getFound()).isEqualTo(2);
+      assertThat(result.getAccounts().get(1).getStatus()).isEqualTo(AccountQueryStatus.NOT_FOUND);
+      BigDecimal total = result.getAccounts().get(0).getBalance().add(result.getAccounts().get(2).getBalance());
+      assertThat(total).isEqualByComparingTo("2000");
+    }
+    writer.join();
+  }
+
+  @Test
+  public void transferBatchNetsRunningBalances() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(0)));
+
+    BatchTransferResult result = this.accountsService.transferBatch(Arrays.asList(
+            new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(100)),
+            new TransferRequestDetails("Id-second", "Id-first", new BigDecimal(70)),
+            new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(50))), BatchTransferMode.ALL_OR_NOTHING);
+
+    assertThat(result.getCompleted()).isEqualTo(3);
+    assertThat(result.getResults()).extracting("status").containsOnly(TransferStatus.COMPLETED);
+    assertThat(this.accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("20");
+    assertThat(this.accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("80");
+  }
+
+  @Test
+  public void transactionsRecordOnlyAppliedTransfers() throws Exception {
+    this.accountsService.createAccount(new Account("Id-history-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-history-second", BigDecimal.ZERO));
+
+    this.accountsService.transferBatch(Arrays.asList(
+            new TransferRequestDetails("Id-history-first", "Id-history-second", new BigDecimal(60)),
+            new TransferRequestDetails("Id-history-first", "Id-history-second", new BigDecimal(60)),
+            new TransferRequestDetails("Id-history-second", "Id-history-first", new BigDecimal(10))), BatchTransferMode.BEST_EFFORT);
+
+    AccountTransactionPage page = this.accountsService.getTransactions("Id-history-first", null, 10);
+    assertThat(page.getTransactions()).extracting(AccountTransaction::getAmount)
+            .containsExactly(new BigDecimal(10), new BigDecimal(-60));
+    assertThat(page.getNextCursor()).isNull();
+  }
+
+  @Test
+  public void transferMultiLegSplitsOneDebit() throws Exception {
+    this.accountsService.createAccount(new Account("Id-customer", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-merchant", BigDecimal.ZERO));
+    this.accountsService.createAccount(new Account("Id-fees", BigDecimal.ZERO));
+    NotificationService notificationService = Mockito.mock(NotificationService.class);
+    this.accountsService.setNotificationService(notificationService);
+
+    this.accountsService.transferMultiLeg(new MultiLegTransferRequest(
+            Arrays.asList(new TransferLeg("Id-customer", new BigDecimal(50))),
+            Arrays.asList(new TransferLeg("Id-merchant", new BigDecimal("48.50")), new TransferLeg("Id-fees", new BigDecimal("1.50")))));
+
+    assertThat(this.accountsService.getAccount("Id-customer").getBalance()).isEqualByComparingTo("50");
+    assertThat(this.accountsService.getAccount("Id-merchant").getBalance()).isEqualByComparingTo("48.50");
+    assertThat(this.accountsService.getAccount("Id-fees").getBalance()).isEqualByComparingTo("1.50");
+    verify(notificationService, timeout(1000)).notifyAboutTransfer(
+        this.accountsService.getAccount("Id-fees"), "Multi-leg transfer applied. Net balance change: 1.50");
+  }
+
+  @Test
+  public void transferMultiLegIsAllOrNothing() throws Exception {
+    this.accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-second", new BigDecimal(10)));
+    this.accountsService.createAccount(new Account("Id-merchant", BigDecimal.ZERO));
+
+    try {
+      this.accountsService.transferMultiLeg(new MultiLegTransferRequest(
+              Arrays.asList(new TransferLeg("Id-first", new BigDecimal(50)), new TransferLeg("Id-second", new BigDecimal(50))),
+              Arrays.asList(new TransferLeg("Id-merchant", new BigDecimal(100)))));
+      fail("Should have failed on insufficient balance");
+    } catch (InsufficientBalanceException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Insufficient account balance in accountId:Id-secondto perform this transaction");
+    }
+    try {
+      this.accountsService.transferMultiLeg(new MultiLegTransferRequest(
+              Arrays.asList(new TransferLeg("Id-first", new BigDecimal(50))),
+              Arrays.asList(new TransferLeg("Id-merchant", new BigDecimal(40)))));
+      fail("Should have rejected unbalanced legs");
+    } catch (InvalidBalanceException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Debits total 50 but credits total 40");
+    }
+
+    assertThat(this.accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("100");
+    assertThat(this.accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("10");
+    assertThat(this.accountsService.getAccount("Id-merchant").getBalance()).isEqualByComparingTo("0");
+  }
+
+  private Callable<Void> crossingTransfers(CountDownLatch start, String fromAccountId, String toAccountId, int count) {
+    return () -> {
+      start.await();
+      for (int n = 0; n < count; n++) {
+        this.accountsService.transferMoney(new TransferRequestDetails(fromAccountId, toAccountId, BigDecimal.ONE));
+      }
+      return null;
+    };
+  }
 }
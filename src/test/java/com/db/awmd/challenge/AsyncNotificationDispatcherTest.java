@@ -0,0 +1,107 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.NotificationService;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class AsyncNotificationDispatcherTest {
+
+  private AsyncNotificationDispatcher dispatcher;
+
+  @After
+  public void shutdownDispatcher() throws InterruptedException {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void coalescesMessagesPerAccountWithinABatch() throws Exception {
+    dispatcher = new AsyncNotificationDispatcher(100, 100, NotificationBackpressure.BLOCK, 1000);
+    CountDownLatch release = new CountDownLatch(1);
+    Account blocker = new Account("Id-blocker");
+    NotificationService notificationService = Mockito.mock(NotificationService.class);
+    Mockito.doAnswer(invocation -> {
+      release.await();
+      return null;
+    }).when(notificationService).notifyAboutTransfer(Mockito.eq(blocker), Mockito.anyString());
+
+    Account first = new Account("Id-first");
+    Account second = new Account("Id-second");
+    dispatcher.publishNetChange(notificationService, blocker, BigDecimal.ONE);
+    Thread.sleep(200);
+    dispatcher.publishTransfer(notificationService, first, second, BigDecimal.ONE);
+    dispatcher.publishTransfer(notificationService, first, second, BigDecimal.TEN);
+    release.countDown();
+
+    verify(notificationService, timeout(1000)).notifyAboutTransfer(first,
+            "Amount Debited: 1. You have successfully transferred amount: 1 to AccountID: Id-second\n"
+                    + "Amount Debited: 10. You have successfully transferred amount: 10 to AccountID: Id-second");
+    verify(notificationService, timeout(1000)).notifyAboutTransfer(second,
+            "Amount Credited: 1. You have received amount: 1 from AccountID: Id-first\n"
+                    + "Amount Credited: 10. You have received amount: 10 from AccountID: Id-first");
+    assertThat(dispatcher.getMetrics()).containsEntry("coalesced", 2L);
+  }
+
+  @Test
+  public void dropsWhenQueueIsFull() throws Exception {
+    dispatcher = new AsyncNotificationDispatcher(2, 1, NotificationBackpressure.DROP, 0);
+    CountDownLatch release = new CountDownLatch(1);
+    NotificationService notificationService = (account, transferDescription) -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    Account account = new Account("Id-123");
+    dispatcher.publishNetChange(notificationService, account, BigDecimal.ONE);
+    Thread.sleep(200);
+    for (int i = 0; i < 5; i++) {
+      dispatcher.publishNetChange(notificationService, account, BigDecimal.ONE);
+    }
+    release.countDown();
+
+    assertThat(dispatcher.getMetrics()).containsEntry("published", 6L).containsEntry("dropped", 3L);
+  }
+
+  @Test
+  public void spillsWhenQueueIsFullAndDeliversInPublicationOrder() throws Exception {
+    dispatcher = new AsyncNotificationDispatcher(2, 1, NotificationBackpressure.SPILL, 0);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> delivered = new CopyOnWriteArrayList<>();
+    NotificationService notificationService = (account, transferDescription) -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      delivered.add(account.getAccountId());
+    };
+
+    dispatcher.publishNetChange(notificationService, new Account("Id-0"), BigDecimal.ONE);
+    Thread.sleep(200);
+    for (int i = 1; i <= 5; i++) {
+      dispatcher.publishNetChange(notificationService, new Account("Id-" + i), BigDecimal.ONE);
+    }
+    assertThat(dispatcher.getMetrics()).containsEntry("spilled", 3L);
+    release.countDown();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (delivered.size() < 6 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(delivered).containsExactly("Id-0", "Id-1", "Id-2", "Id-3", "Id-4", "Id-5");
+  }
+}
@@ -0,0 +1,90 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.TransferLockTimeoutException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncTransferExecutor;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"transfer.async.threads=1", "transfer.lock-timeout=500"})
+public class AsyncTransferExecutorTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private AsyncTransferExecutor asyncTransferExecutor;
+
+  @Before
+  public void clearAccountsData() {
+    accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void transfersWaitingForALockDoNotHoldTheWorker() throws Exception {
+    accountsService.createAccount(new Account("Id-hot", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-sink", new BigDecimal(0)));
+    accountsService.createAccount(new Account("Id-other", new BigDecimal(100)));
+    SyncAccount hot = (SyncAccount) accountsService.getAccount("Id-hot");
+
+    List<CompletableFuture<Void>> waiting = new ArrayList<>();
+    hot.getLock().lock();
+    try {
+      for (int i = 0; i < 5; i++) {
+        waiting.add(asyncTransferExecutor.submit(new TransferRequestDetails("Id-hot", "Id-sink", new BigDecimal(10))));
+      }
+      // the only worker is free to serve unrelated transfers meanwhile
+      asyncTransferExecutor.submit(new TransferRequestDetails("Id-other", "Id-sink", new BigDecimal(1))).get(200, TimeUnit.MILLISECONDS);
+      assertThat(waiting.stream().anyMatch(CompletableFuture::isDone)).isFalse();
+    } finally {
+      hot.getLock().unlock();
+    }
+
+    CompletableFuture.allOf(waiting.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+    assertThat(accountsService.getAccount("Id-hot").getBalance()).isEqualByComparingTo("50");
+    assertThat(accountsService.getAccount("Id-sink").getBalance()).isEqualByComparingTo("51");
+  }
+
+  @Test
+  public void failsLikeTheBlockingTransfer() throws Exception {
+    accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-second", new BigDecimal(0)));
+
+    try {
+      asyncTransferExecutor.submit(new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(500))).get(5, TimeUnit.SECONDS);
+      fail("Should have failed for insufficient balance");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(InsufficientBalanceException.class);
+    }
+
+    SyncAccount first = (SyncAccount) accountsService.getAccount("Id-first");
+    first.getLock().lock();
+    try {
+      asyncTransferExecutor.submit(new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(10))).get(5, TimeUnit.SECONDS);
+      fail("Should have timed out waiting for the lock");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(TransferLockTimeoutException.class);
+    } finally {
+      first.getLock().unlock();
+    }
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("100");
+  }
+}
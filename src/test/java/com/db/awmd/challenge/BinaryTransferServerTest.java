@@ -0,0 +1,93 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.tcp.BinaryTransferProtocol;
+import com.db.awmd.challenge.tcp.BinaryTransferServer;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"transfer.binary.enabled=true", "transfer.binary.port=0", "transfer.binary.max-in-flight=4"})
+public class BinaryTransferServerTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private BinaryTransferServer binaryTransferServer;
+
+  @Before
+  public void clearAccountsData() {
+    accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void pipelinedTransfersAreAllAnswered() throws Exception {
+    accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-second", new BigDecimal(0)));
+
+    try (SocketChannel channel = connect()) {
+      ByteBuffer requests = ByteBuffer.allocate(64 * 1024);
+      for (long requestId = 1; requestId <= 50; requestId++) {
+        BinaryTransferProtocol.writeRequest(requests, requestId, "Id-first", "Id-second", 150);
+      }
+      BinaryTransferProtocol.writeRequest(requests, 51, "Id-first", "Id-second", 100_000);
+      BinaryTransferProtocol.writeRequest(requests, 52, "Id-first", "Id-missing", 100);
+      BinaryTransferProtocol.writeRequest(requests, 53, "Id-first", "Id-second", 50);
+      requests.flip();
+      while (requests.hasRemaining()) {
+        channel.write(requests);
+      }
+
+      Map<Long, Byte> statuses = readResponses(channel, 53);
+      for (long requestId = 1; requestId <= 50; requestId++) {
+        assertThat(statuses.get(requestId)).isEqualTo(BinaryTransferProtocol.COMPLETED);
+      }
+      assertThat(statuses.get(51L)).isEqualTo(BinaryTransferProtocol.INSUFFICIENT_BALANCE);
+      assertThat(statuses.get(52L)).isEqualTo(BinaryTransferProtocol.ACCOUNT_NOT_FOUND);
+      assertThat(statuses.get(53L)).isEqualTo(BinaryTransferProtocol.INVALID_REQUEST);
+    }
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("25");
+    assertThat(accountsService.getAccount("Id-second").getBalance()).isEqualByComparingTo("75");
+  }
+
+  @Test
+  public void malformedFrameClosesTheConnection() throws Exception {
+    try (SocketChannel channel = connect()) {
+      channel.write((ByteBuffer) ByteBuffer.allocate(8).putInt(3).putInt(0).flip());
+      assertThat(channel.read(ByteBuffer.allocate(16))).isEqualTo(-1);
+    }
+    assertThat(binaryTransferServer.getMetrics().get("protocolErrors")).isNotEqualTo(0L);
+  }
+
+  private SocketChannel connect() throws IOException {
+    return SocketChannel.open(new InetSocketAddress("localhost", binaryTransferServer.getPort()));
+  }
+
+  private static Map<Long, Byte> readResponses(SocketChannel channel, int count) throws IOException {
+    ByteBuffer responses = ByteBuffer.allocate(count * BinaryTransferProtocol.RESPONSE_BYTES);
+    while (responses.hasRemaining()) {
+      assertThat(channel.read(responses)).isNotNegative();
+    }
+    responses.flip();
+    Map<Long, Byte> statuses = new HashMap<>();
+    while (responses.hasRemaining()) {
+      statuses.put(responses.getLong(), responses.get());
+    }
+    return statuses;
+  }
+}
@@ -0,0 +1,55 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.web.DomainJsonModule;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import org.junit.Test;
+
+public class DomainJsonModuleTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new DomainJsonModule());
+
+  @Test
+  public void readsTransferUnderEitherAmountNameSkippingUnknownFields() throws Exception {
+    TransferRequestDetails transfer = objectMapper.readValue("{\"fromAccountId\":\"Id-1\",\"note\":{\"tags\":[1,2]},"
+        + "\"toAccountId\":\"Id-2\",\"amount\":12.50,\"idempotencyKey\":\"key-1\"}", TransferRequestDetails.class);
+    assertThat(transfer).isEqualTo(new TransferRequestDetails("Id-1", "Id-2", new BigDecimal("12.50"), "key-1"));
+
+    transfer = objectMapper.readValue("{\"amountToTransfer\":\" 7 \",\"fromAccountId\":\"Id-1\",\"toAccountId\":2}",
+        TransferRequestDetails.class);
+    assertThat(transfer).isEqualTo(new TransferRequestDetails("Id-1", "2", new BigDecimal(7)));
+    assertThat(transfer.validate()).isNull();
+  }
+
+  @Test
+  public void missingFieldsBindAsNullAndFailValidation() throws Exception {
+    TransferRequestDetails transfer = objectMapper.readValue("{\"fromAccountId\":\"Id-1\",\"amount\":\"\"}",
+        TransferRequestDetails.class);
+    assertThat(transfer.getToAccountId()).isNull();
+    assertThat(transfer.getAmount()).isNull();
+    assertThat(transfer.validate()).isEqualTo("To Account Id cannot be null");
+
+    Account account = objectMapper.readValue("{}", Account.class);
+    assertThat(account.validate()).isEqualTo("accountId cannot be empty");
+    assertThat(objectMapper.readValue("{\"accountId\":\"Id-1\",\"balance\":-1}", Account.class).validate())
+        .isEqualTo("Initial balance must be positive.");
+  }
+
+  @Test(expected = JsonMappingException.class)
+  public void malformedAmountIsRejected() throws Exception {
+    objectMapper.readValue("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":\"ten\"}",
+        TransferRequestDetails.class);
+  }
+
+  @Test
+  public void accountRoundTrips() throws Exception {
+    String json = objectMapper.writeValueAsString(new Account("Id-123", new BigDecimal("123.45")));
+    assertThat(json).isEqualTo("{\"accountId\":\"Id-123\",\"balance\":123.45}");
+    assertThat(objectMapper.readValue(json, Account.class)).isEqualTo(new Account("Id-123", new BigDecimal("123.45")));
+  }
+}
@@ -0,0 +1,166 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.domain.BatchTransferMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FixedPointAccount;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.repository.AccountFactory;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FixedPointAccountTest {
+
+  private static final BigDecimal MAXIMUM_BALANCE = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+
+  private final AccountFactory accountFactory = new AccountFactory(BalanceRepresentation.FIXED_POINT, 2);
+
+  private final AsyncNotificationDispatcher notificationDispatcher =
+      new AsyncNotificationDispatcher(100, 10, NotificationBackpressure.DROP, 0);
+
+  private final AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory(accountFactory),
+      new OrderedAccountLocker(1000), notificationDispatcher);
+
+  @Before
+  public void setNotificationService() {
+    accountsService.setNotificationService((account, transferDescription) -> { });
+  }
+
+  @After
+  public void shutdownDispatcher() throws InterruptedException {
+    notificationDispatcher.shutdown();
+  }
+
+  @Test
+  public void storesBalanceAsMinorUnits() {
+    FixedPointAccount account = (FixedPointAccount) accountFactory.create(new Account("Id-123", new BigDecimal("123.45")));
+
+    assertThat(account.getMinorUnits()).isEqualTo(12345L);
+    assertThat(account.getBalance()).isEqualByComparingTo("123.45");
+  }
+
+  @Test
+  public void serializesBalanceAsDecimal() throws Exception {
+    FixedPointAccount account = (FixedPointAccount) accountFactory.create(new Account("Id-123", new BigDecimal("123.45")));
+
+    assertThat(new ObjectMapper().writeValueAsString(account)).isEqualTo("{\"accountId\":\"Id-123\",\"balance\":123.45}");
+  }
+
+  @Test
+  public void rejectsBalanceWithTooManyDecimalPlaces() {
+    try {
+      accountFactory.create(new Account("Id-123", new BigDecimal("1.005")));
+      fail("Should have rejected a balance finer than the configured scale");
+    } catch (InvalidBalanceException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Balance of account id Id-123 has more than 2 decimal places");
+    }
+  }
+
+  @Test
+  public void rejectsBalanceThatOverflowsMinorUnits() {
+    try {
+      accountFactory.create(new Account("Id-123", new BigDecimal(Long.MAX_VALUE)));
+      fail("Should have rejected a balance that does not fit in a long of minor units");
+    } catch (InvalidBalanceException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Balance of account id Id-123 exceeds the supported range");
+    }
+  }
+
+  @Test
+  public void transferIntoAccountAtMaximumBalanceIsRejectedBeforeTheDebit() throws Exception {
+    accountsService.createAccount(new Account("Id-sender", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-full", MAXIMUM_BALANCE));
+
+    try {
+      accountsService.transferMoney(new TransferRequestDetails("Id-sender", "Id-full", new BigDecimal("0.01")));
+      fail("Should have rejected a credit beyond the maximum balance");
+    } catch (InvalidBalanceException ex) {
+      assertThat(ex.getMessage()).startsWith("Balance of account id Id-full cannot take a change of 0.01");
+    }
+    assertThat(accountsService.getAccount("Id-sender").getBalance()).isEqualByComparingTo("100");
+    assertThat(accountsService.getAccount("Id-full").getBalance()).isEqualByComparingTo(MAXIMUM_BALANCE);
+  }
+
+  @Test
+  public void allOrNothingBatchOverflowingAReceiverChangesNothing() throws Exception {
+    accountsService.createAccount(new Account("Id-sender", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-other", BigDecimal.ZERO));
+    accountsService.createAccount(new Account("Id-full", MAXIMUM_BALANCE.subtract(new BigDecimal(5))));
+
+    BatchTransferResult result = accountsService.transferBatch(Arrays.asList(
+        new TransferRequestDetails("Id-sender", "Id-other", new BigDecimal(10)),
+        new TransferRequestDetails("Id-sender", "Id-full", new BigDecimal(3)),
+        new TransferRequestDetails("Id-sender", "Id-full", new BigDecimal(3))), BatchTransferMode.ALL_OR_NOTHING);
+
+    assertThat(result.getCompleted()).isZero();
+    assertThat(result.getResults()).extracting(TransferResult::getStatus)
+        .containsExactly(TransferStatus.ABORTED, TransferStatus.ABORTED, TransferStatus.INVALID_REQUEST);
+    assertThat(accountsService.getAccount("Id-sender").getBalance()).isEqualByComparingTo("100");
+    assertThat(accountsService.getAccount("Id-other").getBalance()).isEqualByComparingTo("0");
+    assertThat(accountsService.getAccount("Id-full").getBalance())
+        .isEqualByComparingTo(MAXIMUM_BALANCE.subtract(new BigDecimal(5)));
+  }
+
+  @Test
+  public void multiLegTransferOverflowingACreditChangesNothing() throws Exception {
+    accountsService.createAccount(new Account("Id-sender", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-other", BigDecimal.ZERO));
+    accountsService.createAccount(new Account("Id-full", MAXIMUM_BALANCE));
+
+    try {
+      accountsService.transferMultiLeg(new MultiLegTransferRequest(
+          Arrays.asList(new TransferLeg("Id-sender", new BigDecimal(20))),
+          Arrays.asList(new TransferLeg("Id-other", new BigDecimal(10)), new TransferLeg("Id-full", new BigDecimal(10)))));
+      fail("Should have rejected a credit beyond the maximum balance");
+    } catch (InvalidBalanceException ex) {
+      assertThat(ex.getMessage()).startsWith("Balance of account id Id-full cannot take a change of 10");
+    }
+    assertThat(accountsService.getAccount("Id-sender").getBalance()).isEqualByComparingTo("100");
+    assertThat(accountsService.getAccount("Id-other").getBalance()).isEqualByComparingTo("0");
+    assertThat(accountsService.getAccount("Id-full").getBalance()).isEqualByComparingTo(MAXIMUM_BALANCE);
+  }
+
+  @Test
+  public void concurrentDebitsNeverOverdraw() throws Exception {
+    FixedPointAccount account = new FixedPointAccount("Id-123", new BigDecimal(1000), 2);
+    FixedPointAccount receiver = new FixedPointAccount("Id-456", BigDecimal.ZERO, 2);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      threads.add(new Thread(() -> {
+        for (int n = 0; n < 50_000; n++) {
+          if (account.tryDebitMinorUnits(1)) {
+            receiver.creditMinorUnits(1);
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(account.getMinorUnits()).isZero();
+    assertThat(receiver.getBalance()).isEqualByComparingTo("1000");
+  }
+}
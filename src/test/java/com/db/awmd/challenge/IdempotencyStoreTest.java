@@ -0,0 +1,139 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.IdempotencyKeyConflictException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.IdempotencyStore;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class IdempotencyStoreTest {
+
+  private final TransferRequestDetails request = new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(10));
+
+  @Test
+  public void replaysTheRecordedOutcome() {
+    IdempotencyStore store = new IdempotencyStore(60_000, 100, 4, 1000);
+
+    assertThat(store.claim("key", request)).isNull();
+    store.complete("key", TransferStatus.INSUFFICIENT_BALANCE, "Insufficient balance");
+
+    IdempotencyStore.Outcome outcome = store.claim("key", new TransferRequestDetails("Id-first", "Id-second", new BigDecimal("10.00")));
+    assertThat(outcome.getStatus()).isEqualTo(TransferStatus.INSUFFICIENT_BALANCE);
+    assertThat(outcome.getMessage()).isEqualTo("Insufficient balance");
+    assertThat(store.getMetrics()).containsEntry("replays", 1L).containsEntry("entries", 1L);
+
+    try {
+      store.claim("key", new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(11)));
+      fail("Should have rejected the key for a different transfer");
+    } catch (IdempotencyKeyConflictException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Idempotency key key was used for a different transfer");
+    }
+  }
+
+  @Test
+  public void releasedKeysRunAgain() {
+    IdempotencyStore store = new IdempotencyStore(60_000, 100, 4, 1000);
+
+    assertThat(store.claim("key", request)).isNull();
+    store.release("key");
+    assertThat(store.claim("key", request)).isNull();
+  }
+
+  @Test
+  public void retryWaitsForTheOriginalInFlight() throws Exception {
+    IdempotencyStore store = new IdempotencyStore(60_000, 100, 4, 5000);
+    assertThat(store.claim("key", request)).isNull();
+
+    CompletableFuture<IdempotencyStore.Outcome> retry = CompletableFuture.supplyAsync(() -> store.claim("key", request));
+    Thread.sleep(100);
+    assertThat(retry.isDone()).isFalse();
+
+    store.complete("key", TransferStatus.COMPLETED, null);
+    assertThat(retry.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(TransferStatus.COMPLETED);
+  }
+
+  @Test
+  public void evictsOldestCompletedEntriesBeyondCapacity() {
+    IdempotencyStore store = new IdempotencyStore(60_000, 4, 1, 1000);
+    assertThat(store.claim("pending", request)).isNull();
+    for (int i = 0; i < 10; i++) {
+      String key = "key-" + i;
+      assertThat(store.claim(key, request)).isNull();
+      store.complete(key, TransferStatus.COMPLETED, null);
+    }
+
+    assertThat(store.getMetrics()).containsEntry("entries", 4L).containsEntry("evicted", 7L);
+    // the oldest keys are forgotten, the transfer still in progress is kept
+    assertThat(store.claim("key-0", request)).isNull();
+    store.complete("pending", TransferStatus.COMPLETED, null);
+    assertThat(store.claim("pending", request).getStatus()).isEqualTo(TransferStatus.COMPLETED);
+  }
+
+  @Test
+  public void expiresEntriesAfterTheTtl() throws Exception {
+    IdempotencyStore store = new IdempotencyStore(50, 100, 4, 1000);
+    assertThat(store.claim("key", request)).isNull();
+    store.complete("key", TransferStatus.COMPLETED, null);
+
+    Thread.sleep(100);
+    assertThat(store.claim("key", request)).isNull();
+    assertThat(store.getMetrics()).containsEntry("expired", 1L);
+  }
+
+  @Test
+  public void anErrorDuringTheTransferReleasesTheKey() throws Exception {
+    IdempotencyStore store = new IdempotencyStore(60_000, 100, 4, 5000);
+    AtomicBoolean overflow = new AtomicBoolean(true);
+    AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory() {
+      @Override
+      public Account getAccount(String accountId) throws AccountDoesNotExistsException {
+        if (overflow.getAndSet(false)) {
+          throw new StackOverflowError();
+        }
+        return super.getAccount(accountId);
+      }
+    };
+    accountsRepository.createAccount(new Account("Id-first", new BigDecimal(100)));
+    accountsRepository.createAccount(new Account("Id-second", BigDecimal.ZERO));
+    AsyncNotificationDispatcher notificationDispatcher = new AsyncNotificationDispatcher(100, 10, NotificationBackpressure.DROP, 0);
+    AccountsService accountsService = new AccountsService(accountsRepository, new OrderedAccountLocker(1000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+    accountsService.setIdempotencyStore(store);
+    TransferRequestDetails keyed = new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(10), "key");
+    try {
+      try {
+        accountsService.transferMoney(keyed);
+        fail("Should have propagated the error");
+      } catch (StackOverflowError expected) {
+        // the claim on the key must not outlive the failed attempt
+      }
+
+      CompletableFuture<Void> retry = CompletableFuture.runAsync(() -> {
+        try {
+          accountsService.transferMoney(keyed);
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      retry.get(3, TimeUnit.SECONDS);
+      assertThat(accountsRepository.getAccount("Id-first").getBalance()).isEqualByComparingTo("90");
+      assertThat(accountsRepository.getAccount("Id-second").getBalance()).isEqualByComparingTo("10");
+    } finally {
+      notificationDispatcher.shutdown();
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.repository.AccountFactory;
+import com.db.awmd.challenge.repository.AccountJournal;
+import com.db.awmd.challenge.repository.AccountSnapshots;
+import com.db.awmd.challenge.repository.JournalingAccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalingAccountsRepositoryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AccountFactory accountFactory = new AccountFactory(BalanceRepresentation.BIG_DECIMAL, 2);
+  private AsyncNotificationDispatcher notificationDispatcher;
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    notificationDispatcher = new AsyncNotificationDispatcher(1000, 100, NotificationBackpressure.DROP, 0);
+    directory = folder.newFolder("journal").toPath();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    notificationDispatcher.shutdown();
+  }
+
+  @Test
+  public void replaysAccountsAndTransfersOnRestart() throws Exception {
+    JournalingAccountsRepository repository = open(1 << 20);
+    AccountsService accountsService = service(repository);
+    accountsService.createAccount(new Account("Id-first", new BigDecimal("100.50")));
+    accountsService.createAccount(new Account("Id-second", new BigDecimal(10)));
+    accountsService.transferMoney(new TransferRequestDetails("Id-first", "Id-second", new BigDecimal("40.25")));
+    repository.close();
+
+    JournalingAccountsRepository reopened = open(1 << 20);
+    assertThat(reopened.getAccount("Id-first").getBalance()).isEqualByComparingTo("60.25");
+    assertThat(reopened.getAccount("Id-second").getBalance()).isEqualByComparingTo("50.25");
+    reopened.close();
+  }
+
+  @Test
+  public void replaysLongIdsAndRejectsIdsTooLongToJournal() throws Exception {
+    String longId = String.join("", Collections.nCopies(40_000, "x"));
+    JournalingAccountsRepository repository = open(1 << 20);
+    repository.createAccount(new Account(longId, new BigDecimal(5)));
+    try {
+      repository.createAccount(new Account(longId + longId, new BigDecimal(5)));
+      fail("Should have rejected an id longer than a journal record can hold");
+    } catch (InvalidAccountIdException ex) {
+      assertThat(ex.getMessage()).contains("at most");
+    }
+    repository.close();
+
+    JournalingAccountsRepository reopened = open(1 << 20);
+    assertThat(reopened.getAccount(longId).getBalance()).isEqualByComparingTo("5");
+    assertThat(reopened.findAccount(longId + longId)).isNull();
+    reopened.close();
+  }
+
+  @Test
+  public void snapshotRefusesBalancesTooLongForAnEntry() throws Exception {
+    BigDecimal huge = new BigDecimal(BigInteger.TEN.pow(700));
+    AccountSnapshots snapshots = new AccountSnapshots(directory);
+    try {
+      snapshots.write(3, Collections.singletonMap("Id-huge", huge));
+      fail("Should have refused a balance longer than a snapshot entry can hold");
+    } catch (IOException ex) {
+      assertThat(ex.getMessage()).contains("Id-huge");
+    }
+    assertThat(snapshots.loadLatest((accountId, balance) -> { })).isEqualTo(-1);
+
+    JournalingAccountsRepository repository = open(1 << 20);
+    try {
+      repository.createAccount(new Account("Id-huge", huge));
+      fail("Should have rejected a balance too long to snapshot");
+    } catch (InvalidBalanceException ex) {
+      assertThat(repository.findAccount("Id-huge")).isNull();
+    }
+    repository.close();
+  }
+
+  @Test
+  public void rollsSegmentsAndGroupCommitsConcurrentTransfers() throws Exception {
+    JournalingAccountsRepository repository = open(4096);
+    AccountsService accountsService = service(repository);
+    for (int i = 0; i < 8; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+    }
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      int seed = t;
+      threads.add(new Thread(() -> {
+        for (int n = 0; n < 200; n++) {
+          try {
+            accountsService.transferMoney(new TransferRequestDetails("Id-" + seed, "Id-" + ((seed + n + 1) % 8), BigDecimal.ONE));
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    List<BigDecimal> balances = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      balances.add(repository.getAccount("Id-" + i).getBalance());
+    }
+    repository.close();
+
+    assertThat(segments().size()).isGreaterThan(1);
+    JournalingAccountsRepository reopened = open(4096);
+    for (int i = 0; i < 8; i++) {
+      assertThat(reopened.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(balances.get(i));
+    }
+    reopened.close();
+  }
+
+  @Test
+  public void ignoresTornTail() throws Exception {
+    JournalingAccountsRepository repository = open(1 << 20);
+    repository.createAccount(new Account("Id-first", new BigDecimal(100)));
+    repository.createAccount(new Account("Id-second", new BigDecimal(5)));
+    repository.close();
+
+    // Corrupt the payload of the last record, as if the crash happened before it reached the disk
+    Path segment = segments().get(0);
+    byte[] bytes = Files.readAllBytes(segment);
+    int last = bytes.length - 1;
+    while (bytes[last] == 0) {
+      last--;
+    }
+    bytes[last] ^= 0x7f;
+    Files.write(segment, bytes);
+
+    JournalingAccountsRepository reopened = open(1 << 20);
+    assertThat(reopened.getAccount("Id-first").getBalance()).isEqualByComparingTo("100");
+    try {
+      reopened.getAccount("Id-second");
+      fail("Torn record should not have been replayed");
+    } catch (AccountDoesNotExistsException ex) {
+      assertThat(ex.getMessage()).contains("Id-second");
+    }
+    reopened.createAccount(new Account("Id-third", new BigDecimal(7)));
+    reopened.close();
+
+    JournalingAccountsRepository again = open(1 << 20);
+    assertThat(again.getAccount("Id-third").getBalance()).isEqualByComparingTo("7");
+    again.close();
+  }
+
+  @Test
+  public void compactsSealedSegmentsIntoSnapshot() throws Exception {
+    JournalingAccountsRepository repository = open(4096);
+    AccountsService accountsService = service(repository);
+    for (int i = 0; i < 8; i++) {
+      accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+    }
+    for (int n = 0; n < 400; n++) {
+      accountsService.transferMoney(new TransferRequestDetails("Id-" + (n % 8), "Id-" + ((n + 3) % 8), new BigDecimal("0.25")));
+    }
+    int segmentsBefore = segments().size();
+    long covered = repository.compact();
+    assertThat(covered).isGreaterThanOrEqualTo(0);
+    assertThat(repository.compact()).isEqualTo(-1);
+
+    assertThat(snapshotCount()).isEqualTo(1);
+    assertThat(segments().size()).isLessThan(segmentsBefore);
+
+    // Changes after the snapshot land in the live segment and are replayed on top of it
+    accountsService.transferMoney(new TransferRequestDetails("Id-0", "Id-1", new BigDecimal(100)));
+    List<BigDecimal> balances = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      balances.add(repository.getAccount("Id-" + i).getBalance());
+    }
+    repository.close();
+
+    JournalingAccountsRepository reopened = open(4096);
+    for (int i = 0; i < 8; i++) {
+      assertThat(reopened.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(balances.get(i));
+    }
+    reopened.clearAccounts();
+    assertThat(snapshotCount()).isEqualTo(0);
+    reopened.close();
+  }
+
+  private JournalingAccountsRepository open(int segmentSize) throws IOException {
+    return new JournalingAccountsRepository(accountFactory, new AccountJournal(directory, segmentSize, 16, 1));
+  }
+
+  private AccountsService service(JournalingAccountsRepository repository) {
+    AccountsService accountsService = new AccountsService(repository, new OrderedAccountLocker(1000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+    return accountsService;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  private long snapshotCount() throws IOException {
+    return segments().stream().filter(path -> path.getFileName().toString().startsWith("snapshot-")).count();
+  }
+}
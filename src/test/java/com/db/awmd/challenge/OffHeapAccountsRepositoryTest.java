@@ -0,0 +1,196 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.exception.AccountDoesNotExistsException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountIdException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.repository.AccountFactory;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapAccountsRepositoryTest {
+
+  private OffHeapAccountsRepository repository;
+  private AsyncNotificationDispatcher notificationDispatcher;
+  private AccountsService accountsService;
+
+  @Before
+  public void setUp() {
+    // Two lock stripes, so most accounts share their lock with others
+    repository = new OffHeapAccountsRepository(new AccountFactory(BalanceRepresentation.BIG_DECIMAL, 2), 1000, 2);
+    notificationDispatcher = new AsyncNotificationDispatcher(1000, 100, NotificationBackpressure.DROP, 0);
+    accountsService = new AccountsService(repository, new OrderedAccountLocker(1000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    notificationDispatcher.shutdown();
+    repository.close();
+  }
+
+  @Test
+  public void createAndGetAccount() throws Exception {
+    repository.createAccount(new Account("Id-123", new BigDecimal("1000.25")));
+
+    Account account = repository.getAccount("Id-123");
+    assertThat(account.getAccountId()).isEqualTo("Id-123");
+    assertThat(account.getBalance()).isEqualByComparingTo("1000.25");
+    assertThat(repository.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void rejectsDuplicatesAndUnstorableAccounts() {
+    repository.createAccount(new Account("Id-123", new BigDecimal(1000)));
+    try {
+      repository.createAccount(new Account("Id-123", new BigDecimal(5)));
+      fail("Should have failed when adding duplicate account");
+    } catch (DuplicateAccountIdException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account id Id-123 already exists!");
+    }
+    try {
+      repository.createAccount(new Account("Id-with-an-identifier-far-too-long-for-a-slot", new BigDecimal(5)));
+      fail("Should have rejected the account id");
+    } catch (InvalidAccountIdException ex) {
+      assertThat(ex.getMessage()).contains("at most 42");
+    }
+    try {
+      repository.createAccount(new Account("Id-456", new BigDecimal("0.001")));
+      fail("Should have rejected the balance");
+    } catch (InvalidBalanceException ex) {
+      assertThat(ex.getMessage()).contains("decimal places");
+    }
+  }
+
+  @Test
+  public void scanResumesFromTheReturnedPosition() {
+    for (int i = 0; i < 10; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+    }
+
+    Set<String> seen = new HashSet<>();
+    long position = 0;
+    int pages = 0;
+    while (position >= 0) {
+      List<Account> page = new ArrayList<>();
+      position = repository.scanAccounts(position, account -> {
+        page.add(account);
+        return page.size() < 3;
+      });
+      for (Account account : page) {
+        assertThat(account.getBalance()).isEqualByComparingTo(account.getAccountId().substring(3));
+        seen.add(account.getAccountId());
+      }
+      pages++;
+    }
+    assertThat(seen).hasSize(10);
+    assertThat(pages).isEqualTo(4);
+  }
+
+  @Test
+  public void missingAccountAndClear() throws Exception {
+    repository.createAccount(new Account("Id-123", new BigDecimal(1000)));
+    repository.clearAccounts();
+    try {
+      repository.getAccount("Id-123");
+      fail("Account should have been cleared");
+    } catch (AccountDoesNotExistsException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account id Id-123 does not exists!");
+    }
+    repository.createAccount(new Account("Id-123", new BigDecimal(7)));
+    assertThat(repository.getAccount("Id-123").getBalance()).isEqualByComparingTo("7");
+  }
+
+  @Test
+  public void transfersUpdateTheSharedSlot() throws Exception {
+    repository.createAccount(new Account("Id-first", new BigDecimal(100)));
+    repository.createAccount(new Account("Id-second", new BigDecimal(10)));
+
+    accountsService.transferMoney(new TransferRequestDetails("Id-first", "Id-second", new BigDecimal("40.50")));
+    assertThat(repository.getAccount("Id-first").getBalance()).isEqualByComparingTo("59.50");
+    assertThat(repository.getAccount("Id-second").getBalance()).isEqualByComparingTo("50.50");
+
+    try {
+      accountsService.transferMoney(new TransferRequestDetails("Id-second", "Id-first", new BigDecimal(60)));
+      fail("Should have failed for insufficient balance");
+    } catch (InsufficientBalanceException ex) {
+      assertThat(ex.getMessage()).contains("Id-second");
+    }
+  }
+
+  @Test
+  public void multiLegTransferNetsRepeatedLegsOfAnAccount() throws Exception {
+    repository.createAccount(new Account("Id-first", new BigDecimal(50)));
+    repository.createAccount(new Account("Id-second", BigDecimal.ZERO));
+
+    try {
+      accountsService.transferMultiLeg(new MultiLegTransferRequest(
+              Arrays.asList(new TransferLeg("Id-first", new BigDecimal(30)), new TransferLeg("Id-first", new BigDecimal(30))),
+              Collections.singletonList(new TransferLeg("Id-second", new BigDecimal(60)))));
+      fail("Should have failed for insufficient balance");
+    } catch (InsufficientBalanceException ex) {
+      assertThat(ex.getMessage()).contains("Id-first");
+    }
+    assertThat(repository.getAccount("Id-first").getBalance()).isEqualByComparingTo("50");
+    assertThat(repository.getAccount("Id-second").getBalance()).isEqualByComparingTo("0");
+  }
+
+  @Test
+  public void concurrentTransfersOverSharedStripesConserveMoney() throws Exception {
+    int accounts = 50;
+    for (int i = 0; i < accounts; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+    }
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      threads.add(new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int n = 0; n < 2000; n++) {
+          int from = random.nextInt(accounts);
+          int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+          try {
+            accountsService.transferMoney(new TransferRequestDetails("Id-" + from, "Id-" + to, BigDecimal.ONE));
+          } catch (InsufficientBalanceException ignored) {
+            // expected now and then, the balances stay consistent
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (int i = 0; i < accounts; i++) {
+      total = total.add(repository.getAccount("Id-" + i).getBalance());
+    }
+    assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * accounts));
+  }
+}
@@ -0,0 +1,187 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MultiLegTransferRequest;
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.UnsupportedTransferModeException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncTransferExecutor;
+import com.db.awmd.challenge.service.ShardedTransferExecutor;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"transfer.mode=sharded", "transfer.shards=4"})
+public class ShardedTransferExecutorTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private ShardedTransferExecutor shardedTransferExecutor;
+
+  @Autowired
+  private AsyncTransferExecutor asyncTransferExecutor;
+
+  @Before
+  public void clearAccountsData() {
+    accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void shardedModeIsActive() {
+    assertThat(shardedTransferExecutor.getShardCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void transferAmount() throws Exception {
+    this.accountsService.createAccount(new Account("Id-fromAccount", new BigDecimal(1000)));
+    this.accountsService.createAccount(new Account("Id-toAccount", new BigDecimal(1000)));
+
+    this.accountsService.transferMoney(new TransferRequestDetails("Id-fromAccount", "Id-toAccount", new BigDecimal(100)));
+
+    assertThat(this.accountsService.getAccount("Id-fromAccount").getBalance()).isEqualByComparingTo("900");
+    assertThat(this.accountsService.getAccount("Id-toAccount").getBalance()).isEqualByComparingTo("1100");
+  }
+
+  @Test
+  public void transferAmountMoreThanBalance() throws Exception {
+    this.accountsService.createAccount(new Account("Id-fromAccount", new BigDecimal(1000)));
+    this.accountsService.createAccount(new Account("Id-toAccount", new BigDecimal(1000)));
+
+    try {
+      this.accountsService.transferMoney(new TransferRequestDetails("Id-fromAccount", "Id-toAccount", new BigDecimal(10000)));
+      fail("Should have failed on insufficient balance");
+    } catch (InsufficientBalanceException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Insufficient account balance in accountId:Id-fromAccountto perform this transaction");
+    }
+    assertThat(this.accountsService.getAccount("Id-fromAccount").getBalance()).isEqualByComparingTo("1000");
+  }
+
+  @Test
+  public void asyncTransfersRunOnTheShards() throws Exception {
+    this.accountsService.createAccount(new Account("Id-fromAccount", new BigDecimal(1000)));
+    this.accountsService.createAccount(new Account("Id-toAccount", new BigDecimal(1000)));
+
+    asyncTransferExecutor.submit(new TransferRequestDetails("Id-fromAccount", "Id-toAccount", new BigDecimal(100))).get(5, TimeUnit.SECONDS);
+    try {
+      asyncTransferExecutor.submit(new TransferRequestDetails("Id-fromAccount", "Id-toAccount", new BigDecimal(10000))).get(5, TimeUnit.SECONDS);
+      fail("Should have failed on insufficient balance");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(InsufficientBalanceException.class);
+    }
+
+    assertThat(this.accountsService.getAccount("Id-fromAccount").getBalance()).isEqualByComparingTo("900");
+    assertThat(this.accountsService.getAccount("Id-toAccount").getBalance()).isEqualByComparingTo("1100");
+  }
+
+  @Test
+  public void concurrentTransfersAcrossShardsConserveMoney() throws Exception {
+    int accounts = 16;
+    for (int i = 0; i < accounts; i++) {
+      this.accountsService.createAccount(new Account("Id-" + i, new BigDecimal(10000)));
+    }
+
+    // Every transfer must complete: any failure in a worker fails the test
+    int[] expected = new int[accounts];
+    Arrays.fill(expected, 10000);
+    ExecutorService workers = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int seed = t;
+        for (int n = 0; n < 2000; n++) {
+          expected[(seed + n) % accounts]--;
+          expected[(seed * 7 + n * 3 + 1) % accounts]++;
+        }
+        futures.add(workers.submit(() -> {
+          for (int n = 0; n < 2000; n++) {
+            String from = "Id-" + ((seed + n) % accounts);
+            String to = "Id-" + ((seed * 7 + n * 3 + 1) % accounts);
+            this.accountsService.transferMoney(new TransferRequestDetails(from, to, BigDecimal.ONE));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      workers.shutdownNow();
+    }
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (int i = 0; i < accounts; i++) {
+      BigDecimal balance = this.accountsService.getAccount("Id-" + i).getBalance();
+      assertThat(balance).isEqualByComparingTo(new BigDecimal(expected[i]));
+      total = total.add(balance);
+    }
+    assertThat(total).isEqualByComparingTo(new BigDecimal(accounts * 10000));
+  }
+
+  @Test(expected = UnsupportedTransferModeException.class)
+  public void multiLegTransferIsRejected() throws Exception {
+    this.accountsService.createAccount(new Account("Id-fromAccount", new BigDecimal(1000)));
+    this.accountsService.createAccount(new Account("Id-toAccount", new BigDecimal(1000)));
+
+    this.accountsService.transferMultiLeg(new MultiLegTransferRequest(
+        Arrays.asList(new TransferLeg("Id-fromAccount", new BigDecimal(100))),
+        Arrays.asList(new TransferLeg("Id-toAccount", new BigDecimal(100)))));
+  }
+
+  @Test
+  public void failedJournalWriteRefundsTheSenderAndKeepsTheShardsRunning() throws Exception {
+    AtomicBoolean journalFails = new AtomicBoolean(true);
+    AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory() {
+      @Override
+      public long logTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+        if (journalFails.getAndSet(false)) {
+          throw new IllegalStateException("journal unavailable");
+        }
+        return 0;
+      }
+    };
+    accountsRepository.createAccount(new Account("Id-fromAccount", new BigDecimal(1000)));
+    accountsRepository.createAccount(new Account("Id-toAccount", new BigDecimal(1000)));
+    SyncAccount fromAccount = (SyncAccount) accountsRepository.getAccount("Id-fromAccount");
+    SyncAccount toAccount = (SyncAccount) accountsRepository.getAccount("Id-toAccount");
+    ShardedTransferExecutor executor = new ShardedTransferExecutor(accountsRepository, 2, 16, 1000);
+    try {
+      try {
+        executor.submit(fromAccount, toAccount, new BigDecimal(100)).get(5, TimeUnit.SECONDS);
+        fail("Should have failed on the journal write");
+      } catch (ExecutionException ex) {
+        assertThat(ex.getCause()).hasMessage("journal unavailable");
+      }
+      assertThat(fromAccount.getBalance()).isEqualByComparingTo("1000");
+      assertThat(toAccount.getBalance()).isEqualByComparingTo("1000");
+
+      executor.submit(fromAccount, toAccount, new BigDecimal(100)).get(5, TimeUnit.SECONDS);
+      assertThat(fromAccount.getBalance()).isEqualByComparingTo("900");
+      assertThat(toAccount.getBalance()).isEqualByComparingTo("1100");
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
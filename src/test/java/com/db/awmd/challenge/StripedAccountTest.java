@@ -0,0 +1,164 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidBalanceException;
+import com.db.awmd.challenge.repository.AccountFactory;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AsyncNotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationBackpressure;
+import com.db.awmd.challenge.service.OrderedAccountLocker;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StripedAccountTest {
+
+  private AsyncNotificationDispatcher notificationDispatcher;
+  private AccountsService accountsService;
+
+  @Before
+  public void setUp() {
+    AccountFactory accountFactory = new AccountFactory(BalanceRepresentation.BIG_DECIMAL, 2, new String[]{"Id-merchant"}, 8);
+    notificationDispatcher = new AsyncNotificationDispatcher(10000, 256, NotificationBackpressure.DROP, 0);
+    accountsService = new AccountsService(new AccountsRepositoryInMemory(accountFactory), new OrderedAccountLocker(5000), notificationDispatcher);
+    accountsService.setNotificationService((account, transferDescription) -> { });
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    notificationDispatcher.shutdown();
+  }
+
+  @Test
+  public void hotAccountsAreStriped() throws Exception {
+    accountsService.createAccount(new Account("Id-merchant", new BigDecimal("10.50")));
+    accountsService.createAccount(new Account("Id-customer", new BigDecimal(10)));
+
+    assertThat(accountsService.getAccount("Id-merchant")).isInstanceOf(StripedAccount.class);
+    assertThat(accountsService.getAccount("Id-customer")).isNotInstanceOf(StripedAccount.class);
+    assertThat(accountsService.getAccountSnapshot("Id-merchant").getBalance()).isEqualByComparingTo("10.50");
+  }
+
+  @Test
+  public void concurrentCreditsAddUpExactly() throws Exception {
+    accountsService.createAccount(new Account("Id-merchant", BigDecimal.ZERO));
+    int threads = 8;
+    int transfers = 2000;
+    for (int t = 0; t < threads; t++) {
+      accountsService.createAccount(new Account("Id-" + t, new BigDecimal(transfers)));
+    }
+
+    List<Thread> senders = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      TransferRequestDetails transfer = new TransferRequestDetails("Id-" + t, "Id-merchant", BigDecimal.ONE);
+      senders.add(new Thread(() -> {
+        for (int n = 0; n < transfers; n++) {
+          try {
+            accountsService.transferMoney(transfer);
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      }));
+    }
+    senders.forEach(Thread::start);
+    for (Thread sender : senders) {
+      sender.join();
+    }
+
+    assertThat(accountsService.getAccount("Id-merchant").getBalance()).isEqualByComparingTo(String.valueOf(threads * transfers));
+  }
+
+  @Test
+  public void debitsBorrowAcrossStripes() throws Exception {
+    accountsService.createAccount(new Account("Id-merchant", BigDecimal.ZERO));
+    accountsService.createAccount(new Account("Id-customer", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-supplier", BigDecimal.ZERO));
+    List<Thread> senders = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      senders.add(new Thread(() -> {
+        try {
+          accountsService.transferMoney(new TransferRequestDetails("Id-customer", "Id-merchant", new BigDecimal(25)));
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }));
+    }
+    senders.forEach(Thread::start);
+    for (Thread sender : senders) {
+      sender.join();
+    }
+
+    accountsService.transferMoney(new TransferRequestDetails("Id-merchant", "Id-supplier", new BigDecimal("99.99")));
+    assertThat(accountsService.getAccount("Id-merchant").getBalance()).isEqualByComparingTo("0.01");
+    try {
+      accountsService.transferMoney(new TransferRequestDetails("Id-merchant", "Id-supplier", new BigDecimal(1)));
+      fail("Should have failed on insufficient balance");
+    } catch (InsufficientBalanceException ex) {
+      assertThat(accountsService.getAccount("Id-merchant").getBalance()).isEqualByComparingTo("0.01");
+    }
+  }
+
+  @Test
+  public void readsDoNotWaitForTheLockHolder() throws Exception {
+    accountsService.createAccount(new Account("Id-merchant", new BigDecimal(10)));
+    StripedAccount merchant = (StripedAccount) accountsService.getAccount("Id-merchant");
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread holder = new Thread(() -> {
+      // as a multi-leg transfer or batch does while it works on its other accounts
+      merchant.getLock().lock();
+      merchant.getLock().beginWrite();
+      try {
+        merchant.adjustBalance(new BigDecimal(-5));
+        locked.countDown();
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        merchant.getLock().endWrite();
+        merchant.getLock().unlock();
+      }
+    });
+    holder.start();
+    ExecutorService reader = Executors.newSingleThreadExecutor();
+    try {
+      assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+      Future<BigDecimal> balance = reader.submit(() -> accountsService.getAccountSnapshot("Id-merchant").getBalance());
+      assertThat(balance.get(5, TimeUnit.SECONDS)).isEqualByComparingTo("5");
+    } finally {
+      release.countDown();
+      holder.join();
+      reader.shutdownNow();
+    }
+  }
+
+  @Test
+  public void rejectsAmountsFinerThanTheScaleBeforeDebiting() throws Exception {
+    accountsService.createAccount(new Account("Id-merchant", BigDecimal.ZERO));
+    accountsService.createAccount(new Account("Id-customer", new BigDecimal(100)));
+
+    try {
+      accountsService.transferMoney(new TransferRequestDetails("Id-customer", "Id-merchant", new BigDecimal("1.005")));
+      fail("Should have rejected the amount");
+    } catch (InvalidBalanceException ex) {
+      assertThat(accountsService.getAccount("Id-customer").getBalance()).isEqualByComparingTo("100");
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.AccountTransaction;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.exception.InvalidCursorException;
+import com.db.awmd.challenge.service.TransactionLedger;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class TransactionLedgerTest {
+
+  @Test
+  public void historyIsPerAccountNewestFirst() {
+    TransactionLedger ledger = new TransactionLedger(4096);
+    ledger.recordTransfer("Id-first", "Id-second", new BigDecimal(10));
+    ledger.recordTransfer("Id-second", "Id-third", new BigDecimal("5.25"));
+    ledger.recordTransfer("Id-first", "Id-third", BigDecimal.ONE);
+
+    List<AccountTransaction> first = new ArrayList<>();
+    assertThat(ledger.history("Id-first", 0, 10, first)).isEqualTo(0);
+    assertThat(first).extracting(AccountTransaction::getAmount).containsExactly(new BigDecimal(-1), new BigDecimal(-10));
+    assertThat(first).extracting(AccountTransaction::getCounterpartyAccountId).containsExactly("Id-third", "Id-second");
+
+    List<AccountTransaction> second = new ArrayList<>();
+    ledger.history("Id-second", 0, 10, second);
+    assertThat(second).extracting(AccountTransaction::getAmount).containsExactly(new BigDecimal("-5.25"), new BigDecimal(10));
+    assertThat(second.get(1).getTransactionId()).isEqualTo(first.get(1).getTransactionId());
+    assertThat(second.get(1).getId()).isNotEqualTo(first.get(1).getId());
+
+    List<AccountTransaction> unknown = new ArrayList<>();
+    assertThat(ledger.history("Id-unknown", 0, 10, unknown)).isEqualTo(0);
+    assertThat(unknown).isEmpty();
+  }
+
+  @Test
+  public void pagesResumeFromTheReturnedPosting() {
+    TransactionLedger ledger = new TransactionLedger(4096);
+    for (int i = 1; i <= 5; i++) {
+      ledger.recordTransfer("Id-first", "Id-second", new BigDecimal(i));
+    }
+
+    List<AccountTransaction> transactions = new ArrayList<>();
+    long next = 0;
+    do {
+      List<AccountTransaction> page = new ArrayList<>();
+      next = ledger.history("Id-second", next, 2, page);
+      assertThat(page.size()).isBetween(1, 2);
+      transactions.addAll(page);
+    } while (next != 0);
+    assertThat(transactions).extracting(AccountTransaction::getAmount)
+            .containsExactly(new BigDecimal(5), new BigDecimal(4), new BigDecimal(3), new BigDecimal(2), BigDecimal.ONE);
+
+    List<AccountTransaction> firstPage = new ArrayList<>();
+    next = ledger.history("Id-second", 0, 2, firstPage);
+    try {
+      ledger.history("Id-first", next, 2, new ArrayList<>());
+      fail("Should have rejected a cursor of another account");
+    } catch (InvalidCursorException ex) {
+      assertThat(ex.getMessage()).startsWith("Invalid cursor");
+    }
+  }
+
+  @Test
+  public void oldestPostingsAreOverwritten() {
+    TransactionLedger ledger = new TransactionLedger(4096);
+    for (int i = 0; i < 3000; i++) {
+      ledger.recordTransfer("Id-first", "Id-second", BigDecimal.ONE);
+    }
+
+    List<AccountTransaction> transactions = new ArrayList<>();
+    assertThat(ledger.history("Id-first", 0, 10_000, transactions)).isEqualTo(0);
+    assertThat(transactions).hasSize(2048);
+    assertThat(ledger.getMetrics()).containsEntry("postings", 6000L).containsEntry("retained", 4096L);
+  }
+
+  @Test
+  public void legsShareOneTransaction() {
+    TransactionLedger ledger = new TransactionLedger(4096);
+    BigDecimal large = new BigDecimal("123456789012345678901234567890.5");
+    ledger.recordLegs(Arrays.asList(new TransferLeg("Id-customer", large)),
+            Arrays.asList(new TransferLeg("Id-merchant", large.subtract(BigDecimal.ONE)), new TransferLeg("Id-fees", BigDecimal.ONE)));
+
+    List<AccountTransaction> customer = new ArrayList<>();
+    List<AccountTransaction> fees = new ArrayList<>();
+    ledger.history("Id-customer", 0, 10, customer);
+    ledger.history("Id-fees", 0, 10, fees);
+    assertThat(customer).hasSize(1);
+    assertThat(customer.get(0).getAmount()).isEqualTo(large.negate());
+    assertThat(customer.get(0).getCounterpartyAccountId()).isNull();
+    assertThat(fees.get(0).getTransactionId()).isEqualTo(customer.get(0).getTransactionId());
+  }
+}
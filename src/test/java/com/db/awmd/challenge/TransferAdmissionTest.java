@@ -0,0 +1,72 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.BalanceRepresentation;
+import com.db.awmd.challenge.repository.AccountFactory;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.service.TransferAdmission.Decision;
+import com.db.awmd.challenge.service.TransferAdmission.Mode;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TransferAdmissionTest {
+
+  private final AccountFactory accountFactory =
+          new AccountFactory(BalanceRepresentation.BIG_DECIMAL, 2, new String[]{"Id-merchant"}, 0);
+
+  @Test
+  public void globalLimitRejectsUntilReleased() {
+    TransferAdmission admission = new TransferAdmission(accountFactory, Mode.FIXED, 1, 3, 32, 4096, 2.0, 1);
+    for (int i = 0; i < 3; i++) {
+      assertThat(admission.tryAdmit("Id-" + i, "Id-to-" + i)).isEqualTo(Decision.ADMITTED);
+    }
+    assertThat(admission.tryAdmit("Id-other", "Id-to-other")).isEqualTo(Decision.OVERLOADED);
+
+    admission.release("Id-0", "Id-to-0", System.nanoTime());
+    assertThat(admission.tryAdmit("Id-other", "Id-to-other")).isEqualTo(Decision.ADMITTED);
+    assertThat(admission.getMetrics())
+            .containsEntry("inFlight", 3)
+            .containsEntry("admitted", 4L)
+            .containsEntry("rejectedOverloaded", 1L);
+  }
+
+  @Test
+  public void accountDepthBoundsSenderAndReceiverButNotHotReceivers() {
+    TransferAdmission admission = new TransferAdmission(accountFactory, Mode.FIXED, 1, 256, 2, 4096, 2.0, 1);
+    assertThat(admission.tryAdmit("Id-first", "Id-second")).isEqualTo(Decision.ADMITTED);
+    assertThat(admission.tryAdmit("Id-third", "Id-second")).isEqualTo(Decision.ADMITTED);
+    assertThat(admission.tryAdmit("Id-second", "Id-fourth")).isEqualTo(Decision.ACCOUNT_BUSY);
+    assertThat(admission.tryAdmit("Id-fourth", "Id-second")).isEqualTo(Decision.ACCOUNT_BUSY);
+    assertThat(admission.getMetrics()).containsEntry("deepestAccountDepth", 2).containsEntry("inFlight", 2);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(admission.tryAdmit("Id-customer-" + i, "Id-merchant")).isEqualTo(Decision.ADMITTED);
+    }
+
+    admission.release("Id-first", "Id-second", System.nanoTime());
+    assertThat(admission.tryAdmit("Id-second", "Id-fourth")).isEqualTo(Decision.ADMITTED);
+  }
+
+  @Test
+  public void adaptiveLimitGrowsWhileLatencyHoldsAndShrinksWhenItRises() {
+    TransferAdmission admission = new TransferAdmission(accountFactory, Mode.ADAPTIVE, 4, 1000, 1000, 4096, 2.0, 1);
+    assertThat(admission.getLimit()).isEqualTo(4);
+
+    complete(admission, 40, TimeUnit.MILLISECONDS.toNanos(1));
+    int grown = admission.getLimit();
+    assertThat(grown).isGreaterThan(20);
+
+    complete(admission, 20, TimeUnit.MILLISECONDS.toNanos(10));
+    assertThat(admission.getLimit()).isLessThan(grown / 2);
+    assertThat(admission.getMetrics()).containsEntry("windowLatencyMicros", 10_000L);
+    assertThat((Long) admission.getMetrics().get("baselineLatencyMicros")).isBetween(1000L, 2000L);
+  }
+
+  private static void complete(TransferAdmission admission, int windows, long latencyNanos) {
+    for (int i = 0; i < windows * 128; i++) {
+      assertThat(admission.tryAdmit("Id-first", "Id-second")).isEqualTo(Decision.ADMITTED);
+      admission.release("Id-first", "Id-second", System.nanoTime() - latencyNanos);
+    }
+  }
+}
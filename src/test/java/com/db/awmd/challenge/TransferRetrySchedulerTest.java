@@ -0,0 +1,107 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountTransaction;
+import com.db.awmd.challenge.domain.SyncAccount;
+import com.db.awmd.challenge.domain.TransferRequestDetails;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.domain.TransferTicket;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferRetryScheduler;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"transfer.retry.max-attempts=6", "transfer.retry.base-backoff=2", "transfer.retry.max-backoff=50"})
+public class TransferRetrySchedulerTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private TransferRetryScheduler transferRetryScheduler;
+
+  @Before
+  public void clearAccountsData() {
+    accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void retriesOfAPairApplyInOrderOnceTheLocksAreFree() throws Exception {
+    accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-second", new BigDecimal(0)));
+    SyncAccount first = (SyncAccount) accountsService.getAccount("Id-first");
+
+    List<TransferTicket> tickets = new ArrayList<>();
+    first.getLock().lock();
+    try {
+      for (int amount = 10; amount <= 30; amount += 10) {
+        tickets.add(transferRetryScheduler.schedule(new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(amount))));
+      }
+      // the reverse direction is the same pair, so it queues behind them
+      tickets.add(transferRetryScheduler.schedule(new TransferRequestDetails("Id-second", "Id-first", new BigDecimal(60))));
+      assertThat(tickets).extracting(TransferTicket::getStatus).containsOnly(TransferStatus.PENDING);
+    } finally {
+      first.getLock().unlock();
+    }
+
+    for (TransferTicket ticket : tickets) {
+      assertThat(awaitFinished(ticket.getTransferId()).getStatus()).isEqualTo(TransferStatus.COMPLETED);
+    }
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("100");
+    assertThat(accountsService.getTransactions("Id-first", null, 10).getTransactions())
+            .extracting(AccountTransaction::getAmount)
+            .containsExactly(new BigDecimal(60), new BigDecimal(-30), new BigDecimal(-20), new BigDecimal(-10));
+  }
+
+  @Test
+  public void givesUpAfterMaxAttempts() throws Exception {
+    accountsService.createAccount(new Account("Id-first", new BigDecimal(100)));
+    accountsService.createAccount(new Account("Id-second", new BigDecimal(0)));
+    SyncAccount second = (SyncAccount) accountsService.getAccount("Id-second");
+
+    TransferTicket finished;
+    second.getLock().lock();
+    try {
+      TransferTicket ticket = transferRetryScheduler.schedule(new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(10)));
+      finished = awaitFinished(ticket.getTransferId());
+    } finally {
+      second.getLock().unlock();
+    }
+    assertThat(finished.getStatus()).isEqualTo(TransferStatus.LOCK_TIMEOUT);
+    assertThat(finished.getAttempts()).isEqualTo(6);
+    assertThat(accountsService.getAccount("Id-first").getBalance()).isEqualByComparingTo("100");
+    assertThat(transferRetryScheduler.getTicket("no-such-transfer")).isNull();
+  }
+
+  @Test
+  public void reportsTheFailureOfARetry() throws Exception {
+    accountsService.createAccount(new Account("Id-first", new BigDecimal(5)));
+    accountsService.createAccount(new Account("Id-second", new BigDecimal(0)));
+
+    TransferTicket ticket = transferRetryScheduler.schedule(new TransferRequestDetails("Id-first", "Id-second", new BigDecimal(10)));
+    TransferTicket finished = awaitFinished(ticket.getTransferId());
+    assertThat(finished.getStatus()).isEqualTo(TransferStatus.INSUFFICIENT_BALANCE);
+    assertThat(finished.getAttempts()).isEqualTo(2);
+    assertThat(finished.getMessage()).isNotEmpty();
+  }
+
+  private TransferTicket awaitFinished(String transferId) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    TransferTicket ticket = transferRetryScheduler.getTicket(transferId);
+    while (ticket.getStatus() == TransferStatus.PENDING && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+      ticket = transferRetryScheduler.getTicket(transferId);
+    }
+    return ticket;
+  }
+}